@@ -2,6 +2,7 @@ plugins {
     java
     id("org.springframework.boot") version "3.2.3"
     id("io.spring.dependency-management") version "1.1.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "net.majatech"
@@ -25,6 +26,7 @@ dependencies {
     }
     implementation("org.springframework.boot:spring-boot-starter-undertow")
     implementation("org.springframework.boot:spring-boot-starter-validation")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
 
     // Bouncy Castle
     implementation("org.bouncycastle:bcpkix-jdk18on:1.77")
@@ -32,6 +34,10 @@ dependencies {
     // AWS S3
     implementation(platform("software.amazon.awssdk:bom:2.25.26"))
     implementation("software.amazon.awssdk:s3")
+    implementation("software.amazon.awssdk:netty-nio-client")
+
+    // Caching
+    implementation("com.github.ben-manes.caffeine:caffeine")
 
     // Database
     runtimeOnly("org.postgresql:postgresql")
@@ -40,8 +46,19 @@ dependencies {
     testImplementation("com.h2database:h2")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.springframework.security:spring-security-test")
+    testImplementation("org.awaitility:awaitility")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
 }
+
+// Benchmarks live in src/jmh/java. Run a subset with e.g. ./gradlew jmh -PjmhIncludes=IssuancePipelineBenchmark
+jmh {
+    jmhVersion.set("1.37")
+
+    // Report the allocation rate of every benchmark alongside its throughput and latency percentiles
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,125 @@
+package net.majatech.ca.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.signing.CertificateAuditor;
+import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.authority.signing.IssuerRegistry;
+import net.majatech.ca.authority.signing.SigningEngine;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.utils.KeyStoreUtils;
+import net.majatech.ca.utils.KeyUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of {@code KeyStoreService.generateKeyStoreFromCsr} in isolation, plus the stages combined
+ * <br><br>
+ * Every stage benchmark starts from inputs prepared in the setup, so its score only covers the work of that stage.
+ * Persistence and the S3 upload itself are left out, as they are dominated by I/O rather than CPU
+ * <br><br>
+ * {@code generateKeyStore} and {@code serializeKeyStore} measure the JDK KeyStore route, which is kept as a baseline
+ * for {@code encodePkcs12}, the direct encoder now used by the service
+ * <br><br>
+ * Run with {@code ./gradlew jmh}. Throughput and sampled latency percentiles are reported for each stage, and the GC
+ * profiler configured in the build adds the allocation rate per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IssuancePipelineBenchmark {
+    private static final String PASS = "benchmark-pass";
+    private static final String ALIAS = "benchmark-alias";
+
+    private DistinguishedName dn;
+    private KeyPair keyPair;
+    private CertificateSigningRequest csr;
+    private CertificateHolder certificateHolder;
+    private KeyStore keyStore;
+    private ClientCertificateSigner signer;
+    private Pkcs12Encoder pkcs12Encoder;
+
+    @Setup
+    public void setup() {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        CaSettings caSettings = new CaSettings();
+        SecureRandom random = new SecureRandom();
+        signer = new ClientCertificateSigner(new IssuerRegistry(caSettings, new DefaultResourceLoader()),
+                new SigningEngine(caSettings), new CertificateAuditor(caSettings, new SimpleMeterRegistry(), e -> {}),
+                () -> new BigInteger(128, random));
+        pkcs12Encoder = new Pkcs12Encoder(caSettings);
+
+        dn = DistinguishedName.newBuilder()
+                .setCommonName("benchmark-cn")
+                .setOrganization("MajaTech")
+                .setOrganizationalUnit("CA")
+                .setLocality("Sydney")
+                .setState("NSW")
+                .setCountry("AU")
+                .build();
+        keyPair = KeyUtils.generateKeyPair();
+        csr = CertificateSigningRequest.using(dn, keyPair);
+        certificateHolder = signer.sign(csr);
+        keyStore = certificateHolder.generateKeyStore(PASS, ALIAS);
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return KeyUtils.generateKeyPair();
+    }
+
+    @Benchmark
+    public CertificateSigningRequest createCsr() {
+        return CertificateSigningRequest.using(dn, keyPair);
+    }
+
+    @Benchmark
+    public X500Name toX500Name() {
+        return dn.toX500Name();
+    }
+
+    @Benchmark
+    public CertificateHolder sign() {
+        return signer.sign(csr);
+    }
+
+    @Benchmark
+    public KeyStore generateKeyStore() {
+        return certificateHolder.generateKeyStore(PASS, ALIAS);
+    }
+
+    @Benchmark
+    public byte[] serializeKeyStore() {
+        return KeyStoreUtils.toBytes(keyStore, PASS);
+    }
+
+    @Benchmark
+    public byte[] encodePkcs12() {
+        return pkcs12Encoder.encode(certificateHolder, PASS, ALIAS);
+    }
+
+    @Benchmark
+    public byte[] pipeline() {
+        CertificateSigningRequest pipelineCsr = CertificateSigningRequest.using(dn, KeyUtils.generateKeyPair());
+
+        return pkcs12Encoder.encode(signer.sign(pipelineCsr), PASS, ALIAS);
+    }
+}
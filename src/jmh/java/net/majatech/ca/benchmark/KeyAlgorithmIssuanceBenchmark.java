@@ -0,0 +1,83 @@
+package net.majatech.ca.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.keys.KeyAlgorithm;
+import net.majatech.ca.authority.signing.CertificateAuditor;
+import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.authority.signing.IssuerRegistry;
+import net.majatech.ca.authority.signing.SigningEngine;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.utils.KeyUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares issuance throughput of each KeyAlgorithm profile
+ * <br><br>
+ * {@code issue} covers the full path of a CSR form submission without storage: key generation, CSR creation,
+ * signing and PKCS12 encoding. {@code signOnly} reuses a pre-generated KeyPair to isolate the cost of signing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KeyAlgorithmIssuanceBenchmark {
+
+    @Param({"RSA_2048", "EC_P256", "ED25519"})
+    private KeyAlgorithm keyAlgorithm;
+
+    private DistinguishedName dn;
+    private KeyPair keyPair;
+    private ClientCertificateSigner signer;
+
+    @Setup
+    public void setup() {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        dn = DistinguishedName.newBuilder()
+                .setCommonName("benchmark-cn")
+                .setOrganization("MajaTech")
+                .setOrganizationalUnit("CA")
+                .setCountry("AU")
+                .build();
+        keyPair = KeyUtils.generateKeyPair(keyAlgorithm);
+        CaSettings caSettings = new CaSettings();
+        SecureRandom random = new SecureRandom();
+        signer = new ClientCertificateSigner(new IssuerRegistry(caSettings, new DefaultResourceLoader()),
+                new SigningEngine(caSettings), new CertificateAuditor(caSettings, new SimpleMeterRegistry(), e -> {}),
+                () -> new BigInteger(128, random));
+    }
+
+    @Benchmark
+    public byte[] issue() throws Exception {
+        CertificateSigningRequest csr = CertificateSigningRequest.using(dn, keyAlgorithm);
+        CertificateHolder certificateHolder = signer.sign(csr);
+        KeyStore keyStore = certificateHolder.generateKeyStore("benchmark", "alias");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        keyStore.store(baos, "benchmark".toCharArray());
+
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public CertificateHolder signOnly() {
+        return signer.sign(CertificateSigningRequest.using(dn, keyPair));
+    }
+}
@@ -0,0 +1,105 @@
+package net.majatech.ca.benchmark;
+
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.signing.IssuerInfo;
+import net.majatech.ca.authority.signing.IssuerRegistry;
+import net.majatech.ca.authority.signing.SigningEngine;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.utils.KeyUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-certificate overhead of the signing objects, with everything else held constant
+ * <br><br>
+ * {@code PER_CALL} reproduces the original behaviour of building a new ContentSigner, extension utilities and
+ * certificate converter for every certificate. {@code JCA} and {@code LIGHTWEIGHT} use the SigningEngine's per-thread
+ * instances with the respective engine, along with the authority key identifier pre-encoded by the IssuerInfo
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SigningEngineBenchmark {
+
+    @Param({"PER_CALL", "JCA", "LIGHTWEIGHT"})
+    private String signingPath;
+
+    private IssuerInfo issuerInfo;
+    private SigningEngine signingEngine;
+    private X500Name subject;
+    private PublicKey subjectPublicKey;
+
+    @Setup
+    public void setup() {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        CaSettings caSettings = new CaSettings();
+        if (!"PER_CALL".equals(signingPath)) {
+            caSettings.getSigning().setEngine(SigningEngine.Engine.valueOf(signingPath));
+        }
+
+        issuerInfo = new IssuerRegistry(caSettings, new DefaultResourceLoader()).getIssuer();
+        signingEngine = new SigningEngine(caSettings);
+        subject = DistinguishedName.newBuilder().setCommonName("benchmark-cn").build().toX500Name();
+        subjectPublicKey = KeyUtils.generateKeyPair().getPublic();
+    }
+
+    @Benchmark
+    public X509Certificate sign() throws Exception {
+        X509v3CertificateBuilder certBuilder = newCertificateBuilder();
+
+        if ("PER_CALL".equals(signingPath)) {
+            JcaX509ExtensionUtils extUtils = new JcaX509ExtensionUtils();
+            certBuilder.addExtension(Extension.authorityKeyIdentifier, false,
+                            extUtils.createAuthorityKeyIdentifier(issuerInfo.keyPair().getPublic()))
+                    .addExtension(Extension.subjectKeyIdentifier, false,
+                            extUtils.createSubjectKeyIdentifier(subjectPublicKey));
+
+            ContentSigner signer = new JcaContentSignerBuilder(issuerInfo.getSignatureAlgorithm())
+                    .build(issuerInfo.keyPair().getPrivate());
+
+            return new JcaX509CertificateConverter().setProvider("BC").getCertificate(certBuilder.build(signer));
+        }
+
+        certBuilder.addExtension(issuerInfo.authorityKeyIdentifier())
+                .addExtension(Extension.subjectKeyIdentifier, false,
+                        signingEngine.createSubjectKeyIdentifier(subjectPublicKey));
+
+        return signingEngine.toX509Certificate(certBuilder.build(signingEngine.getContentSigner(issuerInfo)));
+    }
+
+    private X509v3CertificateBuilder newCertificateBuilder() {
+        Instant notBefore = Instant.now();
+
+        return new X509v3CertificateBuilder(
+                issuerInfo.getDistinguishedName(),
+                BigInteger.valueOf(notBefore.toEpochMilli()),
+                Date.from(notBefore),
+                Date.from(notBefore.plus(365, ChronoUnit.DAYS)),
+                subject,
+                SubjectPublicKeyInfo.getInstance(subjectPublicKey.getEncoded()));
+    }
+}
@@ -2,7 +2,10 @@ package net.majatech.ca.authority.certificate;
 
 import net.majatech.ca.authority.signing.IssuerInfo;
 import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
@@ -34,6 +37,10 @@ public class CertificateHolder {
      * @return The generated PKCS12 KeyStore
      */
     public KeyStore generateKeyStore(String pass, String alias) {
+        if (keyPair.getPrivate() == null) {
+            throw new CaException("A KeyStore can not be generated without the subject private key");
+        }
+
         try {
             KeyStore keyStore = KeyStore.getInstance("PKCS12");
             keyStore.load(null, "integrity-check".toCharArray());
@@ -46,6 +53,23 @@ public class CertificateHolder {
         }
     }
 
+    /**
+     * Encode the certificate chain as PEM, starting with the issued certificate followed by the issuer certificate
+     * @return The PEM encoded certificate chain
+     */
+    public String toPemChain() {
+        StringWriter writer = new StringWriter();
+
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(x509Certificate);
+            pemWriter.writeObject(issuerInfo.rootCa());
+        } catch (IOException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+
+        return writer.toString();
+    }
+
     public X509Certificate getX509Certificate() {
         return x509Certificate;
     }
@@ -1,8 +1,16 @@
 package net.majatech.ca.authority.certificate;
 
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.DERPrintableString;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.X500NameBuilder;
 import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.springframework.util.StringUtils;
 
 import java.util.Objects;
@@ -33,42 +41,89 @@ public class DistinguishedName {
         return new Builder();
     }
 
+    /**
+     * Create a DistinguishedName from the fields of a BouncyCastle X500Name, for example the subject of a received CSR
+     * <br><br>
+     * Only the fields supported by this class are kept, any other attributes of the name are dropped. Values are taken
+     * as they are encoded, without the escaping of the string form of the name
+     * @param x500Name The name to convert
+     * @return The DistinguishedName
+     */
+    public static DistinguishedName fromX500Name(X500Name x500Name) {
+        return newBuilder()
+                .setCommonName(firstValue(x500Name, BCStyle.CN))
+                .setLocality(firstValue(x500Name, BCStyle.L))
+                .setState(firstValue(x500Name, BCStyle.ST))
+                .setCountry(firstValue(x500Name, BCStyle.C))
+                .setOrganization(firstValue(x500Name, BCStyle.O))
+                .setOrganizationalUnit(firstValue(x500Name, BCStyle.OU))
+                .build();
+    }
+
+    /**
+     * Parse a DistinguishedName from its string form, such as the Subject DN stored for each KeyStore
+     * @param name The DN, for example "CN=client, OU=Payments, O=Majatech, C=GB"
+     * @return The DistinguishedName
+     */
+    public static DistinguishedName fromString(String name) {
+        try {
+            return fromX500Name(new X500Name(name));
+        } catch (IllegalArgumentException e) {
+            throw new CaException("Invalid distinguished name: " + name, e);
+        }
+    }
+
     /**
      * Convert the DN fields to a BouncyCastle X500Name object
      * <br><br>
      * BouncyCastle reverses the order in which the DN fields are configured. So as we want the CommonName to be
      * displayed first we need to add that field to the builder last, as shown below
+     * <br><br>
+     * Each value is encoded as it is. Adding the string would have BouncyCastle read a leading '#' as a hex encoded
+     * value and drop a leading backslash
      */
     public X500Name toX500Name() {
         X500NameBuilder nameBuilder = new X500NameBuilder();
 
         if (StringUtils.hasLength(organizationalUnit)) {
-            nameBuilder.addRDN(BCStyle.OU, organizationalUnit);
+            nameBuilder.addRDN(BCStyle.OU, new DERUTF8String(organizationalUnit));
         }
 
         if (StringUtils.hasLength(organization)) {
-            nameBuilder.addRDN(BCStyle.O, organization);
+            nameBuilder.addRDN(BCStyle.O, new DERUTF8String(organization));
         }
 
         if (StringUtils.hasLength(country)) {
-            nameBuilder.addRDN(BCStyle.C, country);
+            // Country codes are PrintableStrings, as BouncyCastle encodes them from a string
+            nameBuilder.addRDN(BCStyle.C, new DERPrintableString(country));
         }
 
         if (StringUtils.hasLength(state)) {
-            nameBuilder.addRDN(BCStyle.ST, state);
+            nameBuilder.addRDN(BCStyle.ST, new DERUTF8String(state));
         }
 
         if (StringUtils.hasLength(locality)) {
-            nameBuilder.addRDN(BCStyle.L, locality);
+            nameBuilder.addRDN(BCStyle.L, new DERUTF8String(locality));
         }
 
         if (StringUtils.hasLength(commonName)) {
-            nameBuilder.addRDN(BCStyle.CN, commonName);
+            nameBuilder.addRDN(BCStyle.CN, new DERUTF8String(commonName));
         }
 
         return nameBuilder.build();
     }
 
+    private static String firstValue(X500Name x500Name, ASN1ObjectIdentifier attributeType) {
+        RDN[] rdns = x500Name.getRDNs(attributeType);
+        if (rdns.length == 0) {
+            return null;
+        }
+
+        // The string form escapes characters such as ',', '+' and '=', which are not part of the value itself
+        ASN1Encodable value = rdns[0].getFirst().getValue();
+        return value instanceof ASN1String asn1String ? asn1String.getString() : IETFUtils.valueToString(value);
+    }
+
     public String getCommonName() {
         return commonName;
     }
@@ -93,6 +148,33 @@ public class DistinguishedName {
         return organizationalUnit;
     }
 
+    /**
+     * The fields of a DistinguishedName, each of which is an optional attribute of the name
+     */
+    public enum Attribute {
+        COMMON_NAME,
+        LOCALITY,
+        STATE,
+        COUNTRY,
+        ORGANIZATION,
+        ORGANIZATIONAL_UNIT;
+
+        /**
+         * @param distinguishedName The name to read the attribute from
+         * @return The value of the attribute, or null if the name does not have it
+         */
+        public String get(DistinguishedName distinguishedName) {
+            return switch (this) {
+                case COMMON_NAME -> distinguishedName.getCommonName();
+                case LOCALITY -> distinguishedName.getLocality();
+                case STATE -> distinguishedName.getState();
+                case COUNTRY -> distinguishedName.getCountry();
+                case ORGANIZATION -> distinguishedName.getOrganization();
+                case ORGANIZATIONAL_UNIT -> distinguishedName.getOrganizationalUnit();
+            };
+        }
+    }
+
     /**
      * Builder class for DistinguishedName. Builder pattern chosen as all DN fields are technically optional
      */
@@ -0,0 +1,174 @@
+package net.majatech.ca.authority.certificate;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.operator.OutputEncryptor;
+import org.bouncycastle.pkcs.PKCS12PfxPdu;
+import org.bouncycastle.pkcs.PKCS12PfxPduBuilder;
+import org.bouncycastle.pkcs.PKCS12SafeBag;
+import org.bouncycastle.pkcs.PKCS12SafeBagBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS12SafeBagBuilder;
+import org.bouncycastle.pkcs.jcajce.JcePKCS12MacCalculatorBuilder;
+import org.bouncycastle.pkcs.jcajce.JcePKCSPBEOutputEncryptorBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+
+/**
+ * Encodes the key and certificate chain of a CertificateHolder directly into a PKCS12 file using the BouncyCastle PFX
+ * builders
+ * <br><br>
+ * Unlike {@link CertificateHolder#generateKeyStore}, no intermediate KeyStore is created and the result is encoded
+ * straight to its final size, or to an OutputStream. The encryption and MAC profiles, including their iteration
+ * counts, are taken from the configuration, so the cost of the key derivation is an explicit choice rather than the
+ * JDK default
+ */
+@Component
+public class Pkcs12Encoder {
+
+    /**
+     * The algorithm protecting the private key, and the certificates if those are encrypted too
+     */
+    public enum Encryption {
+        // PBES2 with PBKDF2-HMAC-SHA256 and AES-256-CBC
+        AES_256_CBC,
+        // PKCS12 PBE with SHA1 and 3DES, for clients that do not support PBES2
+        LEGACY_3DES
+    }
+
+    /**
+     * The digest used by the PKCS12 integrity MAC
+     */
+    public enum MacAlgorithm {
+        SHA1(OIWObjectIdentifiers.idSHA1),
+        SHA256(NISTObjectIdentifiers.id_sha256),
+        SHA512(NISTObjectIdentifiers.id_sha512);
+
+        private final ASN1ObjectIdentifier digestOid;
+
+        MacAlgorithm(ASN1ObjectIdentifier digestOid) {
+            this.digestOid = digestOid;
+        }
+    }
+
+    private static final AlgorithmIdentifier HMAC_SHA256 =
+            new AlgorithmIdentifier(PKCSObjectIdentifiers.id_hmacWithSHA256, DERNull.INSTANCE);
+
+    private final CaSettings.Pkcs12 settings;
+
+    @Autowired
+    public Pkcs12Encoder(CaSettings caSettings) {
+        this.settings = caSettings.getPkcs12();
+    }
+
+    /**
+     * Encode the private key and certificate chain of the holder as PKCS12
+     * @param certificateHolder The signed certificate and its KeyPair
+     * @param pass The password protecting the private key and the integrity of the file
+     * @param alias The friendly name of the key entry
+     * @return The DER encoded PKCS12 file
+     */
+    public byte[] encode(CertificateHolder certificateHolder, String pass, String alias) {
+        try {
+            return build(certificateHolder, pass, alias).getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Encode the private key and certificate chain of the holder as PKCS12, writing it to the provided stream
+     * @param certificateHolder The signed certificate and its KeyPair
+     * @param pass The password protecting the private key and the integrity of the file
+     * @param alias The friendly name of the key entry
+     * @param os The stream to write to. It is not closed
+     */
+    public void encode(CertificateHolder certificateHolder, String pass, String alias, OutputStream os) {
+        try {
+            build(certificateHolder, pass, alias).toASN1Structure().encodeTo(os, ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    private PKCS12PfxPdu build(CertificateHolder certificateHolder, String pass, String alias) {
+        if (certificateHolder.getKeyPair().getPrivate() == null) {
+            throw new CaException("A KeyStore can not be generated without the subject private key");
+        }
+
+        try {
+            char[] password = pass.toCharArray();
+            X509Certificate certificate = certificateHolder.getX509Certificate();
+            DERBMPString friendlyName = new DERBMPString(alias);
+            ASN1OctetString localKeyId = localKeyId(certificate);
+
+            PKCS12SafeBagBuilder certBagBuilder = new JcaPKCS12SafeBagBuilder(certificate);
+            certBagBuilder.addBagAttribute(PKCS12SafeBag.friendlyNameAttribute, friendlyName);
+            certBagBuilder.addBagAttribute(PKCS12SafeBag.localKeyIdAttribute, localKeyId);
+
+            PKCS12SafeBag[] certBags = {
+                    certBagBuilder.build(),
+                    new JcaPKCS12SafeBagBuilder(certificateHolder.getIssuerInfo().rootCa()).build()
+            };
+
+            PKCS12SafeBagBuilder keyBagBuilder = new JcaPKCS12SafeBagBuilder(
+                    certificateHolder.getKeyPair().getPrivate(), buildEncryptor(password));
+            keyBagBuilder.addBagAttribute(PKCS12SafeBag.friendlyNameAttribute, friendlyName);
+            keyBagBuilder.addBagAttribute(PKCS12SafeBag.localKeyIdAttribute, localKeyId);
+
+            PKCS12PfxPduBuilder pfxBuilder = new PKCS12PfxPduBuilder();
+            if (settings.isEncryptCertificates()) {
+                pfxBuilder.addEncryptedData(buildEncryptor(password), certBags);
+            } else {
+                pfxBuilder.addData(certBags);
+            }
+            pfxBuilder.addData(keyBagBuilder.build());
+
+            return pfxBuilder.build(new JcePKCS12MacCalculatorBuilder(settings.getMacAlgorithm().digestOid)
+                    .setIterationCount(settings.getMacIterationCount()), password);
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    private OutputEncryptor buildEncryptor(char[] password) throws Exception {
+        JcePKCSPBEOutputEncryptorBuilder builder = switch (settings.getEncryption()) {
+            case AES_256_CBC -> new JcePKCSPBEOutputEncryptorBuilder(NISTObjectIdentifiers.id_aes256_CBC)
+                    .setPRF(HMAC_SHA256);
+            case LEGACY_3DES -> new JcePKCSPBEOutputEncryptorBuilder(
+                    PKCSObjectIdentifiers.pbeWithSHAAnd3_KeyTripleDES_CBC);
+        };
+
+        return builder.setProvider("BC").setIterationCount(settings.getIterationCount()).build(password);
+    }
+
+    /**
+     * The local key ID links the key entry to its certificate. The subject key identifier of the certificate is used
+     * where present, as it is already a hash of the public key
+     */
+    private ASN1OctetString localKeyId(X509Certificate certificate) throws Exception {
+        byte[] extensionValue = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+
+        if (extensionValue != null) {
+            return ASN1OctetString.getInstance(ASN1OctetString.getInstance(extensionValue).getOctets());
+        }
+
+        return new DEROctetString(
+                new JcaX509ExtensionUtils().createSubjectKeyIdentifier(certificate.getPublicKey()).getKeyIdentifier());
+    }
+}
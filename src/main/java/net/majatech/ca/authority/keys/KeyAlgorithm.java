@@ -0,0 +1,103 @@
+package net.majatech.ca.authority.keys;
+
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.jce.ECNamedCurveTable;
+
+import java.security.Key;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.EdECKey;
+import java.security.interfaces.RSAKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * The key and signature algorithm profiles that can be used for subject KeyPairs and issuer signatures
+ * <br><br>
+ * RSA remains the default. EC and EdDSA keys are considerably faster to generate and sign with, and also produce
+ * smaller certificates and KeyStores
+ * <br><br>
+ * Each profile has a single RSA modulus size or EC curve, so an existing key, such as one being renewed, is only ever
+ * matched to the profile it was actually generated with
+ */
+public enum KeyAlgorithm {
+    RSA_2048("RSA", 2048, null, "SHA256withRSA"),
+    RSA_3072("RSA", 3072, null, "SHA256withRSA"),
+    RSA_4096("RSA", 4096, null, "SHA256withRSA"),
+    EC_P256("EC", 0, new ECGenParameterSpec("secp256r1"), "SHA256withECDSA"),
+    EC_P384("EC", 0, new ECGenParameterSpec("secp384r1"), "SHA384withECDSA"),
+    ED25519("Ed25519", 0, null, "Ed25519");
+
+    private final String algorithm;
+    private final int keySize;
+    private final AlgorithmParameterSpec parameterSpec;
+    private final String signatureAlgorithm;
+
+    KeyAlgorithm(String algorithm, int keySize, AlgorithmParameterSpec parameterSpec, String signatureAlgorithm) {
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.parameterSpec = parameterSpec;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * Determine the profile of an existing key, for example the key of an issuer or of a received CSR, from its RSA
+     * modulus size or EC curve
+     * @param key The public or private key
+     * @return The matching KeyAlgorithm
+     * @throws CaException If no profile matches the key
+     */
+    public static KeyAlgorithm forKey(Key key) {
+        for (KeyAlgorithm keyAlgorithm : values()) {
+            if (keyAlgorithm.matches(key)) {
+                return keyAlgorithm;
+            }
+        }
+
+        throw new CaException("Unsupported key: " + describe(key));
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return The key size in bits, or 0 if the key size is determined by the parameter spec
+     */
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * @return The key generation parameters, or null if the algorithm does not take any
+     */
+    public AlgorithmParameterSpec getParameterSpec() {
+        return parameterSpec;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    private boolean matches(Key key) {
+        return switch (algorithm) {
+            case "RSA" -> key instanceof RSAKey rsaKey && rsaKey.getModulus().bitLength() == keySize;
+            case "EC" -> key instanceof ECKey ecKey && ecKey.getParams() != null
+                    && ECNamedCurveTable.getParameterSpec(((ECGenParameterSpec) parameterSpec).getName()).getN()
+                            .equals(ecKey.getParams().getOrder());
+            // The JDK names every EdDSA key "EdDSA", so its curve is read from the parameters instead
+            default -> key.getAlgorithm().equals(algorithm) || (key.getAlgorithm().equals("EdDSA")
+                    && (!(key instanceof EdECKey edEcKey) || edEcKey.getParams().getName().equals(algorithm)));
+        };
+    }
+
+    private static String describe(Key key) {
+        if (key instanceof RSAKey rsaKey) {
+            return "RSA " + rsaKey.getModulus().bitLength();
+        }
+        if (key instanceof ECKey ecKey && ecKey.getParams() != null) {
+            return "EC " + ecKey.getParams().getCurve().getField().getFieldSize();
+        }
+
+        return key.getAlgorithm();
+    }
+}
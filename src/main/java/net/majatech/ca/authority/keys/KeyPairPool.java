@@ -0,0 +1,180 @@
+package net.majatech.ca.authority.keys;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.utils.KeyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.security.KeyPair;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of pre-generated KeyPairs so that RSA prime generation does not happen on the request thread
+ * <br><br>
+ * Background workers keep the pool topped up between the configured low and high water marks. If the pool is ever
+ * drained, for example by a burst of issuance, the caller generates its KeyPair inline instead of waiting
+ * <br><br>
+ * A separate pool is kept for each configured KeyAlgorithm. Algorithms that are not pooled, which by default are the
+ * cheap EC and EdDSA profiles, are always generated inline
+ */
+@Component
+public class KeyPairPool implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final CaSettings.KeyPool settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<KeyAlgorithm, Pool> pools = new EnumMap<>(KeyAlgorithm.class);
+    private final ExecutorService refillExecutor;
+
+    @Autowired
+    public KeyPairPool(CaSettings caSettings, MeterRegistry meterRegistry) {
+        this.settings = caSettings.getKeyPool();
+        this.meterRegistry = meterRegistry;
+        this.refillExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "keypair-pool-refill");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        for (KeyAlgorithm keyAlgorithm : KeyAlgorithm.values()) {
+            boolean pooled = settings.isEnabled() && settings.getAlgorithms().contains(keyAlgorithm);
+            pools.put(keyAlgorithm, new Pool(keyAlgorithm, pooled));
+        }
+    }
+
+    /**
+     * Fill the pools once the application has started, as the BouncyCastle provider is only guaranteed to be
+     * registered by then
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefill() {
+        pools.values().forEach(Pool::refillIfRequired);
+    }
+
+    /**
+     * Take an RSA KeyPair from the pool, generating one on the calling thread if the pool is empty
+     * @return A KeyPair that has never been handed out before
+     */
+    public KeyPair take() {
+        return take(KeyAlgorithm.RSA_2048);
+    }
+
+    /**
+     * Take a KeyPair of the requested algorithm from the pool, generating one on the calling thread if the pool is
+     * empty or the algorithm is not pooled
+     * @param keyAlgorithm The algorithm of the KeyPair
+     * @return A KeyPair that has never been handed out before
+     */
+    public KeyPair take(KeyAlgorithm keyAlgorithm) {
+        return pools.get(keyAlgorithm).take();
+    }
+
+    public int size() {
+        return size(KeyAlgorithm.RSA_2048);
+    }
+
+    public int size(KeyAlgorithm keyAlgorithm) {
+        return pools.get(keyAlgorithm).keyPairs.size();
+    }
+
+    @Override
+    public void destroy() {
+        refillExecutor.shutdownNow();
+    }
+
+    private class Pool {
+        private final KeyAlgorithm keyAlgorithm;
+        private final boolean pooled;
+        private final BlockingQueue<KeyPair> keyPairs;
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+
+        private final Counter pooledCounter;
+        private final Counter inlineCounter;
+        private final Timer refillTimer;
+
+        private Pool(KeyAlgorithm keyAlgorithm, boolean pooled) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.pooled = pooled;
+            this.keyPairs = new ArrayBlockingQueue<>(Math.max(1, settings.getHighWaterMark()));
+
+            String algorithm = keyAlgorithm.name();
+            Gauge.builder("ca.keypool.depth", keyPairs, BlockingQueue::size)
+                    .description("Number of pre-generated KeyPairs currently available")
+                    .tag("algorithm", algorithm)
+                    .register(meterRegistry);
+            this.pooledCounter = Counter.builder("ca.keypool.taken")
+                    .tag("algorithm", algorithm)
+                    .tag("source", "pool")
+                    .register(meterRegistry);
+            this.inlineCounter = Counter.builder("ca.keypool.taken")
+                    .tag("algorithm", algorithm)
+                    .tag("source", "inline")
+                    .register(meterRegistry);
+            this.refillTimer = Timer.builder("ca.keypool.refill")
+                    .description("Time taken to generate a KeyPair in the background. The count gives the refill rate")
+                    .tag("algorithm", algorithm)
+                    .register(meterRegistry);
+        }
+
+        private KeyPair take() {
+            KeyPair keyPair = pooled ? keyPairs.poll() : null;
+            refillIfRequired();
+
+            if (keyPair == null) {
+                inlineCounter.increment();
+                return KeyUtils.generateKeyPair(keyAlgorithm);
+            }
+
+            pooledCounter.increment();
+            return keyPair;
+        }
+
+        private void refillIfRequired() {
+            if (!pooled || keyPairs.size() >= settings.getLowWaterMark()) {
+                return;
+            }
+
+            // Only start workers if none are running, a running worker will keep going until the high water mark
+            int workers = Math.max(1, settings.getWorkers());
+            if (activeWorkers.compareAndSet(0, workers)) {
+                for (int i = 0; i < workers; i++) {
+                    refillExecutor.execute(this::refill);
+                }
+            }
+        }
+
+        private void refill() {
+            try {
+                while (keyPairs.size() < settings.getHighWaterMark()) {
+                    Timer.Sample sample = Timer.start();
+                    KeyPair keyPair = KeyUtils.generateKeyPair(keyAlgorithm);
+                    sample.stop(refillTimer);
+
+                    if (!keyPairs.offer(keyPair)) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Failed to refill the {} KeyPair pool", keyAlgorithm, e);
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package net.majatech.ca.authority.signing;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Published when a certificate that has already been issued fails its post-issuance verification
+ * @param certificate The certificate that failed verification
+ * @param reason The cause of the failure
+ */
+public record CertificateAuditFailedEvent(X509Certificate certificate, String reason) {
+}
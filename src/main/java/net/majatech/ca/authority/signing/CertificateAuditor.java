@@ -0,0 +1,160 @@
+package net.majatech.ca.authority.signing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies that issued certificates were signed correctly, either inline or off the request path
+ * <br><br>
+ * INLINE verifies every certificate before it is returned and fails issuance on a mismatch. SAMPLED does the same for
+ * a configurable fraction of certificates. ASYNC returns immediately and re-verifies every certificate on a background
+ * audit worker; failures are recorded, logged and published as a CertificateAuditFailedEvent. Should the audit queue
+ * ever be full, the certificate is audited on the calling thread so that no certificate goes unverified
+ */
+@Component
+public class CertificateAuditor implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(CertificateAuditor.class);
+    private static final int MAX_RECORDED_FAILURES = 100;
+
+    /**
+     * When and how often issued certificates are verified
+     */
+    public enum VerificationMode {
+        INLINE,
+        SAMPLED,
+        ASYNC
+    }
+
+    private final CaSettings.Signing settings;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolExecutor auditExecutor;
+    private final Deque<AuditFailure> failures = new ArrayDeque<>();
+
+    private final Counter verifiedCounter;
+    private final Counter skippedCounter;
+    private final Counter failureCounter;
+
+    @Autowired
+    public CertificateAuditor(CaSettings caSettings, MeterRegistry meterRegistry,
+                              ApplicationEventPublisher eventPublisher) {
+        this.settings = caSettings.getSigning();
+        this.eventPublisher = eventPublisher;
+        this.auditExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.getAuditQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "certificate-audit");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Gauge.builder("ca.audit.queue", auditExecutor, executor -> executor.getQueue().size())
+                .description("Number of issued certificates waiting to be audited")
+                .register(meterRegistry);
+        this.verifiedCounter = Counter.builder("ca.audit.verified").register(meterRegistry);
+        this.skippedCounter = Counter.builder("ca.audit.skipped").register(meterRegistry);
+        this.failureCounter = Counter.builder("ca.audit.failures").register(meterRegistry);
+    }
+
+    /**
+     * Verify the newly issued certificate according to the configured VerificationMode
+     * @param certificateHolder The issued certificate and its issuer
+     * @throws CaException If the certificate is verified inline and verification fails
+     */
+    public void verify(CertificateHolder certificateHolder) {
+        switch (settings.getVerification()) {
+            case INLINE -> verifyInline(certificateHolder);
+            case SAMPLED -> {
+                if (ThreadLocalRandom.current().nextDouble() < settings.getVerificationSampleRate()) {
+                    verifyInline(certificateHolder);
+                } else {
+                    skippedCounter.increment();
+                }
+            }
+            case ASYNC -> auditExecutor.execute(() -> audit(certificateHolder));
+        }
+    }
+
+    /**
+     * @return The most recent audit failures, oldest first
+     */
+    public List<AuditFailure> getFailures() {
+        synchronized (failures) {
+            return List.copyOf(failures);
+        }
+    }
+
+    private void verifyInline(CertificateHolder certificateHolder) {
+        try {
+            checkCertificate(certificateHolder);
+        } catch (Exception e) {
+            failureCounter.increment();
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    private void audit(CertificateHolder certificateHolder) {
+        try {
+            checkCertificate(certificateHolder);
+        } catch (Exception e) {
+            X509Certificate certificate = certificateHolder.getX509Certificate();
+            AuditFailure failure = new AuditFailure(certificate.getSerialNumber().toString(16),
+                    certificate.getSubjectX500Principal().toString(), String.valueOf(e.getMessage()), Instant.now());
+
+            synchronized (failures) {
+                if (failures.size() == MAX_RECORDED_FAILURES) {
+                    failures.removeFirst();
+                }
+                failures.addLast(failure);
+            }
+
+            failureCounter.increment();
+            log.error("Issued certificate failed audit. Serial: {}, Subject: {}",
+                    failure.serialNumber(), failure.subjectDn(), e);
+            eventPublisher.publishEvent(new CertificateAuditFailedEvent(certificate, failure.reason()));
+        }
+    }
+
+    private void checkCertificate(CertificateHolder certificateHolder) throws Exception {
+        X509Certificate certificate = certificateHolder.getX509Certificate();
+        certificate.checkValidity();
+        certificate.verify(certificateHolder.getIssuerInfo().keyPair().getPublic());
+
+        verifiedCounter.increment();
+    }
+
+    @Override
+    public void destroy() {
+        auditExecutor.shutdown();
+    }
+
+    /**
+     * A certificate that failed its asynchronous audit
+     * @param serialNumber The hex encoded serial number of the certificate
+     * @param subjectDn The Subject DN of the certificate
+     * @param reason The cause of the failure
+     * @param detectedAt When the failure was detected
+     */
+    public record AuditFailure(String serialNumber, String subjectDn, String reason, Instant detectedAt) {
+    }
+}
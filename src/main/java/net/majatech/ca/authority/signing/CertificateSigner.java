@@ -2,24 +2,26 @@ package net.majatech.ca.authority.signing;
 
 import net.majatech.ca.authority.certificate.CertificateHolder;
 import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.*;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.springframework.core.io.ClassPathResource;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.security.*;
-import java.security.cert.CertificateFactory;
+import java.security.KeyPair;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Abstract class that makes use of the Template Design Pattern
@@ -29,88 +31,216 @@ import java.util.Date;
  * <br><br>
  * The bulk of the logic - the Template - is implemented in this class, and Signers for different types of certificate
  * can extend this class to add the extensions that are specific to that certificate type
+ * <br><br>
+ * Those extensions are encoded once per signer. Only the parts that differ between certificates - the serial number,
+ * validity, subject, public key and subject key identifier - are assembled for each certificate
  */
 public abstract class CertificateSigner {
-    private static final int SERIAL_NUMBER_LENGTH = 128;
-    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    // Extensions of a renewed certificate that are taken from the original as they are
+    private static final Set<ASN1ObjectIdentifier> RENEWED_EXTENSIONS = Set.of(Extension.subjectAlternativeName,
+            Extension.keyUsage, Extension.extendedKeyUsage, Extension.basicConstraints);
+
+    // Extensions of a renewed certificate that are issued afresh, as they depend on the issuer and the public key
+    private static final Set<ASN1ObjectIdentifier> REISSUED_EXTENSIONS =
+            Set.of(Extension.authorityKeyIdentifier, Extension.subjectKeyIdentifier);
+
+    private final IssuerRegistry issuerRegistry;
+    private final SigningEngine signingEngine;
+    private final CertificateAuditor certificateAuditor;
+    private final SerialNumberSource serialNumberSource;
+
+    private volatile List<Extension> profileExtensions;
+
+    protected CertificateSigner(IssuerRegistry issuerRegistry, SigningEngine signingEngine,
+                                CertificateAuditor certificateAuditor, SerialNumberSource serialNumberSource) {
+        this.issuerRegistry = issuerRegistry;
+        this.signingEngine = signingEngine;
+        this.certificateAuditor = certificateAuditor;
+        this.serialNumberSource = serialNumberSource;
+    }
 
     /**
-     * Signs the provided CSR with the Root CA Certificate
+     * Signs the provided CSR with the default issuer, which is the Root CA Certificate
      * @param csr The CSR to sign
      * @return A CertificateHolder containing the signed certificate and its corresponding data
      */
     public CertificateHolder sign(CertificateSigningRequest csr) {
+        return sign(csr, issuerRegistry.getIssuer());
+    }
+
+    /**
+     * Signs the provided CSR with the named issuer
+     * @param csr The CSR to sign
+     * @param issuerName The name of the issuer as configured in the IssuerRegistry
+     * @return A CertificateHolder containing the signed certificate and its corresponding data
+     */
+    public CertificateHolder sign(CertificateSigningRequest csr, String issuerName) {
+        return sign(csr, issuerRegistry.getIssuer(issuerName));
+    }
+
+    /**
+     * Signs all of the provided CSRs with the default issuer in a single pass
+     * <br><br>
+     * The issuer dependent state - the ContentSigner and the pre-encoded profile and authority key identifier
+     * extensions - is looked up once and shared by the whole batch rather than once per certificate
+     * @param csrs The CSRs to sign
+     * @return The CertificateHolders, in the same order as the provided CSRs
+     */
+    public List<CertificateHolder> signAll(List<CertificateSigningRequest> csrs) {
+        IssuanceContext context = new IssuanceContext(issuerRegistry.getIssuer());
+
+        List<CertificateHolder> certificateHolders = new ArrayList<>(csrs.size());
+        for (CertificateSigningRequest csr : csrs) {
+            certificateHolders.add(context.sign(csr));
+        }
+
+        return certificateHolders;
+    }
+
+    /**
+     * Re-sign an existing certificate with the named issuer for a fresh validity period, such as when renewing it
+     * <br><br>
+     * The encoded subject and public key of the certificate are kept exactly as they are, as are its subject
+     * alternative name, key usage, extended key usage and basic constraints extensions, rather than the extensions of
+     * this signer's profile. The authority and subject key identifiers are issued afresh
+     * @param certificate The certificate to renew
+     * @param keyPair The KeyPair of the certificate
+     * @param issuerName The name of the issuer as configured in the IssuerRegistry
+     * @return A CertificateHolder containing the renewed certificate and its corresponding data
+     * @throws CaException If the certificate has a critical extension that can not be carried over
+     */
+    public CertificateHolder renew(X509Certificate certificate, KeyPair keyPair, String issuerName) {
+        X509CertificateHolder original;
         try {
-            IssuerInfo issuerInfo = fetchIssuerInfo();
-            BigInteger serialNumber = new BigInteger(SERIAL_NUMBER_LENGTH, new SecureRandom());
-
-            PublicKey subjectPublicKey = csr.getPublicKey();
-            SubjectPublicKeyInfo subPubKeyInfo = SubjectPublicKeyInfo.getInstance(subjectPublicKey.getEncoded());
-
-            // Set certificate validity to 1 year
-            Instant notBefore = Instant.now();
-            Instant notAfter = notBefore.plus(365, ChronoUnit.DAYS);
-
-            JcaX509ExtensionUtils extUtils = new JcaX509ExtensionUtils();
-            X509v3CertificateBuilder certBuilder =
-                    new X509v3CertificateBuilder(
-                            issuerInfo.getDistinguishedName(),
-                            serialNumber,
-                            Date.from(notBefore),
-                            Date.from(notAfter),
-                            csr.getDistinguishedName().toX500Name(),
-                            subPubKeyInfo)
-                            .addExtension(Extension.keyUsage, false, getKeyUsage())
-                            .addExtension(Extension.extendedKeyUsage, true, getExtendedKeyUsage())
-                            .addExtension(Extension.authorityKeyIdentifier, false,
-                                    extUtils.createAuthorityKeyIdentifier(issuerInfo.keyPair().getPublic()))
-                            .addExtension(Extension.subjectKeyIdentifier, false,
-                                    extUtils.createSubjectKeyIdentifier(subjectPublicKey));
-
-            ContentSigner signer =
-                    new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(issuerInfo.keyPair().getPrivate());
-            X509CertificateHolder holder = certBuilder.build(signer);
-            X509Certificate cert = new JcaX509CertificateConverter().setProvider("BC").getCertificate(holder);
-
-            // Verify the certificate was signed correctly
-            cert.checkValidity();
-            cert.verify(issuerInfo.keyPair().getPublic());
-
-            return CertificateHolder.with(cert, csr.getKeyPair(), issuerInfo);
-        } catch (Exception e) {
+            original = new JcaX509CertificateHolder(certificate);
+        } catch (CertificateEncodingException e) {
             throw new CaException(e.getMessage(), e);
         }
+
+        List<Extension> extensions = new ArrayList<>();
+        Extensions originalExtensions = original.getExtensions();
+        if (originalExtensions != null) {
+            for (ASN1ObjectIdentifier oid : originalExtensions.getExtensionOIDs()) {
+                Extension extension = originalExtensions.getExtension(oid);
+                if (RENEWED_EXTENSIONS.contains(oid)) {
+                    extensions.add(extension);
+                } else if (extension.isCritical() && !REISSUED_EXTENSIONS.contains(oid)) {
+                    throw new CaException("Certificate has a critical extension that can not be renewed: " + oid);
+                }
+            }
+        }
+
+        CertificateHolder renewed = new IssuanceContext(issuerRegistry.getIssuer(issuerName), extensions)
+                .sign(original.getSubject(), original.getSubjectPublicKeyInfo(), keyPair);
+
+        if (!renewed.getX509Certificate().getSubjectX500Principal().equals(certificate.getSubjectX500Principal())) {
+            throw new CaException("Renewed certificate subject differs from " + certificate.getSubjectX500Principal());
+        }
+
+        return renewed;
+    }
+
+    private CertificateHolder sign(CertificateSigningRequest csr, IssuerInfo issuerInfo) {
+        return new IssuanceContext(issuerInfo).sign(csr);
     }
 
     /**
-     * The IssuerInfo in the case of this demonstration project is just all data relating to the Root CA certificate.
-     * <br><br>
-     * This method will fetch the Root CA certificate as well as its corresponding private key for signing purposes.
-     * @return The IssuerInfo for the Root CA certificate
+     * The constant extensions of this certificate profile, DER encoded once on first use and shared by every
+     * certificate signed by this signer
+     * @return The encoded profile extensions
      */
-    private IssuerInfo fetchIssuerInfo() {
-        X509Certificate caCert;
-        PublicKey rootCaPubKey;
-        PrivateKey rootCaPrivKey = getRootCaPrivateKey();
-
-        try (InputStream is = new ClassPathResource("/ca/rootca.pem").getInputStream()) {
-            CertificateFactory factory = CertificateFactory.getInstance("X.509", "BC");
-
-            caCert = (X509Certificate) factory.generateCertificate(is);
-            rootCaPubKey = caCert.getPublicKey();
-        } catch (Exception e) {
-            throw new CaException("Unexpected error occurred during CA Certificate retrieval");
+    protected List<Extension> getProfileExtensions() {
+        List<Extension> extensions = profileExtensions;
+
+        if (extensions == null) {
+            try {
+                extensions = List.copyOf(createProfileExtensions());
+            } catch (IOException e) {
+                throw new CaException(e.getMessage(), e);
+            }
+            profileExtensions = extensions;
         }
 
-        return IssuerInfo.from(new KeyPair(rootCaPubKey, rootCaPrivKey), caCert);
+        return extensions;
+    }
+
+    /**
+     * Build the extensions that are the same for every certificate of this profile. By default these are the key
+     * usage and extended key usage, subclasses can override this method to add further constant extensions
+     * @return The profile extensions
+     * @throws IOException If an extension can not be encoded
+     */
+    protected List<Extension> createProfileExtensions() throws IOException {
+        return List.of(
+                new Extension(Extension.keyUsage, false, getKeyUsage().getEncoded(ASN1Encoding.DER)),
+                new Extension(Extension.extendedKeyUsage, true, getExtendedKeyUsage().getEncoded(ASN1Encoding.DER)));
     }
 
-    private PrivateKey getRootCaPrivateKey() {
-        try (InputStream is = new ClassPathResource("/ca/private.der").getInputStream()) {
-            KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-            return kf.generatePrivate(new PKCS8EncodedKeySpec(is.readAllBytes()));
-        } catch (Exception e) {
-            throw new CaException("Unexpected error occurred while reading Root CA Private Key");
+    /**
+     * The issuer dependent state required to sign certificates. Must only be used by the thread that created it, as
+     * the ContentSigner is bound to that thread by the SigningEngine
+     */
+    private class IssuanceContext {
+        private final IssuerInfo issuerInfo;
+        private final List<Extension> extensions;
+        private final ContentSigner signer;
+
+        private IssuanceContext(IssuerInfo issuerInfo) {
+            // All pre-encoded extensions that do not depend on the subject
+            this(issuerInfo, getProfileExtensions());
+        }
+
+        private IssuanceContext(IssuerInfo issuerInfo, List<Extension> certificateExtensions) {
+            this.issuerInfo = issuerInfo;
+            this.signer = signingEngine.getContentSigner(issuerInfo);
+
+            this.extensions = new ArrayList<>(certificateExtensions.size() + 1);
+            this.extensions.addAll(certificateExtensions);
+            this.extensions.add(issuerInfo.authorityKeyIdentifier());
+        }
+
+        private CertificateHolder sign(CertificateSigningRequest csr) {
+            // The CSR already holds the encoded public key, so there is no need to encode it again
+            return sign(csr.getDistinguishedName().toX500Name(), csr.getCsr().getSubjectPublicKeyInfo(),
+                    csr.getKeyPair());
+        }
+
+        private CertificateHolder sign(X500Name subject, SubjectPublicKeyInfo subPubKeyInfo, KeyPair keyPair) {
+            try {
+                BigInteger serialNumber = serialNumberSource.nextSerialNumber();
+
+                // Set certificate validity to 1 year
+                Instant notBefore = Instant.now();
+                Instant notAfter = notBefore.plus(365, ChronoUnit.DAYS);
+
+                X509v3CertificateBuilder certBuilder =
+                        new X509v3CertificateBuilder(
+                                issuerInfo.getDistinguishedName(),
+                                serialNumber,
+                                Date.from(notBefore),
+                                Date.from(notAfter),
+                                subject,
+                                subPubKeyInfo);
+
+                for (Extension extension : extensions) {
+                    certBuilder.addExtension(extension);
+                }
+                certBuilder.addExtension(Extension.subjectKeyIdentifier, false,
+                        signingEngine.createSubjectKeyIdentifier(subPubKeyInfo));
+
+                X509CertificateHolder holder = certBuilder.build(signer);
+                X509Certificate cert = signingEngine.toX509Certificate(holder);
+
+                CertificateHolder certificateHolder = CertificateHolder.with(cert, keyPair, issuerInfo);
+
+                // Verify the certificate was signed correctly, either now or in the background depending on the mode
+                certificateAuditor.verify(certificateHolder);
+
+                return certificateHolder;
+            } catch (Exception e) {
+                throw new CaException(e.getMessage(), e);
+            }
         }
     }
 
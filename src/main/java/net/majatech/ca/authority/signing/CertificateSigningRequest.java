@@ -1,24 +1,36 @@
 package net.majatech.ca.authority.signing;
 
 import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.keys.KeyAlgorithm;
 import net.majatech.ca.exceptions.CaException;
 import net.majatech.ca.utils.KeyUtils;
+import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifierProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequest;
 import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
 
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
 
 /**
  * Wrapper class to hold the CSR as well as the data corresponding to it, such as the KeyPair and Subject DN
+ * <br><br>
+ * CSRs received from clients only carry the subject public key. The private key never leaves the client, so the
+ * KeyPair of such a CSR has no private key
  */
 public class CertificateSigningRequest {
-    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String PEM_HEADER = "-----BEGIN";
+    private static final int MIN_RSA_KEY_SIZE = 2048;
 
     private final KeyPair keyPair;
     private final PKCS10CertificationRequest csr;
@@ -36,10 +48,33 @@ public class CertificateSigningRequest {
      * @return The CSR wrapper containing all of the related data
      */
     public static CertificateSigningRequest using(DistinguishedName dn) {
-        final KeyPair keyPair = KeyUtils.generateKeyPair();
+        return using(dn, KeyUtils.generateKeyPair());
+    }
 
+    /**
+     * Static builder which will generate a new KeyPair of the requested algorithm and create a PKCS10 compliant CSR
+     * with the provided DN
+     * @param dn The Subject Distinguished Name to use in the certificate
+     * @param keyAlgorithm The key and signature algorithm profile of the subject
+     * @return The CSR wrapper containing all of the related data
+     */
+    public static CertificateSigningRequest using(DistinguishedName dn, KeyAlgorithm keyAlgorithm) {
+        return using(dn, KeyUtils.generateKeyPair(keyAlgorithm));
+    }
+
+    /**
+     * Static builder which will create a PKCS10 compliant CSR with the provided DN, using an already generated KeyPair
+     * <br><br>
+     * The CSR is self-signed with the signature algorithm matching the type of the KeyPair
+     * @param dn The Subject Distinguished Name to use in the certificate
+     * @param keyPair The KeyPair of the subject, for example one taken from the KeyPairPool
+     * @return The CSR wrapper containing all of the related data
+     */
+    public static CertificateSigningRequest using(DistinguishedName dn, KeyPair keyPair) {
         try {
-            ContentSigner signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(keyPair.getPrivate());
+            String signatureAlgorithm = KeyAlgorithm.forKey(keyPair.getPublic()).getSignatureAlgorithm();
+            ContentSigner signer =
+                    new JcaContentSignerBuilder(signatureAlgorithm).setProvider("BC").build(keyPair.getPrivate());
 
             PKCS10CertificationRequestBuilder requestBuilder =
                     new JcaPKCS10CertificationRequestBuilder(dn.toX500Name(), keyPair.getPublic());
@@ -51,10 +86,81 @@ public class CertificateSigningRequest {
         }
     }
 
+    /**
+     * Parse a PKCS10 CSR received from a client, encoded either as PEM or DER, and verify its proof of possession
+     * @param encoded The PEM or DER encoded CSR
+     * @return The CSR wrapper, without a subject private key
+     */
+    public static CertificateSigningRequest parse(byte[] encoded) {
+        try {
+            String text = new String(encoded, StandardCharsets.US_ASCII).trim();
+            if (!text.startsWith(PEM_HEADER)) {
+                return from(new PKCS10CertificationRequest(encoded));
+            }
+
+            try (PEMParser pemParser = new PEMParser(new StringReader(text))) {
+                if (pemParser.readObject() instanceof PKCS10CertificationRequest csr) {
+                    return from(csr);
+                }
+            }
+        } catch (CaException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CaException("Please provide a valid PEM or DER encoded PKCS10 CSR", e);
+        }
+
+        throw new CaException("Please provide a valid PEM or DER encoded PKCS10 CSR");
+    }
+
+    /**
+     * Static builder for a PKCS10 CSR created by a client
+     * <br><br>
+     * The CSR signature is verified against the public key it contains, proving that the client holds the matching
+     * private key. Only the public key and the supported Subject DN fields are taken from the CSR
+     * @param csr The CSR received from the client
+     * @return The CSR wrapper, without a subject private key
+     */
+    public static CertificateSigningRequest from(PKCS10CertificationRequest csr) {
+        try {
+            ContentVerifierProvider verifierProvider =
+                    new JcaContentVerifierProviderBuilder().setProvider("BC").build(csr.getSubjectPublicKeyInfo());
+            if (!csr.isSignatureValid(verifierProvider)) {
+                throw new CaException("CSR signature is invalid, proof of possession failed");
+            }
+
+            PublicKey publicKey = new JcaPKCS10CertificationRequest(csr).setProvider("BC").getPublicKey();
+
+            if (publicKey instanceof RSAPublicKey rsaPublicKey
+                    && rsaPublicKey.getModulus().bitLength() < MIN_RSA_KEY_SIZE) {
+                throw new CaException("RSA keys must be at least " + MIN_RSA_KEY_SIZE + " bits");
+            }
+            // Rejects key algorithms, RSA key sizes and EC curves that are not supported by any profile
+            KeyAlgorithm.forKey(publicKey);
+
+            return new CertificateSigningRequest(
+                    new KeyPair(publicKey, null), csr, DistinguishedName.fromX500Name(csr.getSubject()));
+        } catch (CaException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Whether the subject private key is held by the CA, which is not the case for CSRs received from clients
+     */
+    public boolean hasPrivateKey() {
+        return keyPair.getPrivate() != null;
+    }
+
     public KeyPair getKeyPair() {
         return keyPair;
     }
 
+    public KeyAlgorithm getKeyAlgorithm() {
+        return KeyAlgorithm.forKey(keyPair.getPublic());
+    }
+
     public PublicKey getPublicKey() {
         return keyPair.getPublic();
     }
@@ -3,6 +3,7 @@ package net.majatech.ca.authority.signing;
 import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.KeyUsage;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
@@ -11,6 +12,12 @@ import org.springframework.stereotype.Component;
 @Component
 public class ClientCertificateSigner extends CertificateSigner {
 
+    @Autowired
+    public ClientCertificateSigner(IssuerRegistry issuerRegistry, SigningEngine signingEngine,
+                                   CertificateAuditor certificateAuditor, SerialNumberSource serialNumberSource) {
+        super(issuerRegistry, signingEngine, certificateAuditor, serialNumberSource);
+    }
+
     @Override
     public KeyUsage getKeyUsage() {
        return new KeyUsage(KeyUsage.nonRepudiation | KeyUsage.keyEncipherment | KeyUsage.digitalSignature);
@@ -1,22 +1,49 @@
 package net.majatech.ca.authority.signing;
 
+import net.majatech.ca.authority.keys.KeyAlgorithm;
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.ASN1Encoding;
 import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
 
 /**
  * Record to hold the data relating to the Root CA certificate which will be used for signing certificates
+ * <br><br>
+ * The issuer DN and authority key identifier are the same for every certificate signed by the issuer, so they are
+ * computed and encoded once when the issuer is loaded
  * @param keyPair The Root CA Public and Private KeyPair
  * @param rootCa The Root CA certificate
+ * @param distinguishedName The subject DN of the Root CA, used as the issuer DN of signed certificates
+ * @param authorityKeyIdentifier The DER encoded authority key identifier extension of signed certificates
  */
-public record IssuerInfo(KeyPair keyPair, X509Certificate rootCa) {
+public record IssuerInfo(KeyPair keyPair, X509Certificate rootCa, X500Name distinguishedName,
+                         Extension authorityKeyIdentifier) {
 
     public static IssuerInfo from(KeyPair keyPair, X509Certificate rootCa) {
-        return new IssuerInfo(keyPair, rootCa);
+        try {
+            X500Name distinguishedName = X500Name.getInstance(rootCa.getSubjectX500Principal().getEncoded());
+            Extension authorityKeyIdentifier = new Extension(Extension.authorityKeyIdentifier, false,
+                    new JcaX509ExtensionUtils().createAuthorityKeyIdentifier(keyPair.getPublic())
+                            .getEncoded(ASN1Encoding.DER));
+
+            return new IssuerInfo(keyPair, rootCa, distinguishedName, authorityKeyIdentifier);
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
     }
 
     public X500Name getDistinguishedName() {
-        return X500Name.getInstance(rootCa.getSubjectX500Principal().getEncoded());
+        return distinguishedName;
+    }
+
+    /**
+     * @return The algorithm used to sign certificates, which is determined by the type of the issuer key
+     */
+    public String getSignatureAlgorithm() {
+        return KeyAlgorithm.forKey(keyPair.getPublic()).getSignatureAlgorithm();
     }
 }
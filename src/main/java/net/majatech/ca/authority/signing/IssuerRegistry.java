@@ -0,0 +1,166 @@
+package net.majatech.ca.authority.signing;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.InputStream;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the parsed IssuerInfo of every configured issuer so that signing never has to touch the underlying files
+ * <br><br>
+ * Issuers are loaded once on startup. The source files are then polled for changes and, if modified, the issuer is
+ * re-parsed and swapped in as a whole, so a signer will only ever see either the old or the new certificate and key
+ */
+@Component
+public class IssuerRegistry {
+    private static final Logger log = LoggerFactory.getLogger(IssuerRegistry.class);
+
+    private final CaSettings caSettings;
+    private final ResourceLoader resourceLoader;
+    private final Map<String, LoadedIssuer> issuers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IssuerRegistry(CaSettings caSettings, ResourceLoader resourceLoader) {
+        this.caSettings = caSettings;
+        this.resourceLoader = resourceLoader;
+
+        caSettings.getIssuers().getDefinitions().forEach((name, definition) -> issuers.put(name, load(definition)));
+
+        if (!issuers.containsKey(caSettings.getIssuers().getDefaultIssuer())) {
+            throw new CaException("Default issuer is not configured: " + caSettings.getIssuers().getDefaultIssuer());
+        }
+    }
+
+    /**
+     * @return The IssuerInfo of the default issuer, which in the case of this project is the Root CA
+     */
+    public IssuerInfo getIssuer() {
+        return getIssuer(caSettings.getIssuers().getDefaultIssuer());
+    }
+
+    /**
+     * @param name The name the issuer was configured with
+     * @return The IssuerInfo of the requested issuer
+     */
+    public IssuerInfo getIssuer(String name) {
+        LoadedIssuer loadedIssuer = issuers.get(name);
+
+        if (loadedIssuer == null) {
+            throw new CaException("Unknown issuer: " + name);
+        }
+
+        return loadedIssuer.issuerInfo();
+    }
+
+    public Set<String> getIssuerNames() {
+        return issuers.keySet();
+    }
+
+    /**
+     * Find the configured issuer of a certificate by the issuer DN of the certificate, preferring the default issuer
+     * if several are configured with the same DN
+     * @param issuerDn The issuer DN of the certificate
+     * @return The name of the matching issuer, or empty if none of the configured issuers has that DN
+     */
+    public Optional<String> findIssuerName(X500Principal issuerDn) {
+        String defaultIssuer = caSettings.getIssuers().getDefaultIssuer();
+
+        return issuers.entrySet().stream()
+                .filter(issuer -> issuer.getValue().issuerInfo().rootCa().getSubjectX500Principal().equals(issuerDn))
+                .map(Map.Entry::getKey)
+                .min(Comparator.comparing((String name) -> !name.equals(defaultIssuer))
+                        .thenComparing(Comparator.naturalOrder()));
+    }
+
+    /**
+     * Re-parse any issuer whose certificate or private key has been modified since it was last loaded
+     * <br><br>
+     * If the new files can not be parsed, for example as they are only partially written, the previous IssuerInfo is
+     * kept and the reload is attempted again on the next run
+     * <br><br>
+     * The delay is read from the bound CaSettings rather than from a property placeholder, as @Scheduled only parses
+     * plain milliseconds or ISO-8601 durations, while the settings also accept the short form such as "30s"
+     */
+    @Scheduled(fixedDelayString = "#{@caSettings.issuers.reloadInterval.toMillis()}")
+    public void reloadModifiedIssuers() {
+        caSettings.getIssuers().getDefinitions().forEach((name, definition) -> {
+            LoadedIssuer current = issuers.get(name);
+
+            if (current != null
+                    && current.certificateModified() == lastModified(definition.getCertificate())
+                    && current.privateKeyModified() == lastModified(definition.getPrivateKey())) {
+                return;
+            }
+
+            try {
+                issuers.put(name, load(definition));
+                log.info("Reloaded issuer '{}'", name);
+            } catch (CaException e) {
+                log.warn("Failed to reload issuer '{}', keeping the previously loaded issuer", name, e);
+            }
+        });
+    }
+
+    private LoadedIssuer load(CaSettings.Issuer definition) {
+        // Read the timestamps first so that a file modified mid-load is picked up again on the next reload
+        long certificateModified = lastModified(definition.getCertificate());
+        long privateKeyModified = lastModified(definition.getPrivateKey());
+
+        X509Certificate certificate = readCertificate(definition.getCertificate());
+        PrivateKey privateKey = readPrivateKey(definition.getPrivateKey(), certificate.getPublicKey().getAlgorithm());
+
+        IssuerInfo issuerInfo = IssuerInfo.from(new KeyPair(certificate.getPublicKey(), privateKey), certificate);
+
+        return new LoadedIssuer(issuerInfo, certificateModified, privateKeyModified);
+    }
+
+    private X509Certificate readCertificate(String location) {
+        try (InputStream is = resourceLoader.getResource(location).getInputStream()) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(is);
+        } catch (Exception e) {
+            throw new CaException("Unexpected error occurred during CA Certificate retrieval", e);
+        }
+    }
+
+    private PrivateKey readPrivateKey(String location, String algorithm) {
+        try (InputStream is = resourceLoader.getResource(location).getInputStream()) {
+            return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(is.readAllBytes()));
+        } catch (Exception e) {
+            throw new CaException("Unexpected error occurred while reading CA Private Key", e);
+        }
+    }
+
+    /**
+     * Resources packaged inside the application jar do not always expose a modification time, in which case they are
+     * simply never reloaded
+     */
+    private long lastModified(String location) {
+        try {
+            Resource resource = resourceLoader.getResource(location);
+            return resource.lastModified();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private record LoadedIssuer(IssuerInfo issuerInfo, long certificateModified, long privateKeyModified) {}
+}
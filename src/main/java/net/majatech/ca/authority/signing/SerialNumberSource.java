@@ -0,0 +1,13 @@
+package net.majatech.ca.authority.signing;
+
+import java.math.BigInteger;
+
+/**
+ * Source of certificate serial numbers. Every serial returned must be positive, at most 20 octets long and unique for
+ * the issuing CA
+ */
+@FunctionalInterface
+public interface SerialNumberSource {
+
+    BigInteger nextSerialNumber();
+}
@@ -0,0 +1,141 @@
+package net.majatech.ca.authority.signing;
+
+import net.majatech.ca.authority.keys.KeyAlgorithm;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.util.PrivateKeyFactory;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.bc.BcECContentSignerBuilder;
+import org.bouncycastle.operator.bc.BcRSAContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Provides the reusable, per-thread objects needed to sign certificates
+ * <br><br>
+ * ContentSigners, extension utilities and certificate factories all hold mutable state, so they can not be shared
+ * between threads. Rather than creating them for every certificate, each thread keeps its own instances bound to the
+ * issuer they were created for. Once an issuer is reloaded and the old IssuerInfo is no longer referenced, its
+ * ContentSigners are released as well
+ * <br><br>
+ * With the LIGHTWEIGHT engine, RSA and EC issuers sign through the BouncyCastle lightweight API directly, skipping JCA
+ * provider dispatch. EdDSA issuers always use the JCA engine
+ */
+@Component
+public class SigningEngine {
+
+    /**
+     * The API used to produce certificate signatures
+     */
+    public enum Engine {
+        JCA,
+        LIGHTWEIGHT
+    }
+
+    private final Engine engine;
+
+    private final ThreadLocal<Map<IssuerInfo, ContentSigner>> contentSigners =
+            ThreadLocal.withInitial(WeakHashMap::new);
+    private final ThreadLocal<JcaX509ExtensionUtils> extensionUtils =
+            ThreadLocal.withInitial(SigningEngine::newExtensionUtils);
+    private final ThreadLocal<CertificateFactory> certificateFactories =
+            ThreadLocal.withInitial(SigningEngine::newCertificateFactory);
+
+    @Autowired
+    public SigningEngine(CaSettings caSettings) {
+        this.engine = caSettings.getSigning().getEngine();
+    }
+
+    /**
+     * @param issuerInfo The issuer whose private key should produce the signature
+     * @return A ContentSigner bound to the calling thread. It must not be handed to another thread
+     */
+    public ContentSigner getContentSigner(IssuerInfo issuerInfo) {
+        return contentSigners.get().computeIfAbsent(issuerInfo, this::buildContentSigner);
+    }
+
+    public SubjectKeyIdentifier createSubjectKeyIdentifier(PublicKey publicKey) {
+        return extensionUtils.get().createSubjectKeyIdentifier(publicKey);
+    }
+
+    /**
+     * Create the subject key identifier from an already encoded public key, for example the one held by a CSR
+     * @param subjectPublicKeyInfo The encoded subject public key
+     * @return The SubjectKeyIdentifier
+     */
+    public SubjectKeyIdentifier createSubjectKeyIdentifier(SubjectPublicKeyInfo subjectPublicKeyInfo) {
+        return extensionUtils.get().createSubjectKeyIdentifier(subjectPublicKeyInfo);
+    }
+
+    /**
+     * Convert the signed certificate to its JCA representation using the calling thread's CertificateFactory
+     * @param holder The signed certificate
+     * @return The X509Certificate
+     */
+    public X509Certificate toX509Certificate(X509CertificateHolder holder) {
+        try {
+            return (X509Certificate) certificateFactories.get()
+                    .generateCertificate(new ByteArrayInputStream(holder.getEncoded()));
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    private ContentSigner buildContentSigner(IssuerInfo issuerInfo) {
+        String signatureAlgorithm = issuerInfo.getSignatureAlgorithm();
+        KeyAlgorithm keyAlgorithm = KeyAlgorithm.forKey(issuerInfo.keyPair().getPublic());
+
+        try {
+            if (engine == Engine.LIGHTWEIGHT && keyAlgorithm != KeyAlgorithm.ED25519) {
+                AlgorithmIdentifier sigAlgId = new DefaultSignatureAlgorithmIdentifierFinder().find(signatureAlgorithm);
+                AlgorithmIdentifier digAlgId = new DefaultDigestAlgorithmIdentifierFinder().find(sigAlgId);
+                AsymmetricKeyParameter privateKey =
+                        PrivateKeyFactory.createKey(issuerInfo.keyPair().getPrivate().getEncoded());
+
+                return keyAlgorithm.getAlgorithm().equals("RSA")
+                        ? new BcRSAContentSignerBuilder(sigAlgId, digAlgId).build(privateKey)
+                        : new BcECContentSignerBuilder(sigAlgId, digAlgId).build(privateKey);
+            }
+
+            return new JcaContentSignerBuilder(signatureAlgorithm).build(issuerInfo.keyPair().getPrivate());
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    private static JcaX509ExtensionUtils newExtensionUtils() {
+        try {
+            return new JcaX509ExtensionUtils();
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    private static CertificateFactory newCertificateFactory() {
+        try {
+            return CertificateFactory.getInstance("X.509", "BC");
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+}
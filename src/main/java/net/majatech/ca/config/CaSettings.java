@@ -1,7 +1,20 @@
 package net.majatech.ca.config;
 
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.keys.KeyAlgorithm;
+import net.majatech.ca.authority.signing.CertificateAuditor;
+import net.majatech.ca.authority.signing.SigningEngine;
+import net.majatech.ca.services.KeyStoreBlobStore;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties(prefix = "ca")
@@ -10,10 +23,34 @@ public class CaSettings {
     private String secretUrl;
 
     private final Aws aws = new Aws();
+    private final Issuers issuers = new Issuers();
+    private final KeyPool keyPool = new KeyPool();
+    private final Batch batch = new Batch();
+    private final Signing signing = new Signing();
+    private final Serial serial = new Serial();
+    private final Pkcs12 pkcs12 = new Pkcs12();
+    private final Outbox outbox = new Outbox();
+    private final KeyStoreCache keyStoreCache = new KeyStoreCache();
+    private final Storage storage = new Storage();
+    private final Collector collector = new Collector();
+    private final Export export = new Export();
+    private final Reconciliation reconciliation = new Reconciliation();
+    private final Expiry expiry = new Expiry();
+    private final Renewal renewal = new Renewal();
+    private final Search search = new Search();
+    private final ReadModel readModel = new ReadModel();
 
+    /**
+     * S3 connection settings. The connection pool is shared by all requests, while the in-flight limit caps how many
+     * requests are sent at once. Requests over the limit are queued without blocking the caller
+     */
     public static class Aws {
         private String s3Bucket;
         private String region;
+        private int maxConcurrency = 64;
+        private int maxPendingConnectionAcquires = 1000;
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+        private int maxInFlightRequests = 64;
 
         public String getS3Bucket() {
             return s3Bucket;
@@ -30,6 +67,657 @@ public class CaSettings {
         public void setRegion(String region) {
             this.region = region;
         }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getMaxPendingConnectionAcquires() {
+            return maxPendingConnectionAcquires;
+        }
+
+        public void setMaxPendingConnectionAcquires(int maxPendingConnectionAcquires) {
+            this.maxPendingConnectionAcquires = maxPendingConnectionAcquires;
+        }
+
+        public Duration getConnectionAcquisitionTimeout() {
+            return connectionAcquisitionTimeout;
+        }
+
+        public void setConnectionAcquisitionTimeout(Duration connectionAcquisitionTimeout) {
+            this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+        }
+
+        public int getMaxInFlightRequests() {
+            return maxInFlightRequests;
+        }
+
+        public void setMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+        }
+    }
+
+    /**
+     * The issuers that are available for signing, keyed by name. The Root CA is registered as "root" by default
+     */
+    public static class Issuers {
+        private String defaultIssuer = "root";
+        private Duration reloadInterval = Duration.ofSeconds(30);
+        private Map<String, Issuer> definitions = new LinkedHashMap<>(Map.of("root", new Issuer()));
+
+        public String getDefaultIssuer() {
+            return defaultIssuer;
+        }
+
+        public void setDefaultIssuer(String defaultIssuer) {
+            this.defaultIssuer = defaultIssuer;
+        }
+
+        public Duration getReloadInterval() {
+            return reloadInterval;
+        }
+
+        public void setReloadInterval(Duration reloadInterval) {
+            this.reloadInterval = reloadInterval;
+        }
+
+        public Map<String, Issuer> getDefinitions() {
+            return definitions;
+        }
+
+        public void setDefinitions(Map<String, Issuer> definitions) {
+            this.definitions = definitions;
+        }
+    }
+
+    /**
+     * Resource locations of an issuer certificate (PEM) and its PKCS8 DER encoded private key
+     */
+    public static class Issuer {
+        private String certificate = "classpath:ca/rootca.pem";
+        private String privateKey = "classpath:ca/private.der";
+
+        public String getCertificate() {
+            return certificate;
+        }
+
+        public void setCertificate(String certificate) {
+            this.certificate = certificate;
+        }
+
+        public String getPrivateKey() {
+            return privateKey;
+        }
+
+        public void setPrivateKey(String privateKey) {
+            this.privateKey = privateKey;
+        }
+    }
+
+    /**
+     * Sizing of the pre-generated KeyPair pool. Refilling starts once the pool drops below the low water mark and
+     * stops once it reaches the high water mark. Only the listed algorithms are pooled
+     */
+    public static class KeyPool {
+        private boolean enabled = true;
+        private int lowWaterMark = 8;
+        private int highWaterMark = 32;
+        private int workers = 2;
+        private List<KeyAlgorithm> algorithms = new ArrayList<>(List.of(KeyAlgorithm.RSA_2048));
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLowWaterMark() {
+            return lowWaterMark;
+        }
+
+        public void setLowWaterMark(int lowWaterMark) {
+            this.lowWaterMark = lowWaterMark;
+        }
+
+        public int getHighWaterMark() {
+            return highWaterMark;
+        }
+
+        public void setHighWaterMark(int highWaterMark) {
+            this.highWaterMark = highWaterMark;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public List<KeyAlgorithm> getAlgorithms() {
+            return algorithms;
+        }
+
+        public void setAlgorithms(List<KeyAlgorithm> algorithms) {
+            this.algorithms = algorithms;
+        }
+    }
+
+    /**
+     * Limits for batch issuance and bulk import. Each chunk is signed or validated, and persisted as a unit. Imported
+     * KeyStores are validated in parallel by a fixed number of workers
+     */
+    public static class Batch {
+        private int maxSize = 1000;
+        private int chunkSize = 50;
+        private int importWorkers = 4;
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getImportWorkers() {
+            return importWorkers;
+        }
+
+        public void setImportWorkers(int importWorkers) {
+            this.importWorkers = importWorkers;
+        }
+    }
+
+    /**
+     * Settings for the certificate signing path, including how issued certificates are verified
+     */
+    public static class Signing {
+        private SigningEngine.Engine engine = SigningEngine.Engine.JCA;
+        private CertificateAuditor.VerificationMode verification = CertificateAuditor.VerificationMode.INLINE;
+        private double verificationSampleRate = 0.1;
+        private int auditQueueCapacity = 10000;
+
+        public SigningEngine.Engine getEngine() {
+            return engine;
+        }
+
+        public void setEngine(SigningEngine.Engine engine) {
+            this.engine = engine;
+        }
+
+        public CertificateAuditor.VerificationMode getVerification() {
+            return verification;
+        }
+
+        public void setVerification(CertificateAuditor.VerificationMode verification) {
+            this.verification = verification;
+        }
+
+        public double getVerificationSampleRate() {
+            return verificationSampleRate;
+        }
+
+        public void setVerificationSampleRate(double verificationSampleRate) {
+            this.verificationSampleRate = verificationSampleRate;
+        }
+
+        public int getAuditQueueCapacity() {
+            return auditQueueCapacity;
+        }
+
+        public void setAuditQueueCapacity(int auditQueueCapacity) {
+            this.auditQueueCapacity = auditQueueCapacity;
+        }
+    }
+
+    /**
+     * Serial numbers are allocated from blocks of counter values reserved from the database. A larger block means
+     * fewer round trips to the database, at the cost of leaving gaps in the counter whenever a node restarts
+     */
+    public static class Serial {
+        private int blockSize = 1000;
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public void setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+        }
+    }
+
+    /**
+     * Protection of issued PKCS12 KeyStores. Higher iteration counts make brute forcing the password more expensive,
+     * but every issuance pays the same cost when deriving the keys
+     */
+    public static class Pkcs12 {
+        private Pkcs12Encoder.Encryption encryption = Pkcs12Encoder.Encryption.AES_256_CBC;
+        private int iterationCount = 10000;
+        private boolean encryptCertificates = true;
+        private Pkcs12Encoder.MacAlgorithm macAlgorithm = Pkcs12Encoder.MacAlgorithm.SHA256;
+        private int macIterationCount = 10000;
+
+        public Pkcs12Encoder.Encryption getEncryption() {
+            return encryption;
+        }
+
+        public void setEncryption(Pkcs12Encoder.Encryption encryption) {
+            this.encryption = encryption;
+        }
+
+        public int getIterationCount() {
+            return iterationCount;
+        }
+
+        public void setIterationCount(int iterationCount) {
+            this.iterationCount = iterationCount;
+        }
+
+        public boolean isEncryptCertificates() {
+            return encryptCertificates;
+        }
+
+        public void setEncryptCertificates(boolean encryptCertificates) {
+            this.encryptCertificates = encryptCertificates;
+        }
+
+        public Pkcs12Encoder.MacAlgorithm getMacAlgorithm() {
+            return macAlgorithm;
+        }
+
+        public void setMacAlgorithm(Pkcs12Encoder.MacAlgorithm macAlgorithm) {
+            this.macAlgorithm = macAlgorithm;
+        }
+
+        public int getMacIterationCount() {
+            return macIterationCount;
+        }
+
+        public void setMacIterationCount(int macIterationCount) {
+            this.macIterationCount = macIterationCount;
+        }
+    }
+
+    /**
+     * Draining of the KeyStore upload outbox. Due uploads are claimed in batches and held for the lease timeout, after
+     * which another node may claim them again. Failed uploads are retried with an exponential backoff
+     */
+    public static class Outbox {
+        private Duration drainInterval = Duration.ofMillis(500);
+        private int batchSize = 100;
+        private Duration leaseTimeout = Duration.ofMinutes(1);
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(5);
+
+        public Duration getDrainInterval() {
+            return drainInterval;
+        }
+
+        public void setDrainInterval(Duration drainInterval) {
+            this.drainInterval = drainInterval;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getLeaseTimeout() {
+            return leaseTimeout;
+        }
+
+        public void setLeaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = leaseTimeout;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    /**
+     * In-memory cache of encoded KeyStores, bounded by the total size of the cached files and by the time since each
+     * file was loaded
+     */
+    public static class KeyStoreCache {
+        private DataSize maximumSize = DataSize.ofMegabytes(64);
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+        public DataSize getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(DataSize maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+
+    /**
+     * Where the encoded KeyStore files are stored. The local backend shards files into nested directories named after
+     * the leading hex digits of the KeyStore ID, so no single directory grows too large
+     */
+    public static class Storage {
+        private KeyStoreBlobStore.Backend backend = KeyStoreBlobStore.Backend.S3;
+        private Path localDirectory = Path.of("keystores");
+        private int localShardLevels = 2;
+
+        public KeyStoreBlobStore.Backend getBackend() {
+            return backend;
+        }
+
+        public void setBackend(KeyStoreBlobStore.Backend backend) {
+            this.backend = backend;
+        }
+
+        public Path getLocalDirectory() {
+            return localDirectory;
+        }
+
+        public void setLocalDirectory(Path localDirectory) {
+            this.localDirectory = localDirectory;
+        }
+
+        public int getLocalShardLevels() {
+            return localShardLevels;
+        }
+
+        public void setLocalShardLevels(int localShardLevels) {
+            this.localShardLevels = localShardLevels;
+        }
+    }
+
+    /**
+     * Collection of tombstoned KeyStores. Every run removes the files and rows of all tombstoned KeyStores, one batch
+     * at a time. S3 accepts at most 1000 keys per batched delete, larger batches are split
+     */
+    public static class Collector {
+        private Duration interval = Duration.ofSeconds(10);
+        private int batchSize = 1000;
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Limits of a ZIP export. The selected KeyStores are read a page at a time, and up to the prefetch window of
+     * KeyStore files are fetched ahead of the entry being written, which bounds the memory held by an export regardless
+     * of how many KeyStores it contains
+     */
+    public static class Export {
+        private int maxSize = 10000;
+        private int pageSize = 500;
+        private int prefetchWindow = 16;
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public int getPrefetchWindow() {
+            return prefetchWindow;
+        }
+
+        public void setPrefetchWindow(int prefetchWindow) {
+            this.prefetchWindow = prefetchWindow;
+        }
+    }
+
+    /**
+     * Periodic reconciliation of the KeyStore metadata against the blob store. The ID space is split by the leading
+     * hex digit of the ID, and the given number of partitions are reconciled in parallel. Drift is only reported
+     * unless repair is enabled
+     */
+    public static class Reconciliation {
+        private Duration interval = Duration.ofHours(6);
+        private boolean repair = false;
+        private int parallelism = 4;
+        private int pageSize = 1000;
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public boolean isRepair() {
+            return repair;
+        }
+
+        public void setRepair(boolean repair) {
+            this.repair = repair;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * Timers for certificates approaching and reaching their expiry. Timers are kept in a hierarchical timing wheel
+     * advanced once per tick, so an event fires at most one tick late. The warning is how long before its expiry a
+     * certificate is announced as expiring
+     */
+    public static class Expiry {
+        private Duration tick = Duration.ofMinutes(1);
+        private int wheelSize = 64;
+        private Duration warning = Duration.ofDays(30);
+
+        public Duration getTick() {
+            return tick;
+        }
+
+        public void setTick(Duration tick) {
+            this.tick = tick;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        public void setWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+        }
+
+        public Duration getWarning() {
+            return warning;
+        }
+
+        public void setWarning(Duration warning) {
+            this.warning = warning;
+        }
+    }
+
+    /**
+     * Bulk renewal of certificates expiring within the window, reusing their existing keys. When enabled, a renewal
+     * runs once per interval. An interrupted run is resumed after the resume delay whether or not renewal is enabled.
+     * Each chunk of KeyStores is renewed by a fixed number of workers, and committed as a unit
+     * <br><br>
+     * A run is leased to one node at a time, and each committed chunk renews the lease. A run whose lease has not been
+     * renewed for the lease timeout is taken to be interrupted, so the timeout must exceed the time to renew a chunk
+     */
+    public static class Renewal {
+        private boolean enabled = false;
+        private Duration interval = Duration.ofHours(1);
+        private Duration resumeDelay = Duration.ofMinutes(1);
+        private Duration window = Duration.ofDays(30);
+        private int chunkSize = 100;
+        private int workers = 4;
+        private Duration leaseTimeout = Duration.ofMinutes(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Duration getResumeDelay() {
+            return resumeDelay;
+        }
+
+        public void setResumeDelay(Duration resumeDelay) {
+            this.resumeDelay = resumeDelay;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public Duration getLeaseTimeout() {
+            return leaseTimeout;
+        }
+
+        public void setLeaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = leaseTimeout;
+        }
+    }
+
+    /**
+     * Searching KeyStores by the attributes of their Subject DN. A similarity search matches values whose trigram
+     * similarity to the searched value is at least the threshold. KeyStores saved before the attribute columns were
+     * added are backfilled on startup, the given number per transaction
+     */
+    public static class Search {
+        private double similarityThreshold = 0.3;
+        private int backfillBatchSize = 1000;
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+
+        public int getBackfillBatchSize() {
+            return backfillBatchSize;
+        }
+
+        public void setBackfillBatchSize(int backfillBatchSize) {
+            this.backfillBatchSize = backfillBatchSize;
+        }
+    }
+
+    /**
+     * The in-memory KeyStoreReadModel of each node. Changes made on the node itself are applied as they commit, and
+     * every interval the model is reconciled with the database to pick up the changes made by other nodes
+     */
+    public static class ReadModel {
+        private Duration refreshInterval = Duration.ofMinutes(1);
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
     }
 
     public String getSecretUrl() {
@@ -43,4 +731,68 @@ public class CaSettings {
     public Aws getAws() {
         return aws;
     }
+
+    public Issuers getIssuers() {
+        return issuers;
+    }
+
+    public KeyPool getKeyPool() {
+        return keyPool;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Signing getSigning() {
+        return signing;
+    }
+
+    public Serial getSerial() {
+        return serial;
+    }
+
+    public Pkcs12 getPkcs12() {
+        return pkcs12;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public KeyStoreCache getKeyStoreCache() {
+        return keyStoreCache;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public Collector getCollector() {
+        return collector;
+    }
+
+    public Export getExport() {
+        return export;
+    }
+
+    public Reconciliation getReconciliation() {
+        return reconciliation;
+    }
+
+    public Expiry getExpiry() {
+        return expiry;
+    }
+
+    public Renewal getRenewal() {
+        return renewal;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public ReadModel getReadModel() {
+        return readModel;
+    }
 }
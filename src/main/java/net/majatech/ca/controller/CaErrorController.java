@@ -3,8 +3,6 @@ package net.majatech.ca.controller;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.http.HttpServletRequest;
 import net.majatech.ca.controller.api.model.CsrForm;
-import net.majatech.ca.services.KeyStoreService;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.servlet.error.ErrorController;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -19,13 +17,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 @Controller
 public class CaErrorController implements ErrorController {
 
-    private final KeyStoreService keyStoreService;
-
-    @Autowired
-    public CaErrorController(KeyStoreService keyStoreService) {
-        this.keyStoreService = keyStoreService;
-    }
-
     /**
      * Endpoint that Spring Boot automatically redirects to when an error occurs
      * <br><br>
@@ -42,7 +33,6 @@ public class CaErrorController implements ErrorController {
         CsrForm csrForm = new CsrForm();
         model.addAttribute("csrForm", csrForm);
         model.addAttribute("errorMessage", ex == null ? "Unexpected error" : ex.getMessage());
-        model.addAttribute("keyStores", keyStoreService.getKeyStores());
 
         return "index";
     }
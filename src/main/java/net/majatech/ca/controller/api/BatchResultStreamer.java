@@ -0,0 +1,82 @@
+package net.majatech.ca.controller.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.BatchIssuanceResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Streams the results of a batch request as NDJSON, processing its entries in chunks of the configured chunk size
+ * <br><br>
+ * The result of each entry is written as a line of JSON as soon as its chunk completes, in the same order as the
+ * entries. A failed chunk does not abort the batch. Each of its entries is reported with the cause of the failure
+ */
+@Component
+public class BatchResultStreamer {
+
+    /**
+     * Processes one chunk of a batch
+     * @param <E> The type of the batch entries
+     */
+    @FunctionalInterface
+    public interface ChunkProcessor<E> {
+
+        /**
+         * @param chunk The entries of the chunk
+         * @param offset The index of the first entry of the chunk within the whole batch
+         * @return The result of every entry of the chunk, in the same order
+         */
+        List<BatchIssuanceResult> process(List<E> chunk, int offset);
+    }
+
+    private final CaSettings caSettings;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public BatchResultStreamer(CaSettings caSettings, ObjectMapper objectMapper) {
+        this.caSettings = caSettings;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param entries The entries of the batch
+     * @param chunkProcessor Processes each chunk of the entries
+     * @return The response body streaming one line of NDJSON per entry
+     */
+    public <E> StreamingResponseBody stream(List<E> entries, ChunkProcessor<E> chunkProcessor) {
+        return os -> {
+            int chunkSize = Math.max(1, caSettings.getBatch().getChunkSize());
+
+            for (int offset = 0; offset < entries.size(); offset += chunkSize) {
+                List<E> chunk = entries.subList(offset, Math.min(offset + chunkSize, entries.size()));
+
+                List<BatchIssuanceResult> results;
+                try {
+                    results = chunkProcessor.process(chunk, offset);
+                } catch (Exception e) {
+                    int chunkOffset = offset;
+                    results = IntStream.range(0, chunk.size())
+                            .mapToObj(i -> BatchIssuanceResult.failure(chunkOffset + i, e.getMessage()))
+                            .toList();
+                }
+
+                for (BatchIssuanceResult result : results) {
+                    writeLine(os, result);
+                }
+                os.flush();
+            }
+        };
+    }
+
+    private void writeLine(OutputStream os, Object value) throws IOException {
+        os.write(objectMapper.writeValueAsBytes(value));
+        os.write('\n');
+    }
+}
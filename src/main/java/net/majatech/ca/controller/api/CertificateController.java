@@ -0,0 +1,56 @@
+package net.majatech.ca.controller.api;
+
+import jakarta.validation.Valid;
+import net.majatech.ca.controller.api.model.BatchPkcs10Form;
+import net.majatech.ca.services.CertificateService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import static org.springframework.http.MediaType.*;
+
+@RestController
+@RequestMapping("/api/certificate")
+public class CertificateController {
+    public static final String APPLICATION_PKCS10_VALUE = "application/pkcs10";
+    public static final String APPLICATION_PEM_CERTIFICATE_CHAIN_VALUE = "application/pem-certificate-chain";
+
+    private final CertificateService certificateService;
+    private final BatchResultStreamer batchResultStreamer;
+
+    @Autowired
+    public CertificateController(CertificateService certificateService, BatchResultStreamer batchResultStreamer) {
+        this.certificateService = certificateService;
+        this.batchResultStreamer = batchResultStreamer;
+    }
+
+    /**
+     * Sign a PKCS10 CSR that was created by the client. The CSR may be PEM or DER encoded, and its signature must be
+     * valid for the public key it contains
+     * @param csr The encoded CSR
+     * @return The PEM encoded certificate chain, starting with the issued certificate
+     */
+    @PostMapping(value = "/pkcs10", consumes = {APPLICATION_PKCS10_VALUE, TEXT_PLAIN_VALUE,
+            APPLICATION_OCTET_STREAM_VALUE}, produces = APPLICATION_PEM_CERTIFICATE_CHAIN_VALUE)
+    public ResponseEntity<String> signPkcs10(@RequestBody byte[] csr) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_PEM_CERTIFICATE_CHAIN_VALUE))
+                .body(certificateService.signPkcs10(csr));
+    }
+
+    /**
+     * Sign every PEM encoded PKCS10 CSR of the batch. CSRs are signed in chunks, and the certificate chain of each CSR
+     * is streamed back as a line of NDJSON as soon as its chunk completes
+     * @param batchPkcs10Form The PEM encoded CSRs
+     * @return The streamed results, one JSON object per line in the same order as the request entries
+     */
+    @PostMapping(value = "/pkcs10/batch", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> signPkcs10s(@RequestBody @Valid BatchPkcs10Form batchPkcs10Form) {
+        StreamingResponseBody body = batchResultStreamer.stream(batchPkcs10Form.getRequests(),
+                certificateService::signPkcs10s);
+
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+}
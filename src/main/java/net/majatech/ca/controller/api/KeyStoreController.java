@@ -1,14 +1,45 @@
 package net.majatech.ca.controller.api;
 
-import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.BatchCsrForm;
+import net.majatech.ca.controller.api.model.BulkDeleteForm;
+import net.majatech.ca.controller.api.model.BulkDeleteResult;
 import net.majatech.ca.controller.api.model.CsrForm;
+import net.majatech.ca.controller.api.model.ExportForm;
+import net.majatech.ca.controller.api.model.ImportManifest;
+import net.majatech.ca.controller.api.model.ImportReport;
+import net.majatech.ca.controller.api.model.KeyStoreListForm;
+import net.majatech.ca.controller.api.model.KeyStorePage;
+import net.majatech.ca.controller.api.model.KeyStoreSearchForm;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.controller.api.model.ReconciliationReport;
+import net.majatech.ca.controller.api.model.RenewalReport;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.services.KeyStoreExportService;
+import net.majatech.ca.services.KeyStoreImportService;
+import net.majatech.ca.services.KeyStoreListingService;
+import net.majatech.ca.services.KeyStoreReconciler;
+import net.majatech.ca.services.KeyStoreRenewalService;
+import net.majatech.ca.services.KeyStoreSearchService;
 import net.majatech.ca.services.KeyStoreService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
 import static org.springframework.http.MediaType.*;
@@ -17,67 +48,235 @@ import static org.springframework.http.MediaType.*;
 @RequestMapping("/api/keystore")
 public class KeyStoreController {
 
+    private static final String APPLICATION_ZIP_VALUE = "application/zip";
+
     private final KeyStoreService keyStoreService;
+    private final KeyStoreExportService keyStoreExportService;
+    private final KeyStoreImportService keyStoreImportService;
+    private final KeyStoreReconciler keyStoreReconciler;
+    private final KeyStoreListingService keyStoreListingService;
+    private final KeyStoreRenewalService keyStoreRenewalService;
+    private final KeyStoreSearchService keyStoreSearchService;
+    private final BatchResultStreamer batchResultStreamer;
+    private final CaSettings caSettings;
 
     @Autowired
-    public KeyStoreController(KeyStoreService keyStoreService) {
+    public KeyStoreController(KeyStoreService keyStoreService, KeyStoreExportService keyStoreExportService,
+                              KeyStoreImportService keyStoreImportService, KeyStoreReconciler keyStoreReconciler,
+                              KeyStoreListingService keyStoreListingService,
+                              KeyStoreRenewalService keyStoreRenewalService,
+                              KeyStoreSearchService keyStoreSearchService,
+                              BatchResultStreamer batchResultStreamer, CaSettings caSettings) {
         this.keyStoreService = keyStoreService;
+        this.keyStoreExportService = keyStoreExportService;
+        this.keyStoreImportService = keyStoreImportService;
+        this.keyStoreReconciler = keyStoreReconciler;
+        this.keyStoreListingService = keyStoreListingService;
+        this.keyStoreRenewalService = keyStoreRenewalService;
+        this.keyStoreSearchService = keyStoreSearchService;
+        this.batchResultStreamer = batchResultStreamer;
+        this.caSettings = caSettings;
+    }
+
+    /**
+     * List one page of KeyStores for the Client Certificate table, sorted and filtered as requested
+     * <br><br>
+     * Pages are requested one after another by passing the cursor returned with each page, keeping the same sort
+     * @param keyStoreListForm The sort, filters, cursor and size of the page
+     * @return The KeyStores of the page, and the cursor of the following page if there is one
+     */
+    @GetMapping(produces = APPLICATION_JSON_VALUE)
+    public KeyStorePage listKeyStores(@Valid KeyStoreListForm keyStoreListForm) {
+        return keyStoreListingService.list(keyStoreListForm);
+    }
+
+    /**
+     * Search KeyStores by the attributes of their Subject DN, for example every certificate issued to OU=Payments
+     * @param keyStoreSearchForm The attributes to search by, how to match them and how many KeyStores to return
+     * @return The matching KeyStores
+     */
+    @GetMapping(value = "/search", produces = APPLICATION_JSON_VALUE)
+    public List<KeyStoreSummary> searchKeyStores(@Valid KeyStoreSearchForm keyStoreSearchForm) {
+        return keyStoreSearchService.search(keyStoreSearchForm);
     }
 
     /**
      * Creates a CSR from the CSR / 'Create' form values, which is then signed and all data relating to it is persisted
      * in the database. The actual KeyStore is stored locally for easier retrieval and use with the HttpClient.
+     * <br><br>
+     * The redirect is sent as soon as the KeyStore is committed to the database, its upload happens in the background.
+     * As the request no longer waits on the blob store, it is handled synchronously rather than returning a future
      * @param csrForm The input data received from the client
-     * @param resp The HttpServletResponse object used to redirect the user after signing is successful
-     * @throws IOException If redirection is not possible. Will be handled by the CaErrorController
+     * @return The redirect, containing the ID of the generated KeyStore
      */
     @PostMapping(value="/csr", consumes = APPLICATION_FORM_URLENCODED_VALUE, produces = TEXT_PLAIN_VALUE)
-    public String generateKeyStoreFromCsr(@Valid CsrForm csrForm, HttpServletResponse resp) throws IOException {
-        String keyStoreId = keyStoreService.generateKeyStoreFromCsr(csrForm);
-        resp.sendRedirect("/");
+    public ResponseEntity<String> generateKeyStoreFromCsr(@Valid CsrForm csrForm) {
+        return redirectHome(keyStoreService.generateKeyStoreFromCsr(csrForm));
+    }
+
+    /**
+     * Issue a KeyStore for every entry of the batch. Entries are signed and persisted in chunks, and the result of each
+     * entry is streamed back as a line of NDJSON as soon as its chunk completes
+     * <br><br>
+     * A failed chunk does not abort the batch. Each of its entries is reported with the cause of the failure instead
+     * @param batchCsrForm The CSR fields of every entry to issue
+     * @return The streamed results, one JSON object per line in the same order as the request entries
+     */
+    @PostMapping(value = "/batch", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> generateKeyStoresFromCsrs(
+            @RequestBody @Valid BatchCsrForm batchCsrForm) {
+        StreamingResponseBody body = batchResultStreamer.stream(batchCsrForm.getEntries(),
+                keyStoreService::generateKeyStoresFromCsrs);
 
-        return keyStoreId;
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
     }
 
     /**
      * Upload a PKCS12 KeyStore which will subsequently be saved and displayed in the Client Certificate table
+     * <br><br>
+     * Like the CSR form, the redirect is sent once the KeyStore is committed to the database, and the file is written
+     * to the blob store in the background
      * @param ks The KeyStore file
      * @param pass The KeyStore password
      * @param alias The alias of the key to use
-     * @param resp The HttpServletResponse object used to redirect the user after signing is successful
-     * @throws IOException If redirection is not possible. Will be handled by the CaErrorController
+     * @return The redirect, containing the ID of the uploaded KeyStore
      */
     @PostMapping(value = "/upload", consumes = MULTIPART_FORM_DATA_VALUE, produces = TEXT_PLAIN_VALUE)
-    public String uploadKeyStore(@RequestParam MultipartFile ks, @RequestParam String pass, @RequestParam String alias,
-                               HttpServletResponse resp) throws IOException {
-        String keyStoreId = keyStoreService.saveUploadedKeyStore(ks, pass, alias);
-        resp.sendRedirect("/");
+    public ResponseEntity<String> uploadKeyStore(@RequestParam MultipartFile ks, @RequestParam String pass,
+                                                 @RequestParam String alias) {
+        return redirectHome(keyStoreService.saveUploadedKeyStore(ks, pass, alias));
+    }
 
-        return keyStoreId;
+    /**
+     * Import every PKCS12 KeyStore of the uploaded ZIP archive, using the passwords and aliases listed in the manifest.
+     * Each KeyStore is validated as if it had been uploaded on its own
+     * <br><br>
+     * Invalid KeyStores do not abort the import. The outcome of every manifest entry is reported instead
+     * @param archive The ZIP archive of KeyStore files
+     * @param manifest The JSON manifest naming each file to import, along with its password and alias
+     * @return The outcome of every manifest entry, in manifest order
+     */
+    @PostMapping(value = "/import", consumes = MULTIPART_FORM_DATA_VALUE, produces = APPLICATION_JSON_VALUE)
+    public ImportReport importKeyStores(@RequestPart MultipartFile archive,
+                                       @RequestPart @Valid ImportManifest manifest) {
+        return keyStoreImportService.importKeyStores(archive, manifest.getEntries());
     }
 
     /**
      * Download the selected KeyStore to the users local file system
+     * <br><br>
+     * The file is streamed to the response rather than buffered. Every download carries the ETag of the KeyStore, and a
+     * request whose If-None-Match still matches is answered with a 304 without reading the file at all
      * @param ksId The ID of the KeyStore to be downloaded
-     * @param resp The HttpServletResponse object used to redirect the user after signing is successful
-     * @return The requested KeyStore represented as a byte array
+     * @param webRequest The current request, used to evaluate the conditional headers
+     * @return The streamed KeyStore, or null if the client copy is still current
      */
     @GetMapping(value = "/download/{ksId}", produces = APPLICATION_OCTET_STREAM_VALUE)
-    public @ResponseBody byte[] downloadCertificate(@PathVariable("ksId") UUID ksId, HttpServletResponse resp) {
-        resp.setHeader("Content-Disposition", "attachment; filename=client.p12");
+    public ResponseEntity<StreamingResponseBody> downloadCertificate(@PathVariable("ksId") UUID ksId,
+                                                                     WebRequest webRequest) {
+        String eTag = keyStoreService.getKeyStoreETag(ksId);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        StreamingResponseBody body = os -> {
+            try (InputStream is = keyStoreService.openKeyStore(ksId).join()) {
+                is.transferTo(os);
+            }
+        };
 
-        return keyStoreService.getKeyStoreBytes(ksId);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=client.p12")
+                .body(body);
     }
 
     /**
-     * Delete the selected KeyStore. Removes the entry from the database as well as the file from local storage
+     * Download every selected KeyStore as a single ZIP archive, containing one PKCS12 file per KeyStore and a
+     * manifest describing them
+     * <br><br>
+     * The selection is counted before the response starts, so an export that is too large is rejected outright. The
+     * KeyStores are then read page by page, and the archive is streamed while their files are being fetched
+     * @param exportForm The criteria selecting the KeyStores to export
+     * @return The streamed ZIP archive
+     */
+    @PostMapping(value = "/export", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_ZIP_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportKeyStores(@RequestBody @Valid ExportForm exportForm) {
+        Specification<KeyStoreInfo> selection = keyStoreExportService.select(exportForm);
+
+        StreamingResponseBody body = os -> keyStoreExportService.export(selection, os);
+
+        return ResponseEntity.ok()
+                .contentType(parseMediaType(APPLICATION_ZIP_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=keystores.zip")
+                .body(body);
+    }
+
+    /**
+     * Delete the selected KeyStore. It is removed from the table straight away, while its file and database entry are
+     * removed in the background
      * @param ksId The ID of the KeyStore to be deleted
-     * @param resp The HttpServletResponse object used to redirect the user after signing is successful
-     * @throws IOException If redirection is not possible. Will be handled by the CaErrorController
+     * @return The redirect back to the home page
      */
     @PostMapping(value = "/delete/{ksId}")
-    public void deleteKeyStore(@PathVariable("ksId") UUID ksId, HttpServletResponse resp) throws IOException {
+    public ResponseEntity<String> deleteKeyStore(@PathVariable("ksId") UUID ksId) {
         keyStoreService.deleteKeyStore(ksId);
-        resp.sendRedirect("/");
+
+        return redirectHome(null);
+    }
+
+    /**
+     * Delete every listed KeyStore in a single request
+     * @param bulkDeleteForm The IDs of the KeyStores to delete
+     * @return The number of KeyStores deleted
+     */
+    @PostMapping(value = "/delete", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public BulkDeleteResult deleteKeyStores(@RequestBody @Valid BulkDeleteForm bulkDeleteForm) {
+        return new BulkDeleteResult(keyStoreService.deleteKeyStores(bulkDeleteForm.getKeyStoreIds()));
+    }
+
+    /**
+     * Delete every KeyStore whose certificate has expired
+     * @return The number of KeyStores deleted
+     */
+    @PostMapping(value = "/delete/expired", produces = APPLICATION_JSON_VALUE)
+    public BulkDeleteResult deleteExpiredKeyStores() {
+        return new BulkDeleteResult(keyStoreService.deleteExpiredKeyStores());
+    }
+
+    /**
+     * Reconcile the KeyStore metadata against the blob store straight away, rather than waiting for the next scheduled
+     * run
+     * <br><br>
+     * The request blocks until the whole reconciliation has finished, which lists every file of the blob store and may
+     * take minutes for a large store, so clients should allow a long read timeout. A request made while another
+     * reconciliation is running, including a scheduled one, fails straight away instead
+     * @param repair Whether to delete orphaned files and KeyStores without a file, rather than only reporting them
+     * @return The drift that was found
+     */
+    @PostMapping(value = "/reconcile", produces = APPLICATION_JSON_VALUE)
+    public ReconciliationReport reconcileKeyStores(@RequestParam(defaultValue = "false") boolean repair) {
+        return keyStoreReconciler.reconcile(repair);
+    }
+
+    /**
+     * Renew every KeyStore expiring within the given number of days, reusing the existing keys. Renewed KeyStores are
+     * saved under new IDs, and the originals deleted. Without a number of days, an interrupted renewal is resumed
+     * instead if there is one. With a number of days, the renewal is rejected while an interrupted one is pending
+     * @param withinDays How many days ahead of its expiry a KeyStore is renewed, the configured window if not given
+     * @return The outcome of the renewal
+     */
+    @PostMapping(value = "/renew", produces = APPLICATION_JSON_VALUE)
+    public RenewalReport renewKeyStores(@RequestParam(required = false) @Min(1) @Max(365) Integer withinDays) {
+        if (withinDays == null) {
+            return keyStoreRenewalService.renew(caSettings.getRenewal().getWindow());
+        }
+
+        return keyStoreRenewalService.renewWithin(Duration.ofDays(withinDays));
+    }
+
+    private static ResponseEntity<String> redirectHome(String body) {
+        return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/")).body(body);
     }
 }
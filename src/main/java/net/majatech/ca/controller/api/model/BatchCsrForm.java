@@ -0,0 +1,24 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Model class for batch issuance. Each entry is equivalent to a single submission of the CSR / 'Create' form
+ */
+public class BatchCsrForm {
+
+    @NotEmpty
+    @MaxBatchSize
+    private List<@Valid CsrForm> entries;
+
+    public List<CsrForm> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<CsrForm> entries) {
+        this.entries = entries;
+    }
+}
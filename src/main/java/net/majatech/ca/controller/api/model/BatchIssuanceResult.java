@@ -0,0 +1,32 @@
+package net.majatech.ca.controller.api.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * The outcome of a single entry of a batch issuance request, streamed back to the client as one NDJSON line
+ * @param index The position of the entry in the request
+ * @param keyStoreId The ID of the generated KeyStore, or null if issuance failed or no KeyStore was generated
+ * @param subjectDn The Subject DN of the issued certificate
+ * @param expiry The expiry of the issued certificate
+ * @param certificateChain The PEM encoded certificate chain, only returned for client supplied PKCS10 CSRs
+ * @param error The cause of the failure, or null if issuance succeeded
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchIssuanceResult(int index, String keyStoreId, String subjectDn, Instant expiry,
+                                  String certificateChain, String error) {
+
+    public static BatchIssuanceResult success(int index, String keyStoreId, String subjectDn, Instant expiry) {
+        return new BatchIssuanceResult(index, keyStoreId, subjectDn, expiry, null, null);
+    }
+
+    public static BatchIssuanceResult certificate(int index, String subjectDn, Instant expiry,
+                                                  String certificateChain) {
+        return new BatchIssuanceResult(index, null, subjectDn, expiry, certificateChain, null);
+    }
+
+    public static BatchIssuanceResult failure(int index, String error) {
+        return new BatchIssuanceResult(index, null, null, null, null, error);
+    }
+}
@@ -0,0 +1,24 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Model class for batch signing of client supplied CSRs. Each entry is a PEM encoded PKCS10 CSR
+ */
+public class BatchPkcs10Form {
+
+    @NotEmpty
+    @MaxBatchSize
+    private List<@NotBlank String> requests;
+
+    public List<String> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<String> requests) {
+        this.requests = requests;
+    }
+}
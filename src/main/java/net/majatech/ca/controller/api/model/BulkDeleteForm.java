@@ -0,0 +1,24 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Model class for deleting several KeyStores in a single request
+ */
+public class BulkDeleteForm {
+
+    @NotEmpty
+    private List<@NotNull UUID> keyStoreIds;
+
+    public List<UUID> getKeyStoreIds() {
+        return keyStoreIds;
+    }
+
+    public void setKeyStoreIds(List<UUID> keyStoreIds) {
+        this.keyStoreIds = keyStoreIds;
+    }
+}
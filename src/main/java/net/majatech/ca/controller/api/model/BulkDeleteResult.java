@@ -0,0 +1,8 @@
+package net.majatech.ca.controller.api.model;
+
+/**
+ * The outcome of a bulk delete request
+ * @param deleted The number of KeyStores deleted, excluding those that did not exist or were already deleted
+ */
+public record BulkDeleteResult(int deleted) {
+}
@@ -1,6 +1,7 @@
 package net.majatech.ca.controller.api.model;
 
 import jakarta.validation.constraints.NotNull;
+import net.majatech.ca.authority.keys.KeyAlgorithm;
 
 /**
  * Model class which maps to all HTML inputs for the CSR / 'Create' form
@@ -19,6 +20,9 @@ public class CsrForm {
     @NotNull
     private String keyStoreAlias;
 
+    @NotNull
+    private KeyAlgorithm keyAlgorithm = KeyAlgorithm.RSA_2048;
+
     public String getCommonName() {
         return commonName;
     }
@@ -82,4 +86,12 @@ public class CsrForm {
     public void setKeyStoreAlias(String keyStoreAlias) {
         this.keyStoreAlias = keyStoreAlias;
     }
+
+    public KeyAlgorithm getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public void setKeyAlgorithm(KeyAlgorithm keyAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+    }
 }
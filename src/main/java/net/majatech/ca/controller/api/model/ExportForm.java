@@ -0,0 +1,53 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Model class for selecting the KeyStores of a ZIP export. Every criterion is optional, and a KeyStore is exported
+ * only if it matches all the criteria that are set. An empty form exports every KeyStore
+ */
+public class ExportForm {
+
+    private List<@NotNull UUID> keyStoreIds;
+
+    private String subjectDn;
+
+    private Instant expiringBefore;
+
+    /**
+     * @return The IDs of the KeyStores to export, or null to not filter by ID
+     */
+    public List<UUID> getKeyStoreIds() {
+        return keyStoreIds;
+    }
+
+    public void setKeyStoreIds(List<UUID> keyStoreIds) {
+        this.keyStoreIds = keyStoreIds;
+    }
+
+    /**
+     * @return Text the Subject DN must contain, ignoring case, or null to not filter by Subject DN
+     */
+    public String getSubjectDn() {
+        return subjectDn;
+    }
+
+    public void setSubjectDn(String subjectDn) {
+        this.subjectDn = subjectDn;
+    }
+
+    /**
+     * @return The time before which the certificates must expire, or null to not filter by expiry
+     */
+    public Instant getExpiringBefore() {
+        return expiringBefore;
+    }
+
+    public void setExpiringBefore(Instant expiringBefore) {
+        this.expiringBefore = expiringBefore;
+    }
+}
@@ -0,0 +1,32 @@
+package net.majatech.ca.controller.api.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A single KeyStore of a ZIP export, as listed on its own line of the NDJSON manifest written at the end of the archive
+ * @param keyStoreId The ID of the KeyStore
+ * @param fileName The name of the PKCS12 file within the archive, or null if the file could not be exported
+ * @param alias The alias of the key entry within the KeyStore
+ * @param subjectDn The Subject DN of the certificate
+ * @param issuerDn The Issuer DN of the certificate
+ * @param notBefore The start of the certificate validity
+ * @param expiry The expiry of the certificate
+ * @param error The cause of the failure, or null if the file was exported
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ExportManifestEntry(UUID keyStoreId, String fileName, String alias, String subjectDn, String issuerDn,
+                                  Instant notBefore, Instant expiry, String error) {
+
+    public static ExportManifestEntry exported(KeyStoreSummary keyStore, String fileName) {
+        return new ExportManifestEntry(keyStore.keyStoreId(), fileName, keyStore.alias(), keyStore.subjectDn(),
+                keyStore.issuerDn(), keyStore.notBefore(), keyStore.expiry(), null);
+    }
+
+    public static ExportManifestEntry failure(KeyStoreSummary keyStore, String error) {
+        return new ExportManifestEntry(keyStore.keyStoreId(), null, keyStore.alias(), keyStore.subjectDn(),
+                keyStore.issuerDn(), keyStore.notBefore(), keyStore.expiry(), error);
+    }
+}
@@ -0,0 +1,23 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Model class for a bulk import. Lists the password and alias of every KeyStore file in the uploaded archive
+ */
+public class ImportManifest {
+
+    @NotEmpty
+    private List<@Valid ImportManifestEntry> entries;
+
+    public List<ImportManifestEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<ImportManifestEntry> entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,46 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A single KeyStore of a bulk import. Equivalent to a single upload of a PKCS12 file
+ */
+public class ImportManifestEntry {
+
+    @NotBlank
+    private String fileName;
+
+    @NotNull
+    private String pass;
+
+    @NotNull
+    private String alias;
+
+    /**
+     * @return The name of the PKCS12 file within the archive, including any directories
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getPass() {
+        return pass;
+    }
+
+    public void setPass(String pass) {
+        this.pass = pass;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+}
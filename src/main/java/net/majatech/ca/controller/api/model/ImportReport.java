@@ -0,0 +1,18 @@
+package net.majatech.ca.controller.api.model;
+
+import java.util.List;
+
+/**
+ * The outcome of a bulk import
+ * @param imported The number of KeyStores imported
+ * @param failed The number of manifest entries that could not be imported
+ * @param results The result of every manifest entry, in manifest order
+ */
+public record ImportReport(int imported, int failed, List<ImportResult> results) {
+
+    public static ImportReport of(List<ImportResult> results) {
+        int imported = (int) results.stream().filter(ImportResult::isSuccess).count();
+
+        return new ImportReport(imported, results.size() - imported, results);
+    }
+}
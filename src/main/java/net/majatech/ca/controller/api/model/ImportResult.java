@@ -0,0 +1,32 @@
+package net.majatech.ca.controller.api.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * The outcome of a single entry of a bulk import
+ * @param index The position of the entry in the manifest
+ * @param fileName The name of the PKCS12 file within the archive
+ * @param keyStoreId The ID of the imported KeyStore, or null if the import failed
+ * @param subjectDn The Subject DN of the imported certificate
+ * @param expiry The expiry of the imported certificate
+ * @param error The cause of the failure, or null if the import succeeded
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ImportResult(int index, String fileName, String keyStoreId, String subjectDn, Instant expiry,
+                           String error) {
+
+    public static ImportResult success(int index, String fileName, String keyStoreId, String subjectDn,
+                                       Instant expiry) {
+        return new ImportResult(index, fileName, keyStoreId, subjectDn, expiry, null);
+    }
+
+    public static ImportResult failure(int index, String fileName, String error) {
+        return new ImportResult(index, fileName, null, null, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,133 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+
+/**
+ * Model class for listing a page of KeyStores. Every filter is optional, and a KeyStore is listed only if it matches
+ * all the filters that are set
+ */
+public class KeyStoreListForm {
+
+    /**
+     * The fields KeyStores can be sorted by. Ties are broken by KeyStore ID, so the order is always total
+     */
+    public enum SortField {
+        EXPIRY("expiry"),
+        SUBJECT("subjectDn"),
+        ISSUER("issuerDn");
+
+        private final String property;
+
+        SortField(String property) {
+            this.property = property;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+    }
+
+    @NotNull
+    private SortField sort = SortField.EXPIRY;
+
+    @NotNull
+    private Sort.Direction direction = Sort.Direction.ASC;
+
+    private String subjectDn;
+
+    private String issuerDn;
+
+    private Instant expiringAfter;
+
+    private Instant expiringBefore;
+
+    private String cursor;
+
+    @Min(1)
+    @Max(200)
+    private int size = 50;
+
+    public SortField getSort() {
+        return sort;
+    }
+
+    public void setSort(SortField sort) {
+        this.sort = sort;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Sort.Direction direction) {
+        this.direction = direction;
+    }
+
+    /**
+     * @return Text the Subject DN must contain, ignoring case, or null to not filter by Subject DN
+     */
+    public String getSubjectDn() {
+        return subjectDn;
+    }
+
+    public void setSubjectDn(String subjectDn) {
+        this.subjectDn = subjectDn;
+    }
+
+    /**
+     * @return The exact Issuer DN, or null to not filter by issuer
+     */
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    public void setIssuerDn(String issuerDn) {
+        this.issuerDn = issuerDn;
+    }
+
+    /**
+     * @return The time at or after which the certificates must expire, or null to not filter by it
+     */
+    public Instant getExpiringAfter() {
+        return expiringAfter;
+    }
+
+    public void setExpiringAfter(Instant expiringAfter) {
+        this.expiringAfter = expiringAfter;
+    }
+
+    /**
+     * @return The time before which the certificates must expire, or null to not filter by it
+     */
+    public Instant getExpiringBefore() {
+        return expiringBefore;
+    }
+
+    public void setExpiringBefore(Instant expiringBefore) {
+        this.expiringBefore = expiringBefore;
+    }
+
+    /**
+     * @return The cursor returned with the previous page, or null for the first page
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,11 @@
+package net.majatech.ca.controller.api.model;
+
+import java.util.List;
+
+/**
+ * A single page of the KeyStore listing
+ * @param keyStores The KeyStores of the page, in the requested order
+ * @param nextCursor The cursor to request the following page with, or null if this is the last page
+ */
+public record KeyStorePage(List<KeyStoreSummary> keyStores, String nextCursor) {
+}
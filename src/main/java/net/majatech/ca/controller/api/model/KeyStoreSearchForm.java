@@ -0,0 +1,117 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import net.majatech.ca.authority.certificate.DistinguishedName;
+
+/**
+ * Model class for searching KeyStores by the attributes of their Subject DN. Every attribute is optional, but at
+ * least one must be set, and a KeyStore is found only if it matches all the attributes that are set
+ */
+public class KeyStoreSearchForm {
+
+    /**
+     * How an attribute value is matched, always ignoring case and surrounding whitespace
+     */
+    public enum Match {
+        // The attribute equals the value
+        EXACT,
+        // The attribute starts with the value
+        PREFIX,
+        // The attribute is similar to the value by trigram similarity, tolerating typos and reordered words
+        SIMILAR
+    }
+
+    private String commonName;
+    private String locality;
+    private String state;
+    private String country;
+    private String organization;
+    private String organizationalUnit;
+
+    @NotNull
+    private Match match = Match.PREFIX;
+
+    @Min(1)
+    @Max(200)
+    private int size = 50;
+
+    /**
+     * @return The attributes to search by, as a DistinguishedName
+     */
+    public DistinguishedName toDistinguishedName() {
+        return DistinguishedName.newBuilder()
+                .setCommonName(commonName)
+                .setLocality(locality)
+                .setState(state)
+                .setCountry(country)
+                .setOrganization(organization)
+                .setOrganizationalUnit(organizationalUnit)
+                .build();
+    }
+
+    public String getCommonName() {
+        return commonName;
+    }
+
+    public void setCommonName(String commonName) {
+        this.commonName = commonName;
+    }
+
+    public String getLocality() {
+        return locality;
+    }
+
+    public void setLocality(String locality) {
+        this.locality = locality;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public String getOrganization() {
+        return organization;
+    }
+
+    public void setOrganization(String organization) {
+        this.organization = organization;
+    }
+
+    public String getOrganizationalUnit() {
+        return organizationalUnit;
+    }
+
+    public void setOrganizationalUnit(String organizationalUnit) {
+        this.organizationalUnit = organizationalUnit;
+    }
+
+    public Match getMatch() {
+        return match;
+    }
+
+    public void setMatch(Match match) {
+        this.match = match;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,41 @@
+package net.majatech.ca.controller.api.model;
+
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+
+import java.util.UUID;
+
+/**
+ * The searchable Subject DN attributes of a KeyStore as they are stored, trimmed and in lower case. Each is null if
+ * the Subject DN does not have it, or if the KeyStore was saved before the attributes were stored
+ * @param keyStoreId The ID of the KeyStore
+ * @param commonName The CN of the Subject DN
+ * @param locality The L of the Subject DN
+ * @param state The ST of the Subject DN
+ * @param country The C of the Subject DN
+ * @param organization The O of the Subject DN
+ * @param organizationalUnit The OU of the Subject DN
+ */
+public record KeyStoreSubject(UUID keyStoreId, String commonName, String locality, String state, String country,
+                              String organization, String organizationalUnit) {
+
+    public static KeyStoreSubject from(KeyStoreInfo keyStoreInfo) {
+        return new KeyStoreSubject(keyStoreInfo.getKeyStoreId(), keyStoreInfo.getSubjectCn(),
+                keyStoreInfo.getSubjectL(), keyStoreInfo.getSubjectSt(), keyStoreInfo.getSubjectC(),
+                keyStoreInfo.getSubjectO(), keyStoreInfo.getSubjectOu());
+    }
+
+    /**
+     * @return The attributes as a DistinguishedName
+     */
+    public DistinguishedName toDistinguishedName() {
+        return DistinguishedName.newBuilder()
+                .setCommonName(commonName)
+                .setLocality(locality)
+                .setState(state)
+                .setCountry(country)
+                .setOrganization(organization)
+                .setOrganizationalUnit(organizationalUnit)
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package net.majatech.ca.controller.api.model;
+
+import net.majatech.ca.data.entity.KeyStoreInfo;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The metadata of a KeyStore as listed in the Client Certificate table. The KeyStore password is never listed
+ * @param keyStoreId The ID of the KeyStore
+ * @param alias The alias of the key entry within the KeyStore
+ * @param subjectDn The Subject DN of the certificate
+ * @param issuerDn The Issuer DN of the certificate
+ * @param notBefore The start of the certificate validity
+ * @param expiry The expiry of the certificate
+ */
+public record KeyStoreSummary(UUID keyStoreId, String alias, String subjectDn, String issuerDn, Instant notBefore,
+                              Instant expiry) {
+
+    public static KeyStoreSummary from(KeyStoreInfo keyStoreInfo) {
+        return new KeyStoreSummary(keyStoreInfo.getKeyStoreId(), keyStoreInfo.getAlias(), keyStoreInfo.getSubjectDn(),
+                keyStoreInfo.getIssuerDn(), keyStoreInfo.getNotBefore(), keyStoreInfo.getExpiry());
+    }
+}
@@ -0,0 +1,29 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The annotated collection must not hold more entries than the configured maximum batch size, ca.batch.max-size
+ * <br><br>
+ * Unlike @Size, the maximum is read from the CaSettings when validating, so that an oversized batch is rejected with a
+ * 400 Bad Request like any other invalid request body. A null collection is valid
+ */
+@Documented
+@Constraint(validatedBy = MaxBatchSizeValidator.class)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MaxBatchSize {
+
+    String message() default "Batch exceeds the maximum size";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
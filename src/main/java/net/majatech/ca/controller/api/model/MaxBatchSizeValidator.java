@@ -0,0 +1,35 @@
+package net.majatech.ca.controller.api.model;
+
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import net.majatech.ca.config.CaSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+
+/**
+ * Validates @MaxBatchSize against the configured maximum batch size. Created by the Spring validator factory, which
+ * injects the CaSettings
+ */
+public class MaxBatchSizeValidator implements ConstraintValidator<MaxBatchSize, Collection<?>> {
+
+    private final CaSettings caSettings;
+
+    @Autowired
+    public MaxBatchSizeValidator(CaSettings caSettings) {
+        this.caSettings = caSettings;
+    }
+
+    @Override
+    public boolean isValid(Collection<?> value, ConstraintValidatorContext context) {
+        int maxSize = caSettings.getBatch().getMaxSize();
+        if (value == null || value.size() <= maxSize) {
+            return true;
+        }
+
+        context.disableDefaultConstraintViolation();
+        context.buildConstraintViolationWithTemplate("Batch exceeds the maximum size of " + maxSize)
+                .addConstraintViolation();
+        return false;
+    }
+}
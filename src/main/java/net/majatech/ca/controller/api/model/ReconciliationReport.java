@@ -0,0 +1,16 @@
+package net.majatech.ca.controller.api.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The outcome of reconciling the KeyStore metadata against the blob store
+ * @param orphanedFiles The number of files in the blob store without any KeyStore metadata
+ * @param missingFiles The number of KeyStores whose file is missing from the blob store
+ * @param orphanedSample Some of the orphaned files, at most 100
+ * @param missingSample Some of the KeyStores whose file is missing, at most 100
+ * @param repaired Whether the orphaned files were deleted and the KeyStores without a file were deleted
+ */
+public record ReconciliationReport(int orphanedFiles, int missingFiles, List<UUID> orphanedSample,
+                                   List<UUID> missingSample, boolean repaired) {
+}
@@ -0,0 +1,15 @@
+package net.majatech.ca.controller.api.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The outcome of a bulk renewal
+ * @param runId The ID of the renewal run
+ * @param renewBefore The cutoff, every KeyStore expiring before it was renewed
+ * @param renewed The number of KeyStores renewed, including those renewed before the run was resumed
+ * @param failed The number of KeyStores that could not be renewed, and were left as they are
+ * @param resumed Whether an interrupted run was resumed, rather than a new run started
+ */
+public record RenewalReport(UUID runId, Instant renewBefore, int renewed, int failed, boolean resumed) {
+}
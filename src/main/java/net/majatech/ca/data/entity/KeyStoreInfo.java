@@ -1,18 +1,41 @@
 package net.majatech.ca.data.entity;
 
 import jakarta.persistence.*;
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.security.cert.X509Certificate;
 import java.time.Instant;
+import java.util.Locale;
 import java.util.UUID;
 
 /**
  * Entity to store the metadata relating to one of the KeyStores saved locally. One-to-one mapping
  * <br><br>
- * This information is also used to display KeyStore information in the Client Certificate UI table
+ * This information is also used to display KeyStore information in the Client Certificate UI table, which is served
+ * from the KeyStoreReadModel rather than from this table
+ * <br><br>
+ * Deleted KeyStores are first tombstoned by setting their deletion time, which hides them from every query. The rows
+ * and their files are then removed in batches by the KeyStoreGarbageCollector
+ * <br><br>
+ * The expiry is indexed together with the ID, for the expiry range scans of deleting expired KeyStores and exporting
+ * <br><br>
+ * The attributes of the Subject DN are also stored in their own columns, trimmed and in lower case, each indexed
+ * together with the ID. Searching by an attribute is then an index seek rather than a scan of every Subject DN
  */
 @Entity
-@Table(name = "keystore_info")
+@Table(name = "keystore_info", indexes = {
+        @Index(name = "idx_keystore_info_deleted_at", columnList = "deleted_at"),
+        @Index(name = "idx_keystore_info_expiry", columnList = "expiry, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_cn", columnList = "subject_cn, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_l", columnList = "subject_l, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_st", columnList = "subject_st, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_c", columnList = "subject_c, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_o", columnList = "subject_o, keystore_id"),
+        @Index(name = "idx_keystore_info_subject_ou", columnList = "subject_ou, keystore_id")
+})
+@SQLRestriction("deleted_at is null")
 public class KeyStoreInfo {
 
     @Id
@@ -29,6 +52,24 @@ public class KeyStoreInfo {
     @Column(name = "subject_dn", nullable = false)
     public String subjectDn;
 
+    @Column(name = "subject_cn")
+    public String subjectCn;
+
+    @Column(name = "subject_l")
+    public String subjectL;
+
+    @Column(name = "subject_st")
+    public String subjectSt;
+
+    @Column(name = "subject_c")
+    public String subjectC;
+
+    @Column(name = "subject_o")
+    public String subjectO;
+
+    @Column(name = "subject_ou")
+    public String subjectOu;
+
     @Column(name = "issuer_dn", nullable = false)
     public String issuerDn;
 
@@ -38,11 +79,15 @@ public class KeyStoreInfo {
     @Column(name = "not_before", nullable = false)
     public Instant notBefore;
 
+    @Column(name = "deleted_at")
+    public Instant deletedAt;
+
     public static KeyStoreInfo from(X509Certificate certificate, String pass, String alias) {
         KeyStoreInfo keyStoreInfo = new KeyStoreInfo();
         keyStoreInfo.setPass(pass);
         keyStoreInfo.setAlias(alias);
         keyStoreInfo.setSubjectDn(certificate.getSubjectX500Principal().toString());
+        keyStoreInfo.setSubjectAttributes(certificate);
         keyStoreInfo.setIssuerDn(certificate.getIssuerX500Principal().toString());
         keyStoreInfo.setNotBefore(certificate.getNotBefore().toInstant());
         keyStoreInfo.setExpiry(certificate.getNotAfter().toInstant());
@@ -50,6 +95,43 @@ public class KeyStoreInfo {
         return keyStoreInfo;
     }
 
+    /**
+     * Normalise a Subject DN attribute value the way it is stored for searching
+     * @param value The attribute value
+     * @return The trimmed value in lower case, or null if it is null or blank
+     */
+    public static String normalizeSubjectAttribute(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Set every searchable Subject DN attribute column from the encoded Subject DN of the certificate, rather than
+     * from its string form. Saved, imported and backfilled KeyStores all derive their attributes here, so the columns
+     * hold the same values however the KeyStore was stored
+     * @param certificate The certificate of the KeyStore
+     */
+    public void setSubjectAttributes(X509Certificate certificate) {
+        setSubjectAttributes(DistinguishedName.fromX500Name(
+                X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded())));
+    }
+
+    /**
+     * Set every searchable Subject DN attribute column from the parsed Subject DN
+     * @param subject The parsed Subject DN of the certificate
+     */
+    public void setSubjectAttributes(DistinguishedName subject) {
+        this.subjectCn = normalizeSubjectAttribute(subject.getCommonName());
+        this.subjectL = normalizeSubjectAttribute(subject.getLocality());
+        this.subjectSt = normalizeSubjectAttribute(subject.getState());
+        this.subjectC = normalizeSubjectAttribute(subject.getCountry());
+        this.subjectO = normalizeSubjectAttribute(subject.getOrganization());
+        this.subjectOu = normalizeSubjectAttribute(subject.getOrganizationalUnit());
+    }
+
     public UUID getKeyStoreId() {
         return keyStoreId;
     }
@@ -82,6 +164,30 @@ public class KeyStoreInfo {
         this.subjectDn = subjectDn;
     }
 
+    public String getSubjectCn() {
+        return subjectCn;
+    }
+
+    public String getSubjectL() {
+        return subjectL;
+    }
+
+    public String getSubjectSt() {
+        return subjectSt;
+    }
+
+    public String getSubjectC() {
+        return subjectC;
+    }
+
+    public String getSubjectO() {
+        return subjectO;
+    }
+
+    public String getSubjectOu() {
+        return subjectOu;
+    }
+
     public String getIssuerDn() {
         return issuerDn;
     }
@@ -105,4 +211,12 @@ public class KeyStoreInfo {
     public void setNotBefore(Instant notBefore) {
         this.notBefore = notBefore;
     }
+
+    public Instant getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Instant deletedAt) {
+        this.deletedAt = deletedAt;
+    }
 }
@@ -0,0 +1,125 @@
+package net.majatech.ca.data.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outbox entry for a KeyStore that has been issued or uploaded, but not yet written to the S3 Bucket
+ * <br><br>
+ * Entries are committed in the same transaction as the corresponding KeyStoreInfo, and are removed once the upload
+ * has succeeded. Until then the encoded KeyStore is served from this entry
+ */
+@Entity
+@Table(name = "keystore_upload_outbox",
+        indexes = @Index(name = "idx_keystore_upload_outbox_next_attempt", columnList = "next_attempt_at"))
+public class KeyStoreUpload implements Persistable<UUID> {
+
+    // Generous upper bound for a single PKCS12 file, which is usually only a few kilobytes
+    public static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Id
+    @Column(name = "keystore_id")
+    public UUID keyStoreId;
+
+    @Column(name = "content", nullable = false, length = MAX_CONTENT_LENGTH)
+    public byte[] content;
+
+    @Column(name = "attempts", nullable = false)
+    public int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    public Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    public Instant createdAt;
+
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    public String lastError;
+
+    // The ID is assigned from the KeyStoreInfo, so new entries are flagged to be persisted without a merge
+    @Transient
+    private boolean isNew;
+
+    public static KeyStoreUpload pending(UUID keyStoreId, byte[] content) {
+        Instant now = Instant.now();
+
+        KeyStoreUpload keyStoreUpload = new KeyStoreUpload();
+        keyStoreUpload.setKeyStoreId(keyStoreId);
+        keyStoreUpload.setContent(content);
+        keyStoreUpload.setAttempts(0);
+        keyStoreUpload.setNextAttemptAt(now);
+        keyStoreUpload.setCreatedAt(now);
+        keyStoreUpload.isNew = true;
+
+        return keyStoreUpload;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public UUID getId() {
+        return keyStoreId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public UUID getKeyStoreId() {
+        return keyStoreId;
+    }
+
+    public void setKeyStoreId(UUID keyStoreId) {
+        this.keyStoreId = keyStoreId;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError == null || lastError.length() <= MAX_ERROR_LENGTH
+                ? lastError : lastError.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,147 @@
+package net.majatech.ca.data.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Entity holding the progress of a bulk renewal, which renews every KeyStore expiring before a cutoff
+ * <br><br>
+ * KeyStores are renewed in ID order, one chunk at a time. The checkpoint is the ID of the last KeyStore of the latest
+ * committed chunk, and is saved in the same transaction as the renewed KeyStores of that chunk. A run that was
+ * interrupted therefore resumes after its last committed chunk, without renewing any KeyStore twice
+ * <br><br>
+ * A running run is leased to the node renewing it. Each committed chunk renews the lease by advancing updatedAt, and
+ * a run is only taken to be interrupted once its lease has not been renewed for the lease timeout
+ */
+@Entity
+@Table(name = "keystore_renewal_run",
+        indexes = @Index(name = "idx_keystore_renewal_run_status", columnList = "status"))
+public class RenewalRun {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "run_id")
+    public UUID runId;
+
+    @Column(name = "renew_before", nullable = false)
+    public Instant renewBefore;
+
+    @Column(name = "checkpoint")
+    public UUID checkpoint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    public Status status;
+
+    @Column(name = "renewed", nullable = false)
+    public int renewed;
+
+    @Column(name = "failed", nullable = false)
+    public int failed;
+
+    @Column(name = "started_at", nullable = false)
+    public Instant startedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    public Instant updatedAt;
+
+    @Column(name = "lease_owner")
+    public UUID leaseOwner;
+
+    public static RenewalRun start(Instant renewBefore) {
+        Instant now = Instant.now();
+
+        RenewalRun renewalRun = new RenewalRun();
+        renewalRun.setRenewBefore(renewBefore);
+        renewalRun.setStatus(Status.RUNNING);
+        renewalRun.setStartedAt(now);
+        renewalRun.setUpdatedAt(now);
+
+        return renewalRun;
+    }
+
+    public UUID getRunId() {
+        return runId;
+    }
+
+    public void setRunId(UUID runId) {
+        this.runId = runId;
+    }
+
+    public Instant getRenewBefore() {
+        return renewBefore;
+    }
+
+    public void setRenewBefore(Instant renewBefore) {
+        this.renewBefore = renewBefore;
+    }
+
+    /**
+     * @return The ID of the last KeyStore of the latest committed chunk, or null if no chunk has been committed
+     */
+    public UUID getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(UUID checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getRenewed() {
+        return renewed;
+    }
+
+    public void setRenewed(int renewed) {
+        this.renewed = renewed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * @return The ID of the lease held by the node renewing the run, which changes each time the run is claimed
+     */
+    public UUID getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(UUID leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+}
@@ -0,0 +1,45 @@
+package net.majatech.ca.data.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Entity holding the next unreserved value of a serial number counter, shared by every node issuing certificates
+ * <br><br>
+ * Nodes never allocate serial numbers from this row one at a time. Instead they reserve a whole block of values by
+ * advancing the counter, and then hand out serials from that block locally
+ */
+@Entity
+@Table(name = "serial_counter")
+public class SerialCounter {
+
+    @Id
+    @Column(name = "counter_name")
+    public String name;
+
+    @Column(name = "next_value", nullable = false)
+    public long nextValue;
+
+    public static SerialCounter named(String name) {
+        SerialCounter serialCounter = new SerialCounter();
+        serialCounter.setName(name);
+        serialCounter.setNextValue(1);
+
+        return serialCounter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getNextValue() {
+        return nextValue;
+    }
+
+    public void setNextValue(long nextValue) {
+        this.nextValue = nextValue;
+    }
+}
@@ -1,11 +1,111 @@
 package net.majatech.ca.data.repo;
 
+import net.majatech.ca.controller.api.model.KeyStoreSubject;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
 import net.majatech.ca.data.entity.KeyStoreInfo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface KeyStoreInfoRepository extends JpaRepository<KeyStoreInfo, UUID> {
+public interface KeyStoreInfoRepository extends JpaRepository<KeyStoreInfo, UUID>,
+        JpaSpecificationExecutor<KeyStoreInfo>, KeyStoreSummaryQueries {
+
+    /**
+     * Tombstone the given KeyStores, hiding them from every other query until they are collected
+     * @return The number of KeyStores that were tombstoned, excluding those that already were
+     */
+    @Modifying
+    @Query("update KeyStoreInfo k set k.deletedAt = :deletedAt where k.keyStoreId in :ids and k.deletedAt is null")
+    int tombstoneAllById(@Param("ids") Collection<UUID> ids, @Param("deletedAt") Instant deletedAt);
+
+    /**
+     * Tombstone every KeyStore whose certificate expired before the given time
+     * @return The number of KeyStores that were tombstoned
+     */
+    @Modifying
+    @Query("update KeyStoreInfo k set k.deletedAt = :deletedAt where k.expiry < :expiredBefore and k.deletedAt is null")
+    int tombstoneExpired(@Param("expiredBefore") Instant expiredBefore, @Param("deletedAt") Instant deletedAt);
+
+    /**
+     * Native, as tombstoned rows are filtered out of every entity query
+     */
+    @Query(value = "select keystore_id from keystore_info where deleted_at is not null "
+            + "order by deleted_at limit :limit", nativeQuery = true)
+    List<UUID> findTombstonedIds(@Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "delete from keystore_info where keystore_id in (:ids) and deleted_at is not null",
+            nativeQuery = true)
+    int deleteTombstonedByIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Native, so tombstoned rows are included. Lists each KeyStore within the ID range in ID order, along with whether
+     * a file is expected in the blob store, which is not the case while it is tombstoned or its upload is pending
+     * @return Pairs of the KeyStore ID and whether its file is expected
+     */
+    @Query(value = "select k.keystore_id, (k.deleted_at is null and not exists (select 1 from keystore_upload_outbox u "
+            + "where u.keystore_id = k.keystore_id)) from keystore_info k where k.keystore_id between :from and :to "
+            + "order by k.keystore_id limit :limit", nativeQuery = true)
+    List<Object[]> findBlobStatesBetween(@Param("from") UUID from, @Param("to") UUID to, @Param("limit") int limit);
+
+    /**
+     * Native, so tombstoned rows are included
+     */
+    @Query(value = "select keystore_id from keystore_info where keystore_id in (:ids)", nativeQuery = true)
+    List<UUID> findAllIdsIncludingTombstoned(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Loads the display metadata of the KeyStores following the given ID, in ID order, without selecting the password
+     * @return The metadata of at most one page of KeyStores
+     */
+    @Query("select new net.majatech.ca.controller.api.model.KeyStoreSummary(k.keyStoreId, k.alias, k.subjectDn, "
+            + "k.issuerDn, k.notBefore, k.expiry) from KeyStoreInfo k where k.keyStoreId > :after "
+            + "order by k.keyStoreId")
+    List<KeyStoreSummary> findSummariesAfter(@Param("after") UUID after, Pageable pageable);
+
+    /**
+     * Loads the stored Subject DN attributes of the KeyStores following the given ID, in ID order
+     * @return At most one page of Subject DN attributes
+     */
+    @Query("select new net.majatech.ca.controller.api.model.KeyStoreSubject(k.keyStoreId, k.subjectCn, k.subjectL, "
+            + "k.subjectSt, k.subjectC, k.subjectO, k.subjectOu) from KeyStoreInfo k where k.keyStoreId > :after "
+            + "order by k.keyStoreId")
+    List<KeyStoreSubject> findSubjectsAfter(@Param("after") UUID after, Pageable pageable);
+
+    /**
+     * Loads the stored Subject DN attributes of the given KeyStores
+     */
+    @Query("select new net.majatech.ca.controller.api.model.KeyStoreSubject(k.keyStoreId, k.subjectCn, k.subjectL, "
+            + "k.subjectSt, k.subjectC, k.subjectO, k.subjectOu) from KeyStoreInfo k where k.keyStoreId in :ids")
+    List<KeyStoreSubject> findSubjectsByIdIn(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Loads the KeyStores that expire within the range and follow the given ID, in ID order, so that a bulk renewal
+     * can resume after the last KeyStore it renewed
+     * @return At most one page of KeyStores
+     */
+    @Query("select k from KeyStoreInfo k where k.expiry >= :from and k.expiry < :to and k.keyStoreId > :after "
+            + "order by k.keyStoreId")
+    List<KeyStoreInfo> findExpiringBetweenAfter(@Param("from") Instant from, @Param("to") Instant to,
+                                                @Param("after") UUID after, Pageable pageable);
+
+    /**
+     * Loads the KeyStores following the given ID that have none of the Subject DN attribute columns set, in ID order,
+     * such as those saved before the columns were added
+     * @return At most one page of KeyStores
+     */
+    @Query("select k from KeyStoreInfo k where k.subjectCn is null and k.subjectL is null and k.subjectSt is null "
+            + "and k.subjectC is null and k.subjectO is null and k.subjectOu is null and k.keyStoreId > :after "
+            + "order by k.keyStoreId")
+    List<KeyStoreInfo> findWithoutSubjectAttributesAfter(@Param("after") UUID after, Pageable pageable);
 }
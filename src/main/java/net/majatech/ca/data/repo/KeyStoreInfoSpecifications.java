@@ -0,0 +1,85 @@
+package net.majatech.ca.data.repo;
+
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Reusable filters for querying KeyStoreInfo. Each filter is null when its criterion is not set, which Specification
+ * composition treats as matching every KeyStore
+ */
+public final class KeyStoreInfoSpecifications {
+
+    private KeyStoreInfoSpecifications() {}
+
+    public static Specification<KeyStoreInfo> idIn(Collection<UUID> keyStoreIds) {
+        return keyStoreIds == null ? null : (root, query, cb) -> root.get("keyStoreId").in(keyStoreIds);
+    }
+
+    /**
+     * Matches KeyStores whose Subject DN contains the text, ignoring case. Served on PostgreSQL by the pg_trgm index
+     * of the lower case Subject DN
+     */
+    public static Specification<KeyStoreInfo> subjectDnContains(String text) {
+        if (!StringUtils.hasText(text)) {
+            return null;
+        }
+
+        String pattern = "%" + escapeLike(text.toLowerCase(Locale.ROOT)) + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("subjectDn")), pattern, '\\');
+    }
+
+    /**
+     * Matches KeyStores whose Subject DN attribute equals the value, ignoring case. Served by the attribute index
+     */
+    public static Specification<KeyStoreInfo> subjectAttributeEquals(DistinguishedName.Attribute attribute,
+                                                                     String value) {
+        String normalized = KeyStoreInfo.normalizeSubjectAttribute(value);
+        if (normalized == null) {
+            return null;
+        }
+
+        return (root, query, cb) -> cb.equal(root.get(subjectAttributeProperty(attribute)), normalized);
+    }
+
+    /**
+     * Matches KeyStores whose Subject DN attribute starts with the value, ignoring case. A prefix pattern can be
+     * served by a range scan of the attribute index, as the column is already stored in lower case. On PostgreSQL the
+     * index is declared with text_pattern_ops, without which LIKE cannot use it under a non-C collation
+     */
+    public static Specification<KeyStoreInfo> subjectAttributeStartsWith(DistinguishedName.Attribute attribute,
+                                                                         String value) {
+        String normalized = KeyStoreInfo.normalizeSubjectAttribute(value);
+        if (normalized == null) {
+            return null;
+        }
+
+        String pattern = escapeLike(normalized) + "%";
+        return (root, query, cb) -> cb.like(root.get(subjectAttributeProperty(attribute)), pattern, '\\');
+    }
+
+    public static Specification<KeyStoreInfo> expiringBefore(Instant instant) {
+        return instant == null ? null : (root, query, cb) -> cb.lessThan(root.get("expiry"), instant);
+    }
+
+    private static String subjectAttributeProperty(DistinguishedName.Attribute attribute) {
+        return switch (attribute) {
+            case COMMON_NAME -> "subjectCn";
+            case LOCALITY -> "subjectL";
+            case STATE -> "subjectSt";
+            case COUNTRY -> "subjectC";
+            case ORGANIZATION -> "subjectO";
+            case ORGANIZATIONAL_UNIT -> "subjectOu";
+        };
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,24 @@
+package net.majatech.ca.data.repo;
+
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Queries of KeyStoreInfo that select only the display metadata, for filters built as Specifications
+ */
+public interface KeyStoreSummaryQueries {
+
+    /**
+     * Loads the display metadata of the KeyStores matching the specification that follow the given ID, in ID order,
+     * without selecting the password
+     * @param specification The filter to apply, or null to match every KeyStore
+     * @param after Only KeyStores with a greater ID are loaded
+     * @param limit The maximum number of KeyStores to load
+     * @return The metadata of at most one page of KeyStores
+     */
+    List<KeyStoreSummary> findSummariesAfter(Specification<KeyStoreInfo> specification, UUID after, int limit);
+}
@@ -0,0 +1,50 @@
+package net.majatech.ca.data.repo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Criteria implementation of KeyStoreSummaryQueries, picked up as a fragment of KeyStoreInfoRepository
+ */
+public class KeyStoreSummaryQueriesImpl implements KeyStoreSummaryQueries {
+
+    private final EntityManager entityManager;
+
+    @Autowired
+    public KeyStoreSummaryQueriesImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<KeyStoreSummary> findSummariesAfter(Specification<KeyStoreInfo> specification, UUID after,
+                                                    int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<KeyStoreSummary> query = cb.createQuery(KeyStoreSummary.class);
+        Root<KeyStoreInfo> root = query.from(KeyStoreInfo.class);
+
+        Predicate predicate = cb.greaterThan(root.get("keyStoreId"), after);
+        if (specification != null) {
+            Predicate matching = specification.toPredicate(root, query, cb);
+            if (matching != null) {
+                predicate = cb.and(predicate, matching);
+            }
+        }
+
+        query.select(cb.construct(KeyStoreSummary.class, root.get("keyStoreId"), root.get("alias"),
+                        root.get("subjectDn"), root.get("issuerDn"), root.get("notBefore"), root.get("expiry")))
+                .where(predicate)
+                .orderBy(cb.asc(root.get("keyStoreId")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+}
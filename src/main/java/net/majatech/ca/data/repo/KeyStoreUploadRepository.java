@@ -0,0 +1,34 @@
+package net.majatech.ca.data.repo;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import net.majatech.ca.data.entity.KeyStoreUpload;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface KeyStoreUploadRepository extends JpaRepository<KeyStoreUpload, UUID> {
+
+    /**
+     * Fetch the uploads that are due, oldest first, and lock their rows until the end of the transaction. Rows already
+     * locked by another node are skipped rather than waited for, so nodes draining at the same time claim disjoint
+     * entries
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select u from KeyStoreUpload u where u.nextAttemptAt <= :now order by u.nextAttemptAt")
+    List<KeyStoreUpload> findDueForUpdate(@Param("now") Instant now, Pageable pageable);
+
+    @Query("select u.content from KeyStoreUpload u where u.keyStoreId = :keyStoreId")
+    Optional<byte[]> findContentById(@Param("keyStoreId") UUID keyStoreId);
+}
@@ -0,0 +1,35 @@
+package net.majatech.ca.data.repo;
+
+import jakarta.persistence.LockModeType;
+import net.majatech.ca.data.entity.RenewalRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RenewalRunRepository extends JpaRepository<RenewalRun, UUID> {
+
+    Optional<RenewalRun> findFirstByStatusOrderByStartedAt(RenewalRun.Status status);
+
+    /**
+     * Fetch the runs with the status, oldest first, and lock their rows until the end of the transaction, so that two
+     * nodes can never claim the same run
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from RenewalRun r where r.status = :status order by r.startedAt")
+    List<RenewalRun> findByStatusForUpdate(@Param("status") RenewalRun.Status status);
+
+    /**
+     * Fetch the run and lock its row until the end of the transaction, so that a chunk is only committed by the node
+     * holding the lease of the run
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from RenewalRun r where r.runId = :runId")
+    Optional<RenewalRun> findForUpdate(@Param("runId") UUID runId);
+}
@@ -0,0 +1,23 @@
+package net.majatech.ca.data.repo;
+
+import jakarta.persistence.LockModeType;
+import net.majatech.ca.data.entity.SerialCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SerialCounterRepository extends JpaRepository<SerialCounter, String> {
+
+    /**
+     * Fetch the counter and lock its row until the end of the transaction, so that two nodes can never reserve the
+     * same block
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from SerialCounter s where s.name = :name")
+    Optional<SerialCounter> findForUpdate(@Param("name") String name);
+}
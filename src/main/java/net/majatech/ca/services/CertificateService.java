@@ -0,0 +1,76 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.BatchIssuanceResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Service class to sign CSRs that were created by clients
+ * <br><br>
+ * The client generates its own KeyPair and only sends the CSR, so the CA never holds the subject private key. Nothing
+ * is persisted, the signed certificate chain is returned to the client directly
+ */
+@Service
+public class CertificateService {
+
+    private final ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    public CertificateService(ClientCertificateSigner clientCertificateSigner) {
+        this.clientCertificateSigner = clientCertificateSigner;
+    }
+
+    /**
+     * Verify and sign a PKCS10 CSR received from a client
+     * @param encodedCsr The PEM or DER encoded CSR
+     * @return The PEM encoded certificate chain
+     */
+    public String signPkcs10(byte[] encodedCsr) {
+        return clientCertificateSigner.sign(CertificateSigningRequest.parse(encodedCsr)).toPemChain();
+    }
+
+    /**
+     * Verify and sign every PKCS10 CSR of a chunk in a single pass
+     * <br><br>
+     * A CSR that can not be parsed or fails proof of possession is reported as a failure, without affecting the
+     * other CSRs of the chunk
+     * @param pemCsrs The PEM encoded CSRs of the chunk
+     * @param offset The index of the first CSR of the chunk within the whole batch
+     * @return The result of each CSR, in the same order as provided
+     */
+    public List<BatchIssuanceResult> signPkcs10s(List<String> pemCsrs, int offset) {
+        BatchIssuanceResult[] results = new BatchIssuanceResult[pemCsrs.size()];
+        List<CertificateSigningRequest> csrs = new ArrayList<>(pemCsrs.size());
+        List<Integer> csrIndexes = new ArrayList<>(pemCsrs.size());
+
+        for (int i = 0; i < pemCsrs.size(); i++) {
+            try {
+                csrs.add(CertificateSigningRequest.parse(pemCsrs.get(i).getBytes(StandardCharsets.US_ASCII)));
+                csrIndexes.add(i);
+            } catch (Exception e) {
+                results[i] = BatchIssuanceResult.failure(offset + i, e.getMessage());
+            }
+        }
+
+        List<CertificateHolder> certHolders = clientCertificateSigner.signAll(csrs);
+        for (int i = 0; i < certHolders.size(); i++) {
+            CertificateHolder certHolder = certHolders.get(i);
+            int index = csrIndexes.get(i);
+
+            results[index] = BatchIssuanceResult.certificate(offset + index,
+                    certHolder.getX509Certificate().getSubjectX500Principal().toString(),
+                    certHolder.getX509Certificate().getNotAfter().toInstant(),
+                    certHolder.toPemChain());
+        }
+
+        return Arrays.asList(results);
+    }
+}
@@ -0,0 +1,96 @@
+package net.majatech.ca.services;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of asynchronous requests that are in flight at the same time, without ever blocking the caller
+ * <br><br>
+ * A request that arrives while the limit is reached is queued, and is started as soon as an earlier request completes
+ */
+public class InFlightLimiter {
+
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger draining = new AtomicInteger();
+
+    public InFlightLimiter(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * Start the request now if the limit allows it, otherwise once a permit is released
+     * @param request Starts the request and returns its future. Only called once a permit is held
+     * @return A future completed with the outcome of the request
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        pending.add(() -> {
+            CompletableFuture<T> future;
+            try {
+                future = request.get();
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((value, error) -> {
+                release();
+
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        drain();
+
+        return result;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        // Only one thread drains at a time. A request that completes straight away releases its permit from within
+        // next.run(), and that release only records missed work here for the loop below to pick up, rather than
+        // recursing into another drain and growing the stack with every queued request
+        if (draining.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            while (!pending.isEmpty() && permits.tryAcquire()) {
+                Runnable next = pending.poll();
+
+                // Taken by a poll racing the isEmpty check, give the permit back and check again on the next pass
+                if (next == null) {
+                    permits.release();
+                    break;
+                }
+
+                next.run();
+            }
+
+            missed = draining.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,64 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.exceptions.CaException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * KeyStoreBlobStore keeping every KeyStore on the heap, so integration tests and benchmarks can run without any
+ * network. Nothing survives a restart, so this backend is not intended for production use
+ */
+@Service
+@ConditionalOnProperty(name = "ca.storage.backend", havingValue = "memory")
+public class InMemoryKeyStoreBlobStore implements KeyStoreBlobStore {
+
+    private final Map<UUID, byte[]> keyStores = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Void> save(UUID keyStoreId, byte[] keyStoreBytes) {
+        // Copied so a caller reusing its array can not change the stored KeyStore
+        keyStores.put(keyStoreId, keyStoreBytes.clone());
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetch(UUID keyStoreId) {
+        byte[] keyStoreBytes = keyStores.get(keyStoreId);
+
+        return keyStoreBytes == null
+                ? CompletableFuture.failedFuture(new CaException("KeyStore not found"))
+                : CompletableFuture.completedFuture(keyStoreBytes);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(UUID keyStoreId) {
+        return CompletableFuture.completedFuture(keyStores.containsKey(keyStoreId));
+    }
+
+    @Override
+    public CompletableFuture<List<UUID>> listIds(String prefix, UUID startAfter, int limit) {
+        String after = startAfter == null ? "" : startAfter.toString();
+
+        return CompletableFuture.completedFuture(keyStores.keySet().stream()
+                .map(UUID::toString)
+                .filter(name -> name.startsWith(prefix) && name.compareTo(after) > 0)
+                .sorted()
+                .limit(limit)
+                .map(UUID::fromString)
+                .toList());
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(UUID keyStoreId) {
+        keyStores.remove(keyStoreId);
+
+        return CompletableFuture.completedFuture(null);
+    }
+}
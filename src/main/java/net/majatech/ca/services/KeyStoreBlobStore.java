@@ -0,0 +1,87 @@
+package net.majatech.ca.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage for the encoded KeyStore files, keyed by KeyStore ID. The metadata of each KeyStore is kept in the database
+ * <br><br>
+ * Exactly one implementation is active, selected with {@code ca.storage.backend}:
+ * <ul>
+ *     <li>{@code S3} - The S3 Bucket, the default</li>
+ *     <li>{@code LOCAL} - A directory on the local file system, for single node deployments</li>
+ *     <li>{@code MEMORY} - The heap of the running application, for tests and benchmarks</li>
+ * </ul>
+ * Every operation returns a future, so that backends with network I/O never block the caller
+ */
+public interface KeyStoreBlobStore {
+
+    enum Backend {
+        S3,
+        LOCAL,
+        MEMORY
+    }
+
+    /**
+     * Store the encoded KeyStore, replacing any file previously stored under the same ID
+     * @param keyStoreId The ID of the KeyStore
+     * @param keyStoreBytes The PKCS12 encoded KeyStore
+     * @return A future completed once the KeyStore is stored
+     */
+    CompletableFuture<Void> save(UUID keyStoreId, byte[] keyStoreBytes);
+
+    /**
+     * Fetch the encoded KeyStore
+     * @param keyStoreId The ID of the KeyStore
+     * @return A future completed with the KeyStore represented as a byte array, or failed if it is not stored
+     */
+    CompletableFuture<byte[]> fetch(UUID keyStoreId);
+
+    /**
+     * Open the encoded KeyStore as a stream, so it can be copied to a response without holding the whole file on the
+     * heap. Backends that can stream override this, by default the file is fetched in full
+     * @param keyStoreId The ID of the KeyStore
+     * @return A future completed with a stream over the KeyStore, which the caller must close
+     */
+    default CompletableFuture<InputStream> openStream(UUID keyStoreId) {
+        return fetch(keyStoreId).thenApply(ByteArrayInputStream::new);
+    }
+
+    /**
+     * Check whether the encoded KeyStore is stored
+     * @param keyStoreId The ID of the KeyStore
+     * @return A future completed with whether the KeyStore is stored, or failed if that could not be determined
+     */
+    CompletableFuture<Boolean> exists(UUID keyStoreId);
+
+    /**
+     * List the IDs of the stored KeyStores whose ID starts with the given prefix, in ascending order of their string
+     * form. Objects that are not named after a KeyStore ID are skipped
+     * @param prefix The leading hex digits of the IDs to list
+     * @param startAfter Only IDs after this one are listed, or null to list from the first ID
+     * @param limit The maximum number of IDs to list
+     * @return A future completed with the next IDs, which is only empty once every ID has been listed
+     */
+    CompletableFuture<List<UUID>> listIds(String prefix, UUID startAfter, int limit);
+
+    /**
+     * Delete the encoded KeyStore. Deleting a KeyStore that is not stored is not an error
+     * @param keyStoreId The ID of the KeyStore
+     * @return A future completed once the KeyStore is deleted
+     */
+    CompletableFuture<Void> delete(UUID keyStoreId);
+
+    /**
+     * Delete several encoded KeyStores. Backends that support batched deletes override this, by default each KeyStore
+     * is deleted individually
+     * @param keyStoreIds The IDs of the KeyStores
+     * @return A future completed once every KeyStore is deleted, or failed if any of them could not be
+     */
+    default CompletableFuture<Void> deleteAll(Collection<UUID> keyStoreIds) {
+        return CompletableFuture.allOf(keyStoreIds.stream().map(this::delete).toArray(CompletableFuture<?>[]::new));
+    }
+}
@@ -0,0 +1,70 @@
+package net.majatech.ca.services;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import net.majatech.ca.config.CaSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounded in-memory cache of encoded KeyStores, keyed by KeyStore ID
+ * <br><br>
+ * The cached files are the password protected PKCS12 files exactly as stored, so no key material is held in the clear.
+ * Concurrent misses for the same KeyStore share a single fetch, and failed fetches are not cached
+ * <br><br>
+ * A KeyStore never changes once issued, so entries only have to be invalidated when the KeyStore is deleted. The cache
+ * is bounded by the total size of the cached files, and each entry expires a fixed time after it was loaded
+ * <br><br>
+ * Hit, miss and eviction counts are exposed under the {@code cache.*} meters, tagged with {@code cache=keystores}
+ */
+@Service
+public class KeyStoreCache {
+
+    private final AsyncLoadingCache<UUID, byte[]> cache;
+
+    @Autowired
+    public KeyStoreCache(CaSettings caSettings, KeyStoreOutboxService keyStoreOutboxService,
+                         MeterRegistry meterRegistry) {
+        CaSettings.KeyStoreCache settings = caSettings.getKeyStoreCache();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaximumSize().toBytes())
+                .weigher((UUID keyStoreId, byte[] keyStoreBytes) -> keyStoreBytes.length)
+                .expireAfterWrite(settings.getExpireAfterWrite())
+                .recordStats()
+                .buildAsync((keyStoreId, executor) -> keyStoreOutboxService.fetchKeyStoreBytes(keyStoreId));
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "keystores");
+    }
+
+    /**
+     * Fetch the encoded KeyStore, loading it if it is not cached yet
+     * @param keyStoreId The ID of the KeyStore to retrieve
+     * @return A future completed with the KeyStore represented as a byte array
+     */
+    public CompletableFuture<byte[]> get(UUID keyStoreId) {
+        return cache.get(keyStoreId);
+    }
+
+    /**
+     * Fetch the encoded KeyStore only if it is cached or already being loaded, without starting a load
+     * @param keyStoreId The ID of the KeyStore to retrieve
+     * @return A future completed with the KeyStore represented as a byte array, or null if it is not cached
+     */
+    public CompletableFuture<byte[]> getIfPresent(UUID keyStoreId) {
+        return cache.getIfPresent(keyStoreId);
+    }
+
+    /**
+     * Remove the KeyStore from the cache, including a load that is still in progress
+     * @param keyStoreId The ID of the KeyStore to remove
+     */
+    public void invalidate(UUID keyStoreId) {
+        cache.synchronous().invalidate(keyStoreId);
+    }
+}
@@ -0,0 +1,16 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+
+/**
+ * Published when the certificate of a KeyStore comes within the expiry warning, and again once it has expired
+ * @param keyStore The KeyStore holding the certificate
+ * @param type Whether the certificate is expiring or has expired
+ */
+public record KeyStoreExpiryEvent(KeyStoreSummary keyStore, Type type) {
+
+    public enum Type {
+        EXPIRING,
+        EXPIRED
+    }
+}
@@ -0,0 +1,161 @@
+package net.majatech.ca.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+
+/**
+ * Fires a KeyStoreExpiryEvent when a certificate comes within the expiry warning, and another once it has expired
+ * <br><br>
+ * Every live KeyStore has a timer for each event still ahead of it, kept in a TimingWheel. Timers are scheduled from
+ * the KeyStoreReadModel once the application is ready, and then as KeyStores are saved, and cancelled as they are
+ * deleted. Each tick only visits the timers that have fallen due, so the cost of an event does not depend on how many
+ * KeyStores there are
+ * <br><br>
+ * A KeyStore saved within its warning is announced as expiring on the next tick. Timers that fell due while the
+ * application was down are not fired on startup, {@link #expiringWithin(Duration)} finds those certificates instead
+ */
+@Service
+public class KeyStoreExpiryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreExpiryScheduler.class);
+
+    private final KeyStoreReadModel keyStoreReadModel;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CaSettings.Expiry settings;
+    private final TimingWheel<Timer> timingWheel;
+    private final Map<KeyStoreExpiryEvent.Type, Counter> firedCounters = new EnumMap<>(KeyStoreExpiryEvent.Type.class);
+
+    @Autowired
+    public KeyStoreExpiryScheduler(CaSettings caSettings, KeyStoreReadModel keyStoreReadModel,
+                                   ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.keyStoreReadModel = keyStoreReadModel;
+        this.eventPublisher = eventPublisher;
+        this.settings = caSettings.getExpiry();
+        this.timingWheel = new TimingWheel<>(settings.getTick(), settings.getWheelSize(), Instant.now());
+
+        for (KeyStoreExpiryEvent.Type type : KeyStoreExpiryEvent.Type.values()) {
+            firedCounters.put(type, Counter.builder("ca.expiry.events")
+                    .description("Number of certificate expiry events fired")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("ca.expiry.timers", this, KeyStoreExpiryScheduler::getScheduledTimers)
+                .description("Number of certificate expiry timers scheduled")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedule the timers of every KeyStore that has not expired yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Instant now = Instant.now();
+
+        int loaded = 0;
+        synchronized (timingWheel) {
+            for (KeyStoreSummary keyStore : keyStoreReadModel.expiringBetween(now, null)) {
+                schedule(keyStore, now, false);
+                loaded++;
+            }
+        }
+
+        log.info("Scheduled the expiry timers of {} KeyStores", loaded);
+    }
+
+    /**
+     * Fire the events of every timer that has fallen due since the last tick
+     */
+    @Scheduled(fixedDelayString = "#{@caSettings.expiry.tick.toMillis()}")
+    public void tick() {
+        List<Timer> due;
+        synchronized (timingWheel) {
+            due = timingWheel.advance(Instant.now());
+        }
+
+        for (Timer timer : due) {
+            // A KeyStore deleted since its timer was scheduled is no longer in the read model
+            keyStoreReadModel.find(timer.keyStoreId()).ifPresent(keyStore -> {
+                log.info("KeyStore {} is {}, expiry {}", keyStore.keyStoreId(),
+                        timer.type().name().toLowerCase(Locale.ROOT), keyStore.expiry());
+                firedCounters.get(timer.type()).increment();
+                eventPublisher.publishEvent(new KeyStoreExpiryEvent(keyStore, timer.type()));
+            });
+        }
+    }
+
+    /**
+     * The certificates expiring within the given window from now, found by a range seek into the KeyStoreReadModel
+     * @param window How far ahead to look
+     * @return A live view of the KeyStores expiring within the window, in ascending order of expiry
+     */
+    public NavigableSet<KeyStoreSummary> expiringWithin(Duration window) {
+        Instant now = Instant.now();
+
+        return keyStoreReadModel.expiringBetween(now, now.plus(window));
+    }
+
+    public int getScheduledTimers() {
+        synchronized (timingWheel) {
+            return timingWheel.size();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCreated(KeyStoresCreatedEvent event) {
+        Instant now = Instant.now();
+
+        synchronized (timingWheel) {
+            event.keyStores().forEach(keyStore -> schedule(keyStore, now, true));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeleted(KeyStoresDeletedEvent event) {
+        synchronized (timingWheel) {
+            for (UUID keyStoreId : event.keyStoreIds()) {
+                for (KeyStoreExpiryEvent.Type type : KeyStoreExpiryEvent.Type.values()) {
+                    timingWheel.cancel(new Timer(keyStoreId, type));
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedule the timers of a KeyStore that are still ahead of it
+     * @param announceIfWarned Whether to announce a KeyStore that is already within its warning on the next tick
+     */
+    private void schedule(KeyStoreSummary keyStore, Instant now, boolean announceIfWarned) {
+        if (!keyStore.expiry().isAfter(now)) {
+            return;
+        }
+
+        Instant warnAt = keyStore.expiry().minus(settings.getWarning());
+        if (warnAt.isAfter(now) || announceIfWarned) {
+            timingWheel.schedule(new Timer(keyStore.keyStoreId(), KeyStoreExpiryEvent.Type.EXPIRING), warnAt);
+        }
+        timingWheel.schedule(new Timer(keyStore.keyStoreId(), KeyStoreExpiryEvent.Type.EXPIRED), keyStore.expiry());
+    }
+
+    private record Timer(UUID keyStoreId, KeyStoreExpiryEvent.Type type) {
+    }
+}
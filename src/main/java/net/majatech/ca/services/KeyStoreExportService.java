@@ -0,0 +1,252 @@
+package net.majatech.ca.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.ExportForm;
+import net.majatech.ca.controller.api.model.ExportManifestEntry;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static net.majatech.ca.data.repo.KeyStoreInfoSpecifications.expiringBefore;
+import static net.majatech.ca.data.repo.KeyStoreInfoSpecifications.idIn;
+import static net.majatech.ca.data.repo.KeyStoreInfoSpecifications.subjectDnContains;
+
+/**
+ * Exports many KeyStores at once as a ZIP archive of their PKCS12 files, followed by an NDJSON manifest
+ * <br><br>
+ * The archive is written to the output as it is built. The selected KeyStores are read one page at a time while the
+ * archive is written, selecting only their display metadata. While an entry is being written, the files of the
+ * following entries are already being fetched concurrently, up to the configured prefetch window. The manifest gets
+ * one line per entry, spooled to a temporary file until it is appended to the archive. Only one page of metadata and
+ * the files within the window are held in memory, so the memory used by an export does not grow with the number of
+ * KeyStores
+ * <br><br>
+ * A KeyStore whose file cannot be fetched, for example because it was deleted during the export, is left out of the
+ * archive and listed in the manifest with the cause of the failure
+ */
+@Service
+public class KeyStoreExportService {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreExportService.class);
+
+    public static final String MANIFEST_NAME = "manifest.ndjson";
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final KeyStoreCache keyStoreCache;
+    private final ObjectMapper objectMapper;
+    private final CaSettings.Export settings;
+
+    @Autowired
+    public KeyStoreExportService(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                                 KeyStoreOutboxService keyStoreOutboxService, KeyStoreCache keyStoreCache,
+                                 ObjectMapper objectMapper) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.keyStoreCache = keyStoreCache;
+        this.objectMapper = objectMapper;
+        this.settings = caSettings.getExport();
+    }
+
+    /**
+     * Select the KeyStores matching every criterion set on the form. IDs that do not exist are ignored
+     * <br><br>
+     * The matching KeyStores are only counted here, so that an export that is too large is rejected before the
+     * response starts. They are read page by page once the archive is written
+     * @param exportForm The selection criteria
+     * @return The filter selecting the KeyStores to export
+     */
+    public Specification<KeyStoreInfo> select(ExportForm exportForm) {
+        int maxSize = settings.getMaxSize();
+
+        if (exportForm.getKeyStoreIds() != null && exportForm.getKeyStoreIds().size() > maxSize) {
+            throw new CaException("Export exceeds the maximum size of " + maxSize);
+        }
+
+        Specification<KeyStoreInfo> selection = matching(exportForm);
+        if (keyStoreInfoRepository.count(selection) > maxSize) {
+            throw new CaException("Export exceeds the maximum size of " + maxSize);
+        }
+
+        return selection;
+    }
+
+    /**
+     * Write the ZIP archive of the selected KeyStores in ID order, one {@code <keyStoreId>.p12} entry each, and its
+     * manifest. KeyStores added to the selection since it was counted are exported up to the maximum size
+     * <br><br>
+     * The output is not closed, so the caller remains responsible for it
+     * @param selection The filter selecting the KeyStores to export
+     * @param os The stream the archive is written to
+     * @throws IOException If the archive could not be written, in which case the remaining fetches are cancelled
+     */
+    public void export(Specification<KeyStoreInfo> selection, OutputStream os) throws IOException {
+        int window = Math.max(1, settings.getPrefetchWindow());
+
+        Selection selected = new Selection(selection);
+        Deque<Prefetch> prefetched = new ArrayDeque<>(window);
+        Path manifest = Files.createTempFile("keystore-export-", ".ndjson");
+        ZipOutputStream zip = new ZipOutputStream(os);
+
+        try {
+            try (OutputStream manifestOs = new BufferedOutputStream(Files.newOutputStream(manifest))) {
+                while (true) {
+                    KeyStoreSummary following;
+                    while (prefetched.size() < window && (following = selected.next()) != null) {
+                        prefetched.addLast(new Prefetch(following, fetch(following.keyStoreId())));
+                    }
+
+                    Prefetch next = prefetched.pollFirst();
+                    if (next == null) {
+                        break;
+                    }
+
+                    writeLine(manifestOs, write(zip, next));
+                }
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            Files.copy(manifest, zip);
+            zip.closeEntry();
+
+            zip.finish();
+            zip.flush();
+        } finally {
+            // Only left over if writing failed, typically because the client went away
+            prefetched.forEach(prefetch -> prefetch.keyStoreBytes().cancel(false));
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    /**
+     * Write the file of the KeyStore once it has been fetched
+     * @return The manifest entry of the KeyStore, with the cause of the failure if it could not be fetched
+     */
+    private ExportManifestEntry write(ZipOutputStream zip, Prefetch prefetch) throws IOException {
+        KeyStoreSummary keyStore = prefetch.keyStore();
+
+        byte[] keyStoreBytes;
+        try {
+            keyStoreBytes = prefetch.keyStoreBytes().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("Failed to export KeyStore {}", keyStore.keyStoreId(), cause);
+
+            return ExportManifestEntry.failure(keyStore, cause.getMessage());
+        }
+
+        String fileName = keyStore.keyStoreId() + ".p12";
+        writeStored(zip, fileName, keyStoreBytes);
+
+        return ExportManifestEntry.exported(keyStore, fileName);
+    }
+
+    private void writeLine(OutputStream os, Object value) throws IOException {
+        os.write(objectMapper.writeValueAsBytes(value));
+        os.write('\n');
+    }
+
+    /**
+     * Fetch the encoded KeyStore without adding it to the KeyStore cache, so a large export does not evict the
+     * KeyStores that are actually in use
+     */
+    private CompletableFuture<byte[]> fetch(UUID keyStoreId) {
+        CompletableFuture<byte[]> cached = keyStoreCache.getIfPresent(keyStoreId);
+
+        return cached != null ? cached : keyStoreOutboxService.fetchKeyStoreBytes(keyStoreId);
+    }
+
+    /**
+     * PKCS12 files are encrypted and do not compress, so they are stored as they are
+     */
+    private static void writeStored(ZipOutputStream zip, String fileName, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ZipEntry entry = new ZipEntry(fileName);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static Specification<KeyStoreInfo> matching(ExportForm exportForm) {
+        return Specification.where(idIn(exportForm.getKeyStoreIds()))
+                .and(subjectDnContains(exportForm.getSubjectDn()))
+                .and(expiringBefore(exportForm.getExpiringBefore()));
+    }
+
+    /**
+     * A KeyStore of the export whose file is being fetched
+     */
+    private record Prefetch(KeyStoreSummary keyStore, CompletableFuture<byte[]> keyStoreBytes) {}
+
+    /**
+     * Reads the selected KeyStores one page at a time, each page continuing after the ID of the last KeyStore of the
+     * previous one, and stops after the maximum export size
+     */
+    private class Selection {
+        private final Specification<KeyStoreInfo> specification;
+        private final int pageSize = Math.max(1, settings.getPageSize());
+        private final Deque<KeyStoreSummary> page = new ArrayDeque<>();
+        private UUID after = new UUID(0, 0);
+        private boolean exhausted;
+        private int remaining = settings.getMaxSize();
+
+        private Selection(Specification<KeyStoreInfo> specification) {
+            this.specification = specification;
+        }
+
+        /**
+         * @return The next selected KeyStore, or null once every one has been read
+         */
+        private KeyStoreSummary next() {
+            if (remaining <= 0) {
+                return null;
+            }
+
+            if (page.isEmpty() && !exhausted) {
+                List<KeyStoreSummary> loaded = keyStoreInfoRepository.findSummariesAfter(specification, after,
+                        pageSize);
+                exhausted = loaded.size() < pageSize;
+
+                if (!loaded.isEmpty()) {
+                    page.addAll(loaded);
+                    after = loaded.get(loaded.size() - 1).keyStoreId();
+                }
+            }
+
+            KeyStoreSummary next = page.pollFirst();
+            if (next != null) {
+                remaining--;
+            }
+
+            return next;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net.majatech.ca.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.data.repo.KeyStoreUploadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deletes KeyStores in two phases, so that deleting thousands of KeyStores does not cost thousands of round trips
+ * <br><br>
+ * Deleting only tombstones the KeyStore rows with a single bulk update, which hides them from every query straight
+ * away. The collector then periodically takes the tombstoned KeyStores a batch at a time, discards any pending
+ * uploads, deletes their files with a batched delete and finally hard deletes the rows
+ * <br><br>
+ * A batch whose files could not be deleted keeps its tombstones, and is collected again on the next run
+ */
+@Service
+public class KeyStoreGarbageCollector {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreGarbageCollector.class);
+
+    // Keeps the IN clause of a single update well below the bind parameter limit of the database
+    private static final int MAX_IDS_PER_TOMBSTONE = 1000;
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreUploadRepository keyStoreUploadRepository;
+    private final KeyStoreBlobStore keyStoreBlobStore;
+    private final KeyStoreCache keyStoreCache;
+    private final CaSettings.Collector settings;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter collectedCounter;
+
+    @Autowired
+    public KeyStoreGarbageCollector(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                                    KeyStoreUploadRepository keyStoreUploadRepository,
+                                    KeyStoreBlobStore keyStoreBlobStore, KeyStoreCache keyStoreCache,
+                                    PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreUploadRepository = keyStoreUploadRepository;
+        this.keyStoreBlobStore = keyStoreBlobStore;
+        this.keyStoreCache = keyStoreCache;
+        this.settings = caSettings.getCollector();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+
+        this.collectedCounter = Counter.builder("ca.keystores.collected")
+                .description("Number of tombstoned KeyStores whose files and rows have been deleted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tombstone the given KeyStores, and publish a KeyStoresDeletedEvent. IDs that do not exist or are already
+     * tombstoned are ignored
+     * @param keyStoreIds The IDs of the KeyStores to delete
+     * @return The number of KeyStores that were tombstoned
+     */
+    @Transactional
+    public int tombstone(Collection<UUID> keyStoreIds) {
+        List<UUID> ids = List.copyOf(keyStoreIds);
+        Instant now = Instant.now();
+
+        int tombstoned = 0;
+        for (int offset = 0; offset < ids.size(); offset += MAX_IDS_PER_TOMBSTONE) {
+            List<UUID> chunk = ids.subList(offset, Math.min(offset + MAX_IDS_PER_TOMBSTONE, ids.size()));
+            tombstoned += keyStoreInfoRepository.tombstoneAllById(chunk, now);
+        }
+
+        ids.forEach(keyStoreCache::invalidate);
+        eventPublisher.publishEvent(new KeyStoresDeletedEvent(ids));
+
+        return tombstoned;
+    }
+
+    /**
+     * Tombstone every KeyStore whose certificate has expired, and publish a KeyStoresExpiredEvent
+     * @return The number of KeyStores that were tombstoned
+     */
+    @Transactional
+    public int tombstoneExpired() {
+        Instant now = Instant.now();
+
+        int tombstoned = keyStoreInfoRepository.tombstoneExpired(now, now);
+        eventPublisher.publishEvent(new KeyStoresExpiredEvent(now));
+
+        return tombstoned;
+    }
+
+    /**
+     * Delete the files and rows of every tombstoned KeyStore, one batch at a time
+     */
+    @Scheduled(fixedDelayString = "#{@caSettings.collector.interval.toMillis()}")
+    public void collect() {
+        int batchSize = Math.max(1, settings.getBatchSize());
+
+        List<UUID> batch;
+        do {
+            batch = keyStoreInfoRepository.findTombstonedIds(batchSize);
+
+            if (!batch.isEmpty() && !collectBatch(batch)) {
+                return;
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private boolean collectBatch(List<UUID> batch) {
+        // Pending uploads are discarded first, so the drainer does not write a file that is about to be deleted
+        keyStoreUploadRepository.deleteAllByIdInBatch(batch);
+
+        try {
+            keyStoreBlobStore.deleteAll(batch).join();
+        } catch (Exception e) {
+            log.warn("Failed to delete the files of {} tombstoned KeyStores, retrying on the next run",
+                    batch.size(), e);
+            return false;
+        }
+
+        Integer deleted = transactionTemplate.execute(status ->
+                keyStoreInfoRepository.deleteTombstonedByIds(new ArrayList<>(batch)));
+        batch.forEach(keyStoreCache::invalidate);
+
+        collectedCounter.increment(deleted == null ? 0 : deleted);
+        return true;
+    }
+}
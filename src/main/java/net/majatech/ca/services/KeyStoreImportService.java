@@ -0,0 +1,190 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.ImportManifestEntry;
+import net.majatech.ca.controller.api.model.ImportReport;
+import net.majatech.ca.controller.api.model.ImportResult;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.entity.KeyStoreUpload;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports an existing inventory of KeyStores from a ZIP archive of PKCS12 files, described by a manifest holding the
+ * password and alias of each file
+ * <br><br>
+ * The archive is read sequentially, one chunk of files at a time. The files of a chunk are validated in parallel on a
+ * fixed number of workers, as loading a PKCS12 file is dominated by its password based key derivation. The valid
+ * KeyStores of the chunk are then staged with batched inserts in a single transaction, and uploaded concurrently by
+ * the KeyStoreOutboxService. Only one chunk of files is held in memory at a time
+ * <br><br>
+ * An invalid file, or a chunk that fails to be saved, does not abort the import. Every manifest entry is reported
+ * with its own outcome instead
+ */
+@Service
+public class KeyStoreImportService implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreImportService.class);
+
+    private final KeyStoreService keyStoreService;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final CaSettings.Batch settings;
+    private final ExecutorService validationExecutor;
+
+    @Autowired
+    public KeyStoreImportService(CaSettings caSettings, KeyStoreService keyStoreService,
+                                 KeyStoreOutboxService keyStoreOutboxService) {
+        this.keyStoreService = keyStoreService;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.settings = caSettings.getBatch();
+        this.validationExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getImportWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "keystore-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Import every KeyStore listed in the manifest from the uploaded archive. Files of the archive that are not listed
+     * in the manifest are ignored
+     * @param archive The uploaded ZIP archive
+     * @param entries The manifest entries, naming each file to import along with its password and alias
+     * @return The outcome of every manifest entry, in manifest order
+     */
+    public ImportReport importKeyStores(MultipartFile archive, List<ImportManifestEntry> entries) {
+        if (entries.size() > settings.getMaxSize()) {
+            throw new CaException("Import exceeds the maximum size of " + settings.getMaxSize());
+        }
+
+        Map<String, Integer> indexByFileName = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (indexByFileName.putIfAbsent(entries.get(i).getFileName(), i) != null) {
+                throw new CaException("The manifest lists " + entries.get(i).getFileName() + " more than once");
+            }
+        }
+
+        int chunkSize = Math.max(1, settings.getChunkSize());
+        ImportResult[] results = new ImportResult[entries.size()];
+        boolean[] read = new boolean[entries.size()];
+        List<ArchivedKeyStore> chunk = new ArrayList<>(chunkSize);
+
+        try (ZipInputStream zis = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zis.getNextEntry()) != null) {
+                Integer index = indexByFileName.get(zipEntry.getName());
+                if (zipEntry.isDirectory() || index == null || read[index]) {
+                    continue;
+                }
+                read[index] = true;
+
+                byte[] content = readLimited(zis);
+                if (content == null) {
+                    results[index] = ImportResult.failure(index, zipEntry.getName(),
+                            "KeyStore exceeds the maximum size of " + KeyStoreUpload.MAX_CONTENT_LENGTH + " bytes");
+                    continue;
+                }
+
+                chunk.add(new ArchivedKeyStore(index, entries.get(index), content));
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, results);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new CaException("Please upload a valid ZIP archive", e);
+        }
+
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, results);
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = ImportResult.failure(i, entries.get(i).getFileName(), "File not found in the archive");
+            }
+        }
+
+        return ImportReport.of(Arrays.asList(results));
+    }
+
+    @Override
+    public void destroy() {
+        validationExecutor.shutdownNow();
+    }
+
+    private void importChunk(List<ArchivedKeyStore> chunk, ImportResult[] results) {
+        List<CompletableFuture<KeyStoreInfo>> validations = chunk.stream()
+                .map(archived -> CompletableFuture.supplyAsync(() -> keyStoreService.validateKeyStore(
+                        archived.content(), archived.entry().getPass(), archived.entry().getAlias()),
+                        validationExecutor))
+                .toList();
+
+        List<ArchivedKeyStore> valid = new ArrayList<>(chunk.size());
+        List<KeyStoreInfo> keyStoreInfos = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ArchivedKeyStore archived = chunk.get(i);
+            try {
+                keyStoreInfos.add(validations.get(i).join());
+                valid.add(archived);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                results[archived.index()] =
+                        ImportResult.failure(archived.index(), archived.entry().getFileName(), cause.getMessage());
+            }
+        }
+
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> keyStoreBytes = valid.stream().map(ArchivedKeyStore::content).toList();
+
+        List<KeyStoreInfo> saved;
+        try {
+            saved = keyStoreOutboxService.stageAll(keyStoreInfos, keyStoreBytes);
+        } catch (Exception e) {
+            log.warn("Failed to save a chunk of {} imported KeyStores", valid.size(), e);
+            valid.forEach(archived -> results[archived.index()] =
+                    ImportResult.failure(archived.index(), archived.entry().getFileName(), e.getMessage()));
+            return;
+        }
+
+        for (int i = 0; i < saved.size(); i++) {
+            ArchivedKeyStore archived = valid.get(i);
+            KeyStoreInfo keyStoreInfo = saved.get(i);
+            results[archived.index()] = ImportResult.success(archived.index(), archived.entry().getFileName(),
+                    keyStoreInfo.getKeyStoreId().toString(), keyStoreInfo.getSubjectDn(), keyStoreInfo.getExpiry());
+        }
+    }
+
+    /**
+     * Read the current archive entry, stopping as soon as it exceeds the size an outbox entry can hold
+     * @return The content of the entry, or null if it is too large
+     */
+    private static byte[] readLimited(InputStream is) throws IOException {
+        byte[] content = is.readNBytes(KeyStoreUpload.MAX_CONTENT_LENGTH + 1);
+
+        return content.length > KeyStoreUpload.MAX_CONTENT_LENGTH ? null : content;
+    }
+
+    private record ArchivedKeyStore(int index, ImportManifestEntry entry, byte[] content) {
+    }
+}
@@ -0,0 +1,161 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.controller.api.model.KeyStoreListForm;
+import net.majatech.ca.controller.api.model.KeyStorePage;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.exceptions.CaException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Lists KeyStores one page at a time using keyset pagination, served entirely from the KeyStoreReadModel
+ * <br><br>
+ * Rather than skipping an offset, each page continues after the sort value and ID of the last KeyStore of the previous
+ * page, which is handed to the client as an opaque cursor. Every page therefore starts with a seek into the sorted
+ * index of the read model, no matter how deep into the listing it is, and KeyStores added or deleted in the meantime
+ * never cause a row to be skipped or repeated
+ */
+@Service
+public class KeyStoreListingService {
+
+    private static final String CURSOR_SEPARATOR = "|";
+
+    private final KeyStoreReadModel keyStoreReadModel;
+
+    @Autowired
+    public KeyStoreListingService(KeyStoreReadModel keyStoreReadModel) {
+        this.keyStoreReadModel = keyStoreReadModel;
+    }
+
+    /**
+     * List the page of KeyStores following the cursor of the form, or the first page if it has no cursor
+     * @param keyStoreListForm The sort, filters, cursor and size of the page
+     * @return The KeyStores of the page, and the cursor of the following page if there is one
+     */
+    public KeyStorePage list(KeyStoreListForm keyStoreListForm) {
+        int size = keyStoreListForm.getSize();
+        KeyStoreListForm.SortField sortField = keyStoreListForm.getSort();
+
+        // The expiry index is narrowed to the requested expiry range, so KeyStores outside of it are never visited
+        NavigableSet<KeyStoreSummary> index = sortField == KeyStoreListForm.SortField.EXPIRY
+                ? keyStoreReadModel.expiringBetween(keyStoreListForm.getExpiringAfter(),
+                        keyStoreListForm.getExpiringBefore())
+                : keyStoreReadModel.sortedBy(sortField);
+        if (keyStoreListForm.getDirection().isDescending()) {
+            index = index.descendingSet();
+        }
+        if (keyStoreListForm.getCursor() != null) {
+            index = index.tailSet(decode(keyStoreListForm), false);
+        }
+
+        // One row more than requested tells whether there is a following page, without counting the matches
+        List<KeyStoreSummary> rows = index.stream()
+                .filter(matches(keyStoreListForm))
+                .limit(size + 1)
+                .toList();
+
+        if (rows.size() <= size) {
+            return new KeyStorePage(rows, null);
+        }
+
+        List<KeyStoreSummary> page = rows.subList(0, size);
+        return new KeyStorePage(page, encode(keyStoreListForm, page.get(size - 1)));
+    }
+
+    private static Predicate<KeyStoreSummary> matches(KeyStoreListForm keyStoreListForm) {
+        Predicate<KeyStoreSummary> predicate = keyStore -> true;
+
+        String subjectDn = keyStoreListForm.getSubjectDn();
+        if (StringUtils.hasText(subjectDn)) {
+            predicate = predicate.and(keyStore -> containsIgnoreCase(keyStore.subjectDn(), subjectDn));
+        }
+
+        String issuerDn = keyStoreListForm.getIssuerDn();
+        if (StringUtils.hasText(issuerDn)) {
+            predicate = predicate.and(keyStore -> keyStore.issuerDn().equals(issuerDn));
+        }
+
+        Instant expiringAfter = keyStoreListForm.getExpiringAfter();
+        if (expiringAfter != null) {
+            predicate = predicate.and(keyStore -> !keyStore.expiry().isBefore(expiringAfter));
+        }
+
+        Instant expiringBefore = keyStoreListForm.getExpiringBefore();
+        if (expiringBefore != null) {
+            predicate = predicate.and(keyStore -> keyStore.expiry().isBefore(expiringBefore));
+        }
+
+        return predicate;
+    }
+
+    private static boolean containsIgnoreCase(String text, String part) {
+        for (int offset = 0; offset <= text.length() - part.length(); offset++) {
+            if (text.regionMatches(true, offset, part, 0, part.length())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A record holding only the ID and sort value, the only fields the index comparators read
+     */
+    private static KeyStoreSummary probe(KeyStoreListForm.SortField sortField, UUID keyStoreId, String value) {
+        return switch (sortField) {
+            case EXPIRY -> new KeyStoreSummary(keyStoreId, null, null, null, null, Instant.parse(value));
+            case SUBJECT -> new KeyStoreSummary(keyStoreId, null, value, null, null, null);
+            case ISSUER -> new KeyStoreSummary(keyStoreId, null, null, value, null, null);
+        };
+    }
+
+    private static String encode(KeyStoreListForm keyStoreListForm, KeyStoreSummary last) {
+        String value = switch (keyStoreListForm.getSort()) {
+            case EXPIRY -> last.expiry().toString();
+            case SUBJECT -> last.subjectDn();
+            case ISSUER -> last.issuerDn();
+        };
+
+        // The value goes last, as it is the only part that may contain the separator
+        String cursor = String.join(CURSOR_SEPARATOR, keyStoreListForm.getSort().name(),
+                keyStoreListForm.getDirection().name(), last.keyStoreId().toString(), value);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode the cursor of the form into the position of the last KeyStore of the previous page
+     */
+    private static KeyStoreSummary decode(KeyStoreListForm keyStoreListForm) {
+        KeyStoreListForm.SortField sortField;
+        Sort.Direction direction;
+        KeyStoreSummary position;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(keyStoreListForm.getCursor()),
+                    StandardCharsets.UTF_8);
+            String[] parts = decoded.split("\\" + CURSOR_SEPARATOR, 4);
+
+            sortField = KeyStoreListForm.SortField.valueOf(parts[0]);
+            direction = Sort.Direction.valueOf(parts[1]);
+            position = probe(sortField, UUID.fromString(parts[2]), parts[3]);
+        } catch (RuntimeException e) {
+            throw new CaException("Invalid cursor", e);
+        }
+
+        if (sortField != keyStoreListForm.getSort() || direction != keyStoreListForm.getDirection()) {
+            throw new CaException("The cursor was issued for a different sort order");
+        }
+
+        return position;
+    }
+}
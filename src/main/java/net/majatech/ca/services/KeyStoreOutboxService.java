@@ -0,0 +1,272 @@
+package net.majatech.ca.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.entity.KeyStoreUpload;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.data.repo.KeyStoreUploadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transactional outbox for KeyStores waiting to be written to the KeyStoreBlobStore
+ * <br><br>
+ * A KeyStore is staged by saving its metadata and its encoded file in a single short transaction, so no database
+ * connection is held while talking to the blob store. The outbox is then drained in the background. Due entries are
+ * claimed in batches, uploaded concurrently, and either removed once stored or retried later with an exponential
+ * backoff
+ * <br><br>
+ * Until its upload has succeeded, a KeyStore is served from its outbox entry. Once the entry is removed, the file is
+ * guaranteed to be in the blob store
+ */
+@Service
+public class KeyStoreOutboxService {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreOutboxService.class);
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreUploadRepository keyStoreUploadRepository;
+    private final KeyStoreBlobStore keyStoreBlobStore;
+    private final CaSettings.Outbox settings;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter uploadedCounter;
+    private final Counter failedCounter;
+
+    @Autowired
+    public KeyStoreOutboxService(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                                 KeyStoreUploadRepository keyStoreUploadRepository,
+                                 KeyStoreBlobStore keyStoreBlobStore,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 ApplicationEventPublisher eventPublisher) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreUploadRepository = keyStoreUploadRepository;
+        this.keyStoreBlobStore = keyStoreBlobStore;
+        this.settings = caSettings.getOutbox();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+
+        this.uploadedCounter = Counter.builder("ca.outbox.uploads")
+                .description("Number of KeyStore uploads drained from the outbox")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("ca.outbox.uploads")
+                .description("Number of KeyStore uploads drained from the outbox")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Save the KeyStore metadata together with an outbox entry holding its encoded file. A KeyStoresCreatedEvent is
+     * published, and delivered once the transaction commits
+     * @param keyStoreInfo The metadata of the KeyStore
+     * @param keyStoreBytes The PKCS12 encoded KeyStore
+     * @return The saved metadata
+     */
+    @Transactional
+    public KeyStoreInfo stage(KeyStoreInfo keyStoreInfo, byte[] keyStoreBytes) {
+        KeyStoreInfo saved = keyStoreInfoRepository.save(keyStoreInfo);
+        keyStoreUploadRepository.save(KeyStoreUpload.pending(saved.getKeyStoreId(), keyStoreBytes));
+
+        eventPublisher.publishEvent(KeyStoresCreatedEvent.from(List.of(saved)));
+
+        return saved;
+    }
+
+    /**
+     * Save the metadata and outbox entries of several KeyStores using batched inserts, in a single transaction. A
+     * single KeyStoresCreatedEvent is published for all of them
+     * @param keyStoreInfos The metadata of every KeyStore
+     * @param keyStoreBytes The PKCS12 encoded KeyStores, in the same order as the metadata
+     * @return The saved metadata, in the same order as provided
+     */
+    @Transactional
+    public List<KeyStoreInfo> stageAll(List<KeyStoreInfo> keyStoreInfos, List<byte[]> keyStoreBytes) {
+        List<KeyStoreInfo> saved = keyStoreInfoRepository.saveAll(keyStoreInfos);
+
+        List<KeyStoreUpload> uploads = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            uploads.add(KeyStoreUpload.pending(saved.get(i).getKeyStoreId(), keyStoreBytes.get(i)));
+        }
+        keyStoreUploadRepository.saveAll(uploads);
+
+        eventPublisher.publishEvent(KeyStoresCreatedEvent.from(saved));
+
+        return saved;
+    }
+
+    /**
+     * Fetch the encoded KeyStore, from its outbox entry while the upload is pending, otherwise from the blob store
+     * @param keyStoreId The ID of the KeyStore to retrieve
+     * @return A future completed with the KeyStore represented as a byte array
+     */
+    public CompletableFuture<byte[]> fetchKeyStoreBytes(UUID keyStoreId) {
+        return keyStoreUploadRepository.findContentById(keyStoreId)
+                .map(CompletableFuture::completedFuture)
+                .orElseGet(() -> keyStoreBlobStore.fetch(keyStoreId));
+    }
+
+    /**
+     * Open the encoded KeyStore as a stream, over its outbox entry while the upload is pending, otherwise over the
+     * file in the blob store
+     * @param keyStoreId The ID of the KeyStore to retrieve
+     * @return A future completed with a stream over the KeyStore, which the caller must close
+     */
+    public CompletableFuture<InputStream> openKeyStoreStream(UUID keyStoreId) {
+        return keyStoreUploadRepository.findContentById(keyStoreId)
+                .<CompletableFuture<InputStream>>map(content ->
+                        CompletableFuture.completedFuture(new ByteArrayInputStream(content)))
+                .orElseGet(() -> keyStoreBlobStore.openStream(keyStoreId));
+    }
+
+    /**
+     * Upload every due outbox entry, one batch at a time, until no full batch is left
+     */
+    @Scheduled(fixedDelayString = "#{@caSettings.outbox.drainInterval.toMillis()}")
+    public void drain() {
+        int batchSize = Math.max(1, settings.getBatchSize());
+
+        List<KeyStoreUpload> claimed;
+        do {
+            claimed = claim(batchSize);
+
+            if (!claimed.isEmpty()) {
+                upload(claimed);
+            }
+        } while (claimed.size() == batchSize);
+    }
+
+    /**
+     * Claim a batch of due entries by pushing their next attempt back by the lease timeout. The claim is committed
+     * straight away, so the rows are not locked while uploading
+     */
+    private List<KeyStoreUpload> claim(int batchSize) {
+        Instant now = Instant.now();
+
+        List<KeyStoreUpload> claimed = transactionTemplate.execute(status -> {
+            List<KeyStoreUpload> due = keyStoreUploadRepository.findDueForUpdate(now, PageRequest.of(0, batchSize));
+
+            for (KeyStoreUpload keyStoreUpload : due) {
+                keyStoreUpload.setAttempts(keyStoreUpload.getAttempts() + 1);
+                keyStoreUpload.setNextAttemptAt(now.plus(settings.getLeaseTimeout()));
+            }
+
+            return due;
+        });
+
+        return claimed == null ? List.of() : claimed;
+    }
+
+    private void upload(List<KeyStoreUpload> claimed) {
+        Map<UUID, Throwable> failures = new ConcurrentHashMap<>();
+
+        CompletableFuture<?>[] uploads = claimed.stream()
+                .map(keyStoreUpload -> keyStoreBlobStore
+                        .save(keyStoreUpload.getKeyStoreId(), keyStoreUpload.getContent())
+                        .handle((ignored, error) -> {
+                            if (error != null) {
+                                failures.put(keyStoreUpload.getKeyStoreId(), unwrap(error));
+                            }
+                            return null;
+                        }))
+                .toArray(CompletableFuture<?>[]::new);
+        CompletableFuture.allOf(uploads).join();
+
+        List<UUID> uploaded = claimed.stream()
+                .map(KeyStoreUpload::getKeyStoreId)
+                .filter(keyStoreId -> !failures.containsKey(keyStoreId))
+                .toList();
+
+        complete(uploaded, failures);
+        removeDeletedKeyStores(uploaded);
+
+        uploadedCounter.increment(uploaded.size());
+        failedCounter.increment(failures.size());
+    }
+
+    /**
+     * Remove the uploaded entries, and schedule the next attempt of the failed ones
+     */
+    private void complete(List<UUID> uploaded, Map<UUID, Throwable> failures) {
+        Instant now = Instant.now();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!uploaded.isEmpty()) {
+                keyStoreUploadRepository.deleteAllByIdInBatch(uploaded);
+            }
+
+            failures.forEach((keyStoreId, error) -> keyStoreUploadRepository.findById(keyStoreId)
+                    .ifPresent(keyStoreUpload -> {
+                        Instant nextAttemptAt = now.plus(backoff(keyStoreUpload.getAttempts()));
+                        keyStoreUpload.setNextAttemptAt(nextAttemptAt);
+                        keyStoreUpload.setLastError(error.getMessage());
+
+                        log.warn("Failed to upload KeyStore {} on attempt {}, retrying at {}",
+                                keyStoreId, keyStoreUpload.getAttempts(), nextAttemptAt, error);
+                    }));
+        });
+    }
+
+    /**
+     * A KeyStore may be deleted while its upload is in flight, in which case the uploaded file is deleted again. The
+     * deletion only removes the file after its metadata is gone, so one of the two always sees the other
+     * <br><br>
+     * The deletes are awaited, so that a failure is logged rather than lost. A file that still could not be deleted is
+     * reported as orphaned by the next reconciliation
+     */
+    private void removeDeletedKeyStores(List<UUID> uploaded) {
+        if (uploaded.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> existing = new HashSet<>();
+        keyStoreInfoRepository.findAllById(uploaded).forEach(info -> existing.add(info.getKeyStoreId()));
+
+        List<UUID> deleted = uploaded.stream()
+                .filter(keyStoreId -> !existing.contains(keyStoreId))
+                .toList();
+        if (deleted.isEmpty()) {
+            return;
+        }
+
+        try {
+            keyStoreBlobStore.deleteAll(deleted).join();
+        } catch (CompletionException e) {
+            log.warn("Failed to delete the files of {} KeyStores deleted during their upload", deleted.size(),
+                    unwrap(e));
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration backoff = settings.getInitialBackoff().multipliedBy(1L << Math.min(Math.max(attempts - 1, 0), 20));
+
+        return backoff.compareTo(settings.getMaxBackoff()) > 0 ? settings.getMaxBackoff() : backoff;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,295 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.controller.api.model.KeyStoreListForm;
+import net.majatech.ca.controller.api.model.KeyStoreSubject;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory read model of the display metadata of every live KeyStore, so the Client Certificate table can be listed
+ * and sorted without a database round trip
+ * <br><br>
+ * The model is loaded once at startup, before the web server accepts requests, and then kept current by the events
+ * published whenever KeyStores are saved or deleted. Events are applied once their transaction has committed, so a
+ * rolled back save is never listed
+ * <br><br>
+ * Those events are only published within the node that made the change. When several nodes share the database, each
+ * node also reconciles its model with the database every refresh interval, publishing the KeyStores saved and deleted
+ * by other nodes as events of its own. The model of a node may therefore lag behind the changes of other nodes by up
+ * to that interval, so it is only used to list and search KeyStores, never to decide whether one may be served
+ * <br><br>
+ * Only KeyStoreSummary records are held. The KeyStore passwords are never selected, let alone kept in memory. Each
+ * record is shared between one index per sort order, every index ordered by its sort field and then by ID
+ * <br><br>
+ * The attributes of each Subject DN are also held in one TrigramIndex per attribute, for searching by similarity. They
+ * are indexed as stored in the attribute columns of KeyStoreInfo, so that every kind of search sees the same values
+ */
+@Component
+public class KeyStoreReadModel implements SmartInitializingSingleton {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreReadModel.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    // The smallest UUID in the order of UUID.compareTo, positioning a probe before every KeyStore sharing its value
+    private static final UUID MIN_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<UUID, KeyStoreSummary> byId = new ConcurrentHashMap<>();
+    private final Map<KeyStoreListForm.SortField, NavigableSet<KeyStoreSummary>> sorted =
+            new EnumMap<>(KeyStoreListForm.SortField.class);
+    private final Map<DistinguishedName.Attribute, TrigramIndex<UUID>> subjectIndexes =
+            new EnumMap<>(DistinguishedName.Attribute.class);
+
+    @Autowired
+    public KeyStoreReadModel(KeyStoreInfoRepository keyStoreInfoRepository, ApplicationEventPublisher eventPublisher) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.eventPublisher = eventPublisher;
+
+        for (KeyStoreListForm.SortField sortField : KeyStoreListForm.SortField.values()) {
+            sorted.put(sortField, new ConcurrentSkipListSet<>(comparator(sortField)));
+        }
+        for (DistinguishedName.Attribute attribute : DistinguishedName.Attribute.values()) {
+            subjectIndexes.put(attribute, new TrigramIndex<>());
+        }
+    }
+
+    /**
+     * Load every live KeyStore a page at a time. Called once every singleton is created, which is before the web
+     * server is started and before any scheduled job runs, so no event can race the load
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        UUID after = new UUID(0, 0);
+        List<KeyStoreSummary> page;
+        do {
+            page = keyStoreInfoRepository.findSummariesAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+            page.forEach(this::add);
+
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).keyStoreId();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        after = new UUID(0, 0);
+        List<KeyStoreSubject> subjects;
+        do {
+            subjects = keyStoreInfoRepository.findSubjectsAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+            indexSubjects(subjects);
+
+            if (!subjects.isEmpty()) {
+                after = subjects.get(subjects.size() - 1).keyStoreId();
+            }
+        } while (subjects.size() == LOAD_PAGE_SIZE);
+
+        log.info("Loaded {} KeyStores into the read model", byId.size());
+    }
+
+    /**
+     * Reconcile the model with the database, a page at a time, to pick up the KeyStores saved and deleted by other
+     * nodes. The differences are published as a KeyStoresCreatedEvent and a KeyStoresDeletedEvent, so that every
+     * other listener of those events sees them as well
+     * <br><br>
+     * Only KeyStores that were in the model before the refresh started can be found to be deleted, so a KeyStore saved
+     * by this node while the refresh runs is never dropped
+     */
+    @Scheduled(initialDelayString = "#{@caSettings.readModel.refreshInterval.toMillis()}",
+            fixedDelayString = "#{@caSettings.readModel.refreshInterval.toMillis()}")
+    public void refresh() {
+        Set<UUID> missing = new HashSet<>(byId.keySet());
+        List<KeyStoreSummary> created = new ArrayList<>();
+        List<KeyStoreSubject> createdSubjects = new ArrayList<>();
+
+        UUID after = new UUID(0, 0);
+        List<KeyStoreSummary> page;
+        do {
+            page = keyStoreInfoRepository.findSummariesAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+
+            List<KeyStoreSummary> pageCreated = new ArrayList<>();
+            for (KeyStoreSummary keyStore : page) {
+                if (!missing.remove(keyStore.keyStoreId()) && !byId.containsKey(keyStore.keyStoreId())) {
+                    pageCreated.add(keyStore);
+                }
+            }
+            if (!pageCreated.isEmpty()) {
+                created.addAll(pageCreated);
+                createdSubjects.addAll(keyStoreInfoRepository.findSubjectsByIdIn(
+                        pageCreated.stream().map(KeyStoreSummary::keyStoreId).toList()));
+            }
+
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).keyStoreId();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        if (!created.isEmpty()) {
+            eventPublisher.publishEvent(new KeyStoresCreatedEvent(created, createdSubjects));
+        }
+        if (!missing.isEmpty()) {
+            eventPublisher.publishEvent(new KeyStoresDeletedEvent(missing));
+        }
+
+        if (!created.isEmpty() || !missing.isEmpty()) {
+            log.info("Refreshed the read model, {} KeyStores saved and {} deleted elsewhere", created.size(),
+                    missing.size());
+        }
+    }
+
+    /**
+     * @param keyStoreId The ID of the KeyStore
+     * @return Whether the KeyStore exists and has not been deleted
+     */
+    public boolean contains(UUID keyStoreId) {
+        return byId.containsKey(keyStoreId);
+    }
+
+    /**
+     * @param keyStoreId The ID of the KeyStore
+     * @return The display metadata of the KeyStore, unless it does not exist or has been deleted
+     */
+    public Optional<KeyStoreSummary> find(UUID keyStoreId) {
+        return Optional.ofNullable(byId.get(keyStoreId));
+    }
+
+    /**
+     * @param sortField The field to order the KeyStores by
+     * @return A live, unmodifiable view of every KeyStore in ascending order of the field, ties broken by ID
+     */
+    public NavigableSet<KeyStoreSummary> sortedBy(KeyStoreListForm.SortField sortField) {
+        return Collections.unmodifiableNavigableSet(sorted.get(sortField));
+    }
+
+    /**
+     * The KeyStores expiring within a range, found by seeking into the expiry index rather than by visiting every
+     * KeyStore
+     * @param from The time at or after which the certificates expire, or null for no lower bound
+     * @param to The time before which the certificates expire, or null for no upper bound
+     * @return A live, unmodifiable view of the KeyStores in ascending order of expiry, ties broken by ID
+     */
+    public NavigableSet<KeyStoreSummary> expiringBetween(Instant from, Instant to) {
+        NavigableSet<KeyStoreSummary> byExpiry = sortedBy(KeyStoreListForm.SortField.EXPIRY);
+        if (from != null) {
+            byExpiry = byExpiry.tailSet(expiryProbe(from), true);
+        }
+        if (to != null) {
+            byExpiry = byExpiry.headSet(expiryProbe(to), false);
+        }
+
+        return byExpiry;
+    }
+
+    /**
+     * Find the KeyStores whose Subject DN attribute is similar to the value, by trigram similarity
+     * @param attribute The attribute of the Subject DN to compare
+     * @param value The value to compare to
+     * @param threshold The lowest similarity of a match, above 0 and at most 1
+     * @return The similarity of each matching KeyStore by ID. A KeyStore deleted since may still be included
+     */
+    public Map<UUID, Double> similarSubjects(DistinguishedName.Attribute attribute, String value, double threshold) {
+        return subjectIndexes.get(attribute).search(value, threshold);
+    }
+
+    /**
+     * Index the stored Subject DN attributes of KeyStores for searching by similarity, replacing any indexed before.
+     * KeyStores that are not in the read model are skipped
+     * @param subjects The stored Subject DN attributes of each KeyStore
+     */
+    public void indexSubjects(Collection<KeyStoreSubject> subjects) {
+        for (KeyStoreSubject subject : subjects) {
+            if (!byId.containsKey(subject.keyStoreId())) {
+                continue;
+            }
+
+            DistinguishedName attributes = subject.toDistinguishedName();
+            subjectIndexes.forEach((attribute, index) -> index.put(subject.keyStoreId(), attribute.get(attributes)));
+        }
+    }
+
+    /**
+     * @return The number of KeyStores in the read model
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Orders KeyStores by the sort field, then by ID. Only those two fields are read, so a probe record holding just
+     * them can be used to position within an index
+     * @param sortField The field to order the KeyStores by
+     * @return The ordering of the index for the sort field
+     */
+    public static Comparator<KeyStoreSummary> comparator(KeyStoreListForm.SortField sortField) {
+        Comparator<KeyStoreSummary> bySortField = switch (sortField) {
+            case EXPIRY -> Comparator.comparing(KeyStoreSummary::expiry);
+            case SUBJECT -> Comparator.comparing(KeyStoreSummary::subjectDn);
+            case ISSUER -> Comparator.comparing(KeyStoreSummary::issuerDn);
+        };
+
+        return bySortField.thenComparing(KeyStoreSummary::keyStoreId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCreated(KeyStoresCreatedEvent event) {
+        event.keyStores().forEach(this::add);
+        indexSubjects(event.subjects());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeleted(KeyStoresDeletedEvent event) {
+        event.keyStoreIds().forEach(this::remove);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onExpired(KeyStoresExpiredEvent event) {
+        // The iterators of a skip list are weakly consistent, so removing while iterating is safe
+        for (KeyStoreSummary keyStore : sorted.get(KeyStoreListForm.SortField.EXPIRY)) {
+            if (!keyStore.expiry().isBefore(event.expiredBefore())) {
+                break;
+            }
+            remove(keyStore.keyStoreId());
+        }
+    }
+
+    private static KeyStoreSummary expiryProbe(Instant expiry) {
+        return new KeyStoreSummary(MIN_ID, null, null, null, null, expiry);
+    }
+
+    private void add(KeyStoreSummary keyStore) {
+        // Added to the indexes first, so a KeyStore found by ID is always listed
+        sorted.values().forEach(index -> index.add(keyStore));
+        byId.put(keyStore.keyStoreId(), keyStore);
+    }
+
+    private void remove(UUID keyStoreId) {
+        KeyStoreSummary keyStore = byId.remove(keyStoreId);
+        if (keyStore != null) {
+            sorted.values().forEach(index -> index.remove(keyStore));
+            subjectIndexes.values().forEach(index -> index.remove(keyStoreId));
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package net.majatech.ca.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.ReconciliationReport;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detects drift between the KeyStore metadata and the files in the KeyStoreBlobStore, such as files left behind by a
+ * half finished delete, or KeyStores whose file was lost
+ * <br><br>
+ * The ID space is split into 16 partitions by the leading hex digit of the ID, which are reconciled in parallel. Within
+ * a partition, the IDs listed by the blob store and the IDs in the database are both read one page at a time in the
+ * same order, and merge joined. Memory use is therefore bounded by the page size, however many KeyStores there are.
+ * Both sides are ordered by the string form of the ID, which matches the byte order the database sorts UUIDs by
+ * <br><br>
+ * Drift found by the merge join is checked once more before it is reported, as the listing and the database pages
+ * are read at different times. A file is only ever written after its metadata is committed, and a KeyStore is only
+ * expected to have a file once its upload has completed
+ * <br><br>
+ * When repairing, orphaned files are deleted, and KeyStores without a file are deleted as they can not be served
+ */
+@Service
+public class KeyStoreReconciler implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreReconciler.class);
+
+    private static final String HEX_DIGITS = "0123456789abcdef";
+    private static final int SAMPLE_SIZE = 100;
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreBlobStore keyStoreBlobStore;
+    private final KeyStoreGarbageCollector keyStoreGarbageCollector;
+    private final CaSettings.Reconciliation settings;
+    private final ExecutorService partitionExecutor;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final Counter orphanedCounter;
+    private final Counter missingCounter;
+
+    @Autowired
+    public KeyStoreReconciler(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                              KeyStoreBlobStore keyStoreBlobStore, KeyStoreGarbageCollector keyStoreGarbageCollector,
+                              MeterRegistry meterRegistry) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreBlobStore = keyStoreBlobStore;
+        this.keyStoreGarbageCollector = keyStoreGarbageCollector;
+        this.settings = caSettings.getReconciliation();
+        this.partitionExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "keystore-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.orphanedCounter = Counter.builder("ca.reconciliation.drift")
+                .description("Number of drifted KeyStores found by reconciliation")
+                .tag("type", "orphaned")
+                .register(meterRegistry);
+        this.missingCounter = Counter.builder("ca.reconciliation.drift")
+                .description("Number of drifted KeyStores found by reconciliation")
+                .tag("type", "missing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reconcile on a schedule, repairing only if enabled in the settings
+     */
+    @Scheduled(initialDelayString = "#{@caSettings.reconciliation.interval.toMillis()}",
+            fixedDelayString = "#{@caSettings.reconciliation.interval.toMillis()}")
+    public void reconcileOnSchedule() {
+        try {
+            reconcile(settings.isRepair());
+        } catch (Exception e) {
+            log.warn("Scheduled reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Reconcile every KeyStore against the blob store. Only one reconciliation runs at a time
+     * @param repair Whether to repair the drift, rather than only reporting it
+     * @return The drift that was found
+     */
+    public ReconciliationReport reconcile(boolean repair) {
+        if (!runLock.tryLock()) {
+            throw new CaException("A reconciliation is already running");
+        }
+
+        try {
+            List<CompletableFuture<Drift>> partitions = HEX_DIGITS.chars()
+                    .mapToObj(digit -> CompletableFuture.supplyAsync(
+                            () -> reconcilePartition(String.valueOf((char) digit), repair), partitionExecutor))
+                    .toList();
+
+            Drift total = new Drift();
+            partitions.forEach(partition -> total.add(partition.join()));
+
+            orphanedCounter.increment(total.orphaned);
+            missingCounter.increment(total.missing);
+            log.info("Reconciliation found {} orphaned files and {} KeyStores without a file{}",
+                    total.orphaned, total.missing, repair ? ", all repaired" : "");
+
+            return new ReconciliationReport(total.orphaned, total.missing,
+                    List.copyOf(total.orphanedSample), List.copyOf(total.missingSample), repair);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        partitionExecutor.shutdownNow();
+    }
+
+    private Drift reconcilePartition(String prefix, boolean repair) {
+        int pageSize = Math.max(1, settings.getPageSize());
+
+        Drift drift = new Drift();
+        List<UUID> orphanCandidates = new ArrayList<>();
+        List<UUID> missingCandidates = new ArrayList<>();
+
+        FileCursor files = new FileCursor(prefix, pageSize);
+        RowCursor rows = new RowCursor(prefix, pageSize);
+
+        UUID file = files.next();
+        BlobState row = rows.next();
+        while (file != null || row != null) {
+            int order = file == null ? 1 : row == null ? -1 : compare(file, row.keyStoreId());
+
+            if (order < 0) {
+                orphanCandidates.add(file);
+                file = files.next();
+            } else if (order > 0) {
+                if (row.fileExpected()) {
+                    missingCandidates.add(row.keyStoreId());
+                }
+                row = rows.next();
+            } else {
+                file = files.next();
+                row = rows.next();
+            }
+
+            if (orphanCandidates.size() >= pageSize) {
+                resolveOrphans(orphanCandidates, repair, drift);
+                orphanCandidates.clear();
+            }
+            if (missingCandidates.size() >= pageSize) {
+                resolveMissing(missingCandidates, repair, drift);
+                missingCandidates.clear();
+            }
+        }
+
+        resolveOrphans(orphanCandidates, repair, drift);
+        resolveMissing(missingCandidates, repair, drift);
+
+        return drift;
+    }
+
+    /**
+     * A file whose metadata exists by now was only listed before the metadata page was read
+     */
+    private void resolveOrphans(List<UUID> candidates, boolean repair, Drift drift) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> known = new HashSet<>(keyStoreInfoRepository.findAllIdsIncludingTombstoned(candidates));
+        List<UUID> orphaned = candidates.stream().filter(keyStoreId -> !known.contains(keyStoreId)).toList();
+        if (orphaned.isEmpty()) {
+            return;
+        }
+
+        log.warn("Found {} files without KeyStore metadata, e.g. {}", orphaned.size(), orphaned.get(0));
+        drift.addOrphaned(orphaned);
+
+        if (repair) {
+            keyStoreBlobStore.deleteAll(orphaned).join();
+        }
+    }
+
+    /**
+     * A KeyStore whose file exists by now was only uploaded after the listing was read. Files that can not be
+     * checked are skipped, so a KeyStore is never deleted unless its file is known to be missing
+     */
+    private void resolveMissing(List<UUID> candidates, boolean repair, Drift drift) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> checks = candidates.stream()
+                .map(keyStoreId -> keyStoreBlobStore.exists(keyStoreId)
+                        .handle((exists, error) -> error == null && !exists))
+                .toList();
+
+        List<UUID> missing = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (checks.get(i).join()) {
+                missing.add(candidates.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        log.warn("Found {} KeyStores without a file, e.g. {}", missing.size(), missing.get(0));
+        drift.addMissing(missing);
+
+        if (repair) {
+            keyStoreGarbageCollector.tombstone(missing);
+        }
+    }
+
+    /**
+     * Orders IDs by their string form, as listed by the blob store
+     */
+    private static int compare(UUID first, UUID second) {
+        return first.toString().compareTo(second.toString());
+    }
+
+    /**
+     * The ID made of the prefix, padded to full length with the given hex digit
+     */
+    private static UUID boundOf(String prefix, char padding) {
+        String hex = prefix + String.valueOf(padding).repeat(32 - prefix.length());
+
+        return UUID.fromString(hex.substring(0, 8) + "-" + hex.substring(8, 12) + "-" + hex.substring(12, 16) + "-"
+                + hex.substring(16, 20) + "-" + hex.substring(20));
+    }
+
+    /**
+     * The ID following the given one, treating it as an unsigned 128 bit number
+     */
+    private static UUID successorOf(UUID keyStoreId) {
+        long least = keyStoreId.getLeastSignificantBits() + 1;
+        long most = keyStoreId.getMostSignificantBits() + (least == 0 ? 1 : 0);
+
+        return new UUID(most, least);
+    }
+
+    private record BlobState(UUID keyStoreId, boolean fileExpected) {
+    }
+
+    /**
+     * Reads the IDs listed by the blob store one page at a time
+     */
+    private class FileCursor {
+        private final String prefix;
+        private final int pageSize;
+        private Iterator<UUID> page = Collections.emptyIterator();
+        private UUID last;
+        private boolean exhausted;
+
+        private FileCursor(String prefix, int pageSize) {
+            this.prefix = prefix;
+            this.pageSize = pageSize;
+        }
+
+        private UUID next() {
+            if (!page.hasNext() && !exhausted) {
+                List<UUID> keyStoreIds = keyStoreBlobStore.listIds(prefix, last, pageSize).join();
+                exhausted = keyStoreIds.isEmpty();
+                page = keyStoreIds.iterator();
+            }
+
+            if (!page.hasNext()) {
+                return null;
+            }
+
+            last = page.next();
+            return last;
+        }
+    }
+
+    /**
+     * Reads the KeyStores of the partition from the database one page at a time, using the last ID of each page as
+     * the start of the next
+     */
+    private class RowCursor {
+        private final UUID to;
+        private final int pageSize;
+        private UUID from;
+        private Iterator<BlobState> page = Collections.emptyIterator();
+        private boolean exhausted;
+
+        private RowCursor(String prefix, int pageSize) {
+            this.from = boundOf(prefix, '0');
+            this.to = boundOf(prefix, 'f');
+            this.pageSize = pageSize;
+        }
+
+        private BlobState next() {
+            if (!page.hasNext() && !exhausted) {
+                List<BlobState> rows = keyStoreInfoRepository.findBlobStatesBetween(from, to, pageSize).stream()
+                        .map(row -> new BlobState((UUID) row[0], Boolean.TRUE.equals(row[1])))
+                        .toList();
+
+                UUID last = rows.isEmpty() ? to : rows.get(rows.size() - 1).keyStoreId();
+                exhausted = rows.size() < pageSize || last.equals(to);
+                from = exhausted ? from : successorOf(last);
+                page = rows.iterator();
+            }
+
+            return page.hasNext() ? page.next() : null;
+        }
+    }
+
+    /**
+     * The drift found in one or more partitions, keeping only a sample of the IDs
+     */
+    private static class Drift {
+        private int orphaned;
+        private int missing;
+        private final List<UUID> orphanedSample = new ArrayList<>();
+        private final List<UUID> missingSample = new ArrayList<>();
+
+        private void addOrphaned(List<UUID> keyStoreIds) {
+            orphaned += keyStoreIds.size();
+            addSample(orphanedSample, keyStoreIds);
+        }
+
+        private void addMissing(List<UUID> keyStoreIds) {
+            missing += keyStoreIds.size();
+            addSample(missingSample, keyStoreIds);
+        }
+
+        private void add(Drift other) {
+            orphaned += other.orphaned;
+            missing += other.missing;
+            addSample(orphanedSample, other.orphanedSample);
+            addSample(missingSample, other.missingSample);
+        }
+
+        private static void addSample(List<UUID> sample, List<UUID> keyStoreIds) {
+            keyStoreIds.stream().limit(Math.max(0, SAMPLE_SIZE - sample.size())).forEach(sample::add);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package net.majatech.ca.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.authority.signing.IssuerRegistry;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.RenewalReport;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.entity.RenewalRun;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.data.repo.RenewalRunRepository;
+import net.majatech.ca.exceptions.CaException;
+import net.majatech.ca.utils.KeyStoreUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Renews every KeyStore whose certificate expires within a window, reusing the existing KeyPair of each KeyStore so
+ * that no key is generated
+ * <br><br>
+ * Each KeyStore is loaded from the blob store, its certificate is re-signed for a fresh validity period with the same
+ * encoded subject and extensions, and the result is encoded with the same password and alias. The files of a chunk
+ * are renewed in parallel on a fixed number of workers, as loading and encoding a PKCS12 file is dominated by its
+ * password based key derivation
+ * <br><br>
+ * A KeyStore never changes once saved, so a renewed KeyStore is saved under a new ID and the original is deleted. The
+ * renewed KeyStores of a chunk are staged through the KeyStoreOutboxService, the originals tombstoned and the
+ * checkpoint of the RenewalRun advanced, all in a single transaction. A run interrupted by a crash is resumed after
+ * its last committed chunk. A KeyStore that fails to renew is left as it is, and skipped by the rest of the run
+ * <br><br>
+ * A run is claimed in the database by taking its lease, which each committed chunk renews. Another node only resumes
+ * the run once the lease has expired, and a chunk is only committed while its node still holds the lease, so two nodes
+ * never renew the same run at the same time
+ * <br><br>
+ * A certificate is renewed by the configured issuer that signed it, so that renewal never moves a KeyStore to another
+ * CA. A KeyStore whose issuer is no longer configured fails to renew
+ */
+@Service
+public class KeyStoreRenewalService implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreRenewalService.class);
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final RenewalRunRepository renewalRunRepository;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final KeyStoreGarbageCollector keyStoreGarbageCollector;
+    private final ClientCertificateSigner clientCertificateSigner;
+    private final IssuerRegistry issuerRegistry;
+    private final Pkcs12Encoder pkcs12Encoder;
+    private final CaSettings.Renewal settings;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService renewalExecutor;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final Counter renewedCounter;
+    private final Counter failedCounter;
+
+    @Autowired
+    public KeyStoreRenewalService(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                                  RenewalRunRepository renewalRunRepository,
+                                  KeyStoreOutboxService keyStoreOutboxService,
+                                  KeyStoreGarbageCollector keyStoreGarbageCollector,
+                                  ClientCertificateSigner clientCertificateSigner, IssuerRegistry issuerRegistry,
+                                  Pkcs12Encoder pkcs12Encoder, PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.renewalRunRepository = renewalRunRepository;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.keyStoreGarbageCollector = keyStoreGarbageCollector;
+        this.clientCertificateSigner = clientCertificateSigner;
+        this.issuerRegistry = issuerRegistry;
+        this.pkcs12Encoder = pkcs12Encoder;
+        this.settings = caSettings.getRenewal();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.renewalExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "keystore-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.renewedCounter = Counter.builder("ca.renewals")
+                .description("Number of KeyStores processed by bulk renewal")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("ca.renewals")
+                .description("Number of KeyStores processed by bulk renewal")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Resume an interrupted renewal, or start a new one if renewal is enabled in the settings
+     */
+    @Scheduled(initialDelayString = "#{@caSettings.renewal.resumeDelay.toMillis()}",
+            fixedDelayString = "#{@caSettings.renewal.interval.toMillis()}")
+    public void renewOnSchedule() {
+        try {
+            if (settings.isEnabled() || renewalRunRepository.findFirstByStatusOrderByStartedAt(
+                    RenewalRun.Status.RUNNING).isPresent()) {
+                renew(settings.getWindow());
+            }
+        } catch (Exception e) {
+            log.warn("Scheduled renewal failed", e);
+        }
+    }
+
+    /**
+     * Renew every KeyStore expiring within the window from now. If an earlier run was interrupted, that run is
+     * resumed with its own cutoff instead. Only one renewal runs at a time across all nodes
+     * @param window How far ahead of its expiry a KeyStore is renewed
+     * @return The outcome of the run
+     * @throws CaException If a renewal is already running, or its lease has yet to expire
+     */
+    public RenewalReport renew(Duration window) {
+        return renew(window, true);
+    }
+
+    /**
+     * Renew every KeyStore expiring within the window from now. Unlike {@link #renew(Duration)}, an interrupted run is
+     * not resumed in its place, as its cutoff would differ from the window asked for
+     * @param window How far ahead of its expiry a KeyStore is renewed
+     * @return The outcome of the run
+     * @throws CaException If a renewal is already running, or an interrupted run has yet to be resumed
+     */
+    public RenewalReport renewWithin(Duration window) {
+        return renew(window, false);
+    }
+
+    @Override
+    public void destroy() {
+        renewalExecutor.shutdownNow();
+    }
+
+    private RenewalReport renew(Duration window, boolean resume) {
+        if (!runLock.tryLock()) {
+            throw new CaException("A renewal is already running");
+        }
+
+        try {
+            Claim claim = claim(window, resume);
+            if (claim.resumed()) {
+                log.info("Resuming renewal {} after KeyStore {}", claim.run().getRunId(), claim.run().getCheckpoint());
+            }
+
+            RenewalRun run = execute(claim.run());
+
+            log.info("Renewal {} renewed {} KeyStores, {} failed", run.getRunId(), run.getRenewed(), run.getFailed());
+            return new RenewalReport(run.getRunId(), run.getRenewBefore(), run.getRenewed(), run.getFailed(),
+                    claim.resumed());
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Take the lease of the running renewal once it has expired, or start a new run if none is running. The running
+     * run is locked while it is claimed, so only one node can take its lease
+     */
+    private Claim claim(Duration window, boolean resume) {
+        try {
+            return transactionTemplate.execute(status -> {
+                Instant now = Instant.now();
+                List<RenewalRun> running = renewalRunRepository.findByStatusForUpdate(RenewalRun.Status.RUNNING);
+
+                if (running.isEmpty()) {
+                    RenewalRun run = RenewalRun.start(now.plus(window));
+                    run.setLeaseOwner(UUID.randomUUID());
+                    return new Claim(renewalRunRepository.saveAndFlush(run), false);
+                }
+
+                RenewalRun run = running.get(0);
+                if (run.getUpdatedAt().isAfter(now.minus(settings.getLeaseTimeout()))) {
+                    throw new CaException("Renewal " + run.getRunId() + " is already running");
+                }
+                if (!resume) {
+                    throw new CaException("Renewal " + run.getRunId()
+                            + " was interrupted and must be resumed before renewing within another window");
+                }
+
+                run.setLeaseOwner(UUID.randomUUID());
+                run.setUpdatedAt(now);
+                return new Claim(renewalRunRepository.save(run), true);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another node started a run at the same time, and at most one run can be running
+            throw new CaException("A renewal is already running", e);
+        }
+    }
+
+    private RenewalRun execute(RenewalRun run) {
+        int chunkSize = Math.max(1, settings.getChunkSize());
+
+        List<KeyStoreInfo> chunk;
+        do {
+            // Certificates that have already expired are left to be deleted rather than renewed
+            UUID after = run.getCheckpoint() != null ? run.getCheckpoint() : new UUID(0, 0);
+            chunk = keyStoreInfoRepository.findExpiringBetweenAfter(Instant.now(), run.getRenewBefore(), after,
+                    PageRequest.of(0, chunkSize));
+
+            if (!chunk.isEmpty()) {
+                run = renewChunk(run, chunk);
+            }
+        } while (chunk.size() == chunkSize);
+
+        RenewalRun leased = run;
+        return transactionTemplate.execute(status -> {
+            RenewalRun current = lockLease(leased);
+            current.setStatus(RenewalRun.Status.COMPLETED);
+            current.setUpdatedAt(Instant.now());
+            return renewalRunRepository.save(current);
+        });
+    }
+
+    /**
+     * Lock the run and check this node still holds its lease. A node whose lease expired while it was renewing a
+     * chunk must not commit that chunk, as another node may have taken the run over
+     */
+    private RenewalRun lockLease(RenewalRun run) {
+        return renewalRunRepository.findForUpdate(run.getRunId())
+                .filter(current -> current.getStatus() == RenewalRun.Status.RUNNING)
+                .filter(current -> run.getLeaseOwner().equals(current.getLeaseOwner()))
+                .orElseThrow(() -> new CaException("Renewal " + run.getRunId() + " was taken over by another node"));
+    }
+
+    private RenewalRun renewChunk(RenewalRun run, List<KeyStoreInfo> chunk) {
+        List<CompletableFuture<Renewal>> renewals = chunk.stream()
+                .map(keyStoreInfo -> keyStoreOutboxService.fetchKeyStoreBytes(keyStoreInfo.getKeyStoreId())
+                        .thenApplyAsync(keyStoreBytes -> renewKeyStore(keyStoreInfo, keyStoreBytes), renewalExecutor))
+                .toList();
+
+        List<Renewal> renewed = new ArrayList<>(chunk.size());
+        int failed = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            try {
+                renewed.add(renewals.get(i).join());
+            } catch (CompletionException e) {
+                failed++;
+                log.warn("Failed to renew KeyStore {}", chunk.get(i).getKeyStoreId(),
+                        e.getCause() != null ? e.getCause() : e);
+            }
+        }
+
+        int failedInChunk = failed;
+        RenewalRun updated = transactionTemplate.execute(status -> {
+            RenewalRun current = lockLease(run);
+
+            // A KeyStore deleted while it was being renewed must not come back as its renewal
+            Set<UUID> live = keyStoreInfoRepository.findAllById(renewed.stream().map(Renewal::original).toList())
+                    .stream()
+                    .map(KeyStoreInfo::getKeyStoreId)
+                    .collect(Collectors.toSet());
+            List<Renewal> saved = renewed.stream().filter(renewal -> live.contains(renewal.original())).toList();
+
+            if (!saved.isEmpty()) {
+                keyStoreOutboxService.stageAll(saved.stream().map(Renewal::keyStoreInfo).toList(),
+                        saved.stream().map(Renewal::keyStoreBytes).toList());
+                keyStoreGarbageCollector.tombstone(saved.stream().map(Renewal::original).toList());
+            }
+
+            // Advancing updatedAt renews the lease
+            current.setCheckpoint(chunk.get(chunk.size() - 1).getKeyStoreId());
+            current.setRenewed(current.getRenewed() + saved.size());
+            current.setFailed(current.getFailed() + failedInChunk);
+            current.setUpdatedAt(Instant.now());
+            return renewalRunRepository.save(current);
+        });
+
+        renewedCounter.increment(updated.getRenewed() - run.getRenewed());
+        failedCounter.increment(failedInChunk);
+        return updated;
+    }
+
+    /**
+     * Re-sign the certificate of the KeyStore with its existing KeyPair, subject and extensions, and encode the result
+     * with the same password and alias. A certificate that can not be renewed exactly as it is fails to renew
+     * @return The unsaved metadata and the encoded renewed KeyStore
+     */
+    private Renewal renewKeyStore(KeyStoreInfo keyStoreInfo, byte[] keyStoreBytes) {
+        String pass = keyStoreInfo.getPass();
+        String alias = keyStoreInfo.getAlias();
+
+        X509Certificate original;
+        KeyPair keyPair;
+        try {
+            KeyStore keyStore = KeyStoreUtils.fromBytes(keyStoreBytes, pass);
+            Key key = keyStore.getKey(alias, pass.toCharArray());
+            if (!(key instanceof PrivateKey privateKey)
+                    || !(keyStore.getCertificate(alias) instanceof X509Certificate certificate)) {
+                throw new CaException("KeyStore has no key entry with alias " + alias);
+            }
+
+            original = certificate;
+            keyPair = new KeyPair(certificate.getPublicKey(), privateKey);
+        } catch (CaException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CaException("Failed to load KeyStore " + keyStoreInfo.getKeyStoreId(), e);
+        }
+
+        X500Principal issuerDn = original.getIssuerX500Principal();
+        String issuerName = issuerRegistry.findIssuerName(issuerDn)
+                .orElseThrow(() -> new CaException("The issuer of KeyStore " + keyStoreInfo.getKeyStoreId()
+                        + " is no longer configured: " + issuerDn.getName()));
+
+        // The encoded subject and extensions of the original are kept as they are, rather than rebuilt from a
+        // DistinguishedName that only holds some of its attributes. No KeyPair is generated or taken from the pool
+        CertificateHolder certHolder = clientCertificateSigner.renew(original, keyPair, issuerName);
+
+        return new Renewal(keyStoreInfo.getKeyStoreId(),
+                KeyStoreInfo.from(certHolder.getX509Certificate(), pass, alias),
+                pkcs12Encoder.encode(certHolder, pass, alias));
+    }
+
+    private record Renewal(UUID original, KeyStoreInfo keyStoreInfo, byte[] keyStoreBytes) {
+    }
+
+    private record Claim(RenewalRun run, boolean resumed) {
+    }
+}
@@ -0,0 +1,202 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.controller.api.model.KeyStoreSearchForm;
+import net.majatech.ca.controller.api.model.KeyStoreSubject;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.exceptions.CaException;
+import net.majatech.ca.utils.KeyStoreUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static net.majatech.ca.data.repo.KeyStoreInfoSpecifications.subjectAttributeEquals;
+import static net.majatech.ca.data.repo.KeyStoreInfoSpecifications.subjectAttributeStartsWith;
+
+/**
+ * Searches KeyStores by the attributes of their Subject DN, such as every certificate issued to OU=Payments
+ * <br><br>
+ * Exact and prefix matches are served by the indexed Subject DN attribute columns of KeyStoreInfo, so a search seeks
+ * straight to the matching rows instead of scanning the Subject DN of every KeyStore. Similarity matches are served by
+ * the trigram indexes of the KeyStoreReadModel, which only visit the KeyStores sharing a trigram with the value
+ */
+@Service
+public class KeyStoreSearchService {
+    private static final Logger log = LoggerFactory.getLogger(KeyStoreSearchService.class);
+
+    private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreReadModel keyStoreReadModel;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final CaSettings.Search settings;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public KeyStoreSearchService(CaSettings caSettings, KeyStoreInfoRepository keyStoreInfoRepository,
+                                 KeyStoreReadModel keyStoreReadModel, KeyStoreOutboxService keyStoreOutboxService,
+                                 PlatformTransactionManager transactionManager) {
+        this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreReadModel = keyStoreReadModel;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.settings = caSettings.getSearch();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Find the KeyStores matching every Subject DN attribute set in the form
+     * @param keyStoreSearchForm The attributes to search by, how to match them and how many KeyStores to return
+     * @return The matching KeyStores, in order of ID for exact and prefix matches, or from most to least similar
+     */
+    public List<KeyStoreSummary> search(KeyStoreSearchForm keyStoreSearchForm) {
+        DistinguishedName criteria = keyStoreSearchForm.toDistinguishedName();
+
+        Map<DistinguishedName.Attribute, String> values = new EnumMap<>(DistinguishedName.Attribute.class);
+        for (DistinguishedName.Attribute attribute : DistinguishedName.Attribute.values()) {
+            String value = KeyStoreInfo.normalizeSubjectAttribute(attribute.get(criteria));
+            if (value != null) {
+                values.put(attribute, value);
+            }
+        }
+
+        if (values.isEmpty()) {
+            throw new CaException("At least one Subject DN attribute is required to search by");
+        }
+
+        return keyStoreSearchForm.getMatch() == KeyStoreSearchForm.Match.SIMILAR
+                ? searchSimilar(values, keyStoreSearchForm.getSize())
+                : searchIndexed(values, keyStoreSearchForm.getMatch(), keyStoreSearchForm.getSize());
+    }
+
+    /**
+     * Set the Subject DN attribute columns of every KeyStore saved before they were added, from the certificate held in
+     * its stored file, and index them in the KeyStoreReadModel. Runs once the application is ready, a batch at a time
+     * <br><br>
+     * The files of a batch are fetched outside of any transaction, and the attributes of the batch are then saved in
+     * a single transaction. A KeyStore whose file can not be read is logged and left to the next startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillSubjectAttributes() {
+        int batchSize = Math.max(1, settings.getBackfillBatchSize());
+
+        UUID after = new UUID(0, 0);
+        int backfilled = 0;
+        int failed = 0;
+        List<KeyStoreInfo> batch;
+        do {
+            batch = keyStoreInfoRepository.findWithoutSubjectAttributesAfter(after, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            after = batch.get(batch.size() - 1).getKeyStoreId();
+
+            List<CompletableFuture<X509Certificate>> fetches = batch.stream()
+                    .map(keyStoreInfo -> keyStoreOutboxService.fetchKeyStoreBytes(keyStoreInfo.getKeyStoreId())
+                            .thenApply(keyStoreBytes -> readCertificate(keyStoreInfo, keyStoreBytes)))
+                    .toList();
+
+            Map<UUID, X509Certificate> certificates = new HashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    certificates.put(batch.get(i).getKeyStoreId(), fetches.get(i).join());
+                } catch (CompletionException e) {
+                    failed++;
+                    log.warn("Failed to read the certificate of KeyStore {}", batch.get(i).getKeyStoreId(),
+                            e.getCause() != null ? e.getCause() : e);
+                }
+            }
+
+            List<KeyStoreSubject> subjects = transactionTemplate.execute(status -> {
+                // A KeyStore deleted in the meantime is no longer found, and so is not saved again
+                List<KeyStoreInfo> keyStoreInfos = keyStoreInfoRepository.findAllById(certificates.keySet());
+                keyStoreInfos.forEach(keyStoreInfo ->
+                        keyStoreInfo.setSubjectAttributes(certificates.get(keyStoreInfo.getKeyStoreId())));
+
+                return keyStoreInfoRepository.saveAll(keyStoreInfos).stream().map(KeyStoreSubject::from).toList();
+            });
+
+            if (subjects != null) {
+                keyStoreReadModel.indexSubjects(subjects);
+                backfilled += subjects.size();
+            }
+        } while (batch.size() == batchSize);
+
+        if (backfilled > 0 || failed > 0) {
+            log.info("Backfilled the Subject DN attributes of {} KeyStores, {} failed", backfilled, failed);
+        }
+    }
+
+    private List<KeyStoreSummary> searchIndexed(Map<DistinguishedName.Attribute, String> values,
+                                                KeyStoreSearchForm.Match match, int size) {
+        Specification<KeyStoreInfo> specification = Specification.where(null);
+        for (Map.Entry<DistinguishedName.Attribute, String> value : values.entrySet()) {
+            specification = specification.and(match == KeyStoreSearchForm.Match.EXACT
+                    ? subjectAttributeEquals(value.getKey(), value.getValue())
+                    : subjectAttributeStartsWith(value.getKey(), value.getValue()));
+        }
+
+        return keyStoreInfoRepository.findAll(specification, PageRequest.of(0, size, Sort.by("keyStoreId")))
+                .map(KeyStoreSummary::from)
+                .getContent();
+    }
+
+    private List<KeyStoreSummary> searchSimilar(Map<DistinguishedName.Attribute, String> values, int size) {
+        // A KeyStore must be similar in every attribute, and is ranked by the sum of its similarities
+        Map<UUID, Double> similarities = null;
+        for (Map.Entry<DistinguishedName.Attribute, String> value : values.entrySet()) {
+            Map<UUID, Double> matches = keyStoreReadModel.similarSubjects(value.getKey(), value.getValue(),
+                    settings.getSimilarityThreshold());
+
+            if (similarities == null) {
+                similarities = new HashMap<>(matches);
+            } else {
+                similarities.keySet().retainAll(matches.keySet());
+                similarities.replaceAll((keyStoreId, similarity) -> similarity + matches.get(keyStoreId));
+            }
+        }
+
+        Map<UUID, Double> ranked = similarities;
+        return ranked.keySet().stream()
+                .sorted(Comparator.comparing((UUID keyStoreId) -> ranked.get(keyStoreId)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .map(keyStoreReadModel::find)
+                .flatMap(Optional::stream)
+                .limit(size)
+                .toList();
+    }
+
+    private static X509Certificate readCertificate(KeyStoreInfo keyStoreInfo, byte[] keyStoreBytes) {
+        KeyStore keyStore = KeyStoreUtils.fromBytes(keyStoreBytes, keyStoreInfo.getPass());
+        try {
+            if (keyStore.getCertificate(keyStoreInfo.getAlias()) instanceof X509Certificate certificate) {
+                return certificate;
+            }
+        } catch (KeyStoreException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+
+        throw new CaException("KeyStore has no certificate with alias " + keyStoreInfo.getAlias());
+    }
+}
@@ -1,10 +1,12 @@
 package net.majatech.ca.services;
 
-import jakarta.transaction.Transactional;
 import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
 import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.keys.KeyPairPool;
 import net.majatech.ca.authority.signing.CertificateSigningRequest;
 import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.BatchIssuanceResult;
 import net.majatech.ca.controller.api.model.CsrForm;
 import net.majatech.ca.data.entity.KeyStoreInfo;
 import net.majatech.ca.data.repo.KeyStoreInfoRepository;
@@ -13,36 +15,51 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class KeyStoreService {
 
-    private final S3Service s3Service;
     private final KeyStoreInfoRepository keyStoreInfoRepository;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final KeyStoreCache keyStoreCache;
+    private final KeyStoreGarbageCollector keyStoreGarbageCollector;
     private final ClientCertificateSigner clientCertificateSigner;
+    private final KeyPairPool keyPairPool;
+    private final Pkcs12Encoder pkcs12Encoder;
 
     @Autowired
-    public KeyStoreService(S3Service s3Service, KeyStoreInfoRepository keyStoreInfoRepository,
-                           ClientCertificateSigner clientCertificateSigner) {
-        this.s3Service = s3Service;
+    public KeyStoreService(KeyStoreInfoRepository keyStoreInfoRepository, KeyStoreOutboxService keyStoreOutboxService,
+                           KeyStoreCache keyStoreCache, KeyStoreGarbageCollector keyStoreGarbageCollector,
+                           ClientCertificateSigner clientCertificateSigner, KeyPairPool keyPairPool,
+                           Pkcs12Encoder pkcs12Encoder) {
         this.keyStoreInfoRepository = keyStoreInfoRepository;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.keyStoreCache = keyStoreCache;
+        this.keyStoreGarbageCollector = keyStoreGarbageCollector;
         this.clientCertificateSigner = clientCertificateSigner;
+        this.keyPairPool = keyPairPool;
+        this.pkcs12Encoder = pkcs12Encoder;
     }
 
     /**
      * Use the CSR values received from the UI to generate, sign and save the resulting KeyStore
      * <br><br>
-     * Saves the KeyStore metadata into the database and uploads the KeyStore itself to the S3 Bucket
+     * The KeyStore is signed and encoded before any database work. Its metadata is then saved together with an
+     * outbox entry, and the upload to the KeyStoreBlobStore happens in the background
      * @param csrForm The CSR fields received from the UI
      * @return The ID of the generated KeyStore
      */
-    @Transactional
     public String generateKeyStoreFromCsr(CsrForm csrForm) {
         // Create CSR from UI values
         CertificateSigningRequest csr = createCsr(csrForm);
@@ -50,38 +67,102 @@ public class KeyStoreService {
         // Sign the certificate
         CertificateHolder certHolder = clientCertificateSigner.sign(csr);
 
-        // Persist KeyStore metadata to database
+        // Encode the KeyStore
+        byte[] keyStoreBytes =
+                pkcs12Encoder.encode(certHolder, csrForm.getKeyStorePass(), csrForm.getKeyStoreAlias());
+
+        // Persist KeyStore metadata to database, and queue the KeyStore for the blob store
         KeyStoreInfo keyStoreInfo =
-                keyStoreInfoRepository.save(
+                keyStoreOutboxService.stage(
                         KeyStoreInfo.from(
                                 certHolder.getX509Certificate(),
                                 csrForm.getKeyStorePass(),
                                 csrForm.getKeyStoreAlias()
-                        )
+                        ),
+                        keyStoreBytes
                 );
 
-        // Upload KeyStore to S3 bucket
-        s3Service.saveKeyStore(
-                certHolder.generateKeyStore(csrForm.getKeyStorePass(), csrForm.getKeyStoreAlias()), keyStoreInfo);
-
         return keyStoreInfo.getKeyStoreId().toString();
     }
 
+    /**
+     * Generate, sign and save a KeyStore for every provided CSR form in a single pass
+     * <br><br>
+     * All certificates are signed with shared issuer state and encoded before any database work. The KeyStore metadata
+     * and outbox entries are then persisted using batched inserts in one transaction. Intended to be called with one
+     * chunk of a larger batch at a time, so that each chunk is committed independently
+     * @param csrForms The CSR fields of every entry in the chunk
+     * @param offset The index of the first entry of the chunk within the whole batch
+     * @return The result of each entry, in the same order as the provided forms
+     */
+    public List<BatchIssuanceResult> generateKeyStoresFromCsrs(List<CsrForm> csrForms, int offset) {
+        // Create and sign all CSRs in one pass
+        List<CertificateSigningRequest> csrs = csrForms.stream().map(this::createCsr).toList();
+        List<CertificateHolder> certHolders = clientCertificateSigner.signAll(csrs);
+
+        // Encode every KeyStore up front
+        List<KeyStoreInfo> keyStoreInfos = new ArrayList<>(csrForms.size());
+        List<byte[]> keyStoreBytes = new ArrayList<>(csrForms.size());
+        for (int i = 0; i < csrForms.size(); i++) {
+            CsrForm csrForm = csrForms.get(i);
+            CertificateHolder certHolder = certHolders.get(i);
+
+            keyStoreInfos.add(KeyStoreInfo.from(
+                    certHolder.getX509Certificate(), csrForm.getKeyStorePass(), csrForm.getKeyStoreAlias()));
+            keyStoreBytes.add(
+                    pkcs12Encoder.encode(certHolder, csrForm.getKeyStorePass(), csrForm.getKeyStoreAlias()));
+        }
+
+        // Persist all KeyStore metadata and outbox entries using batched inserts
+        List<KeyStoreInfo> saved = keyStoreOutboxService.stageAll(keyStoreInfos, keyStoreBytes);
+
+        List<BatchIssuanceResult> results = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            KeyStoreInfo keyStoreInfo = saved.get(i);
+            results.add(BatchIssuanceResult.success(offset + i, keyStoreInfo.getKeyStoreId().toString(),
+                    keyStoreInfo.getSubjectDn(), keyStoreInfo.getExpiry()));
+        }
+
+        return results;
+    }
+
     /**
      * Save the uploaded KeyStore file to the application
      * <br><br>
      * Will first verify the provided file, password and entry alias are valid. Then creates the metadata domain class
-     * using the KeyStore information. This is then saved to the database and the KeyStore is uploaded to the S3 Bucket
+     * using the KeyStore information. This is then saved to the database and the KeyStore is queued for the blob store
      * @param file The uploaded KeyStore
      * @param pass The KeyStore password
      * @param alias The alias of the key entry/certificate to save
      * @return The ID of the uploaded KeyStore
      */
-    @Transactional
     public String saveUploadedKeyStore(MultipartFile file, String pass, String alias) {
+        byte[] keyStoreBytes;
+        try {
+            keyStoreBytes = file.getBytes();
+        } catch (Exception e) {
+            throw new CaException("Please upload a valid PKCS12 Certificate", e);
+        }
+
+        KeyStoreInfo keyStoreInfo = validateKeyStore(keyStoreBytes, pass, alias);
+
+        // Save the KeyStore
+        return keyStoreOutboxService.stage(keyStoreInfo, keyStoreBytes).getKeyStoreId().toString();
+    }
+
+    /**
+     * Verify the provided KeyStore file, password and entry alias are valid, and create the metadata of the KeyStore
+     * <br><br>
+     * Loading the KeyStore derives its keys from the password, so this is CPU bound and safe to call concurrently
+     * @param keyStoreBytes The PKCS12 encoded KeyStore
+     * @param pass The KeyStore password
+     * @param alias The alias of the key entry/certificate to save
+     * @return The unsaved metadata of the KeyStore
+     */
+    public KeyStoreInfo validateKeyStore(byte[] keyStoreBytes, String pass, String alias) {
         try {
             KeyStore keyStore = KeyStore.getInstance("PKCS12");
-            keyStore.load(file.getInputStream(), pass.toCharArray());
+            keyStore.load(new ByteArrayInputStream(keyStoreBytes), pass.toCharArray());
 
             // Verify the certificate/key exists
             if (!(keyStore.getCertificate(alias) instanceof X509Certificate x509Certificate)) {
@@ -89,11 +170,7 @@ public class KeyStoreService {
             }
             x509Certificate.checkValidity();
 
-            // Save the KeyStore
-            KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(x509Certificate, pass, alias);
-            saveKeyStore(keyStore, keyStoreInfo);
-
-            return keyStoreInfo.getKeyStoreId().toString();
+            return KeyStoreInfo.from(x509Certificate, pass, alias);
         } catch (CertificateExpiredException | CertificateNotYetValidException e) {
             throw new CaException("Certificate is not valid. Please check the expiry", e);
         } catch (Exception e) {
@@ -102,38 +179,70 @@ public class KeyStoreService {
     }
 
     /**
-     * Retrieves the desired KeyStore and converts it to a byte array to allow for it to be downloaded from the UI
+     * The ETag of the downloaded KeyStore file. A KeyStore never changes once saved, so its ID alone identifies the
+     * content, and the tag can be checked without reading the file
+     * <br><br>
+     * Whether the KeyStore exists is checked in the database by its primary key, without selecting its password. The
+     * KeyStoreReadModel of this node may not have caught up with a KeyStore saved or deleted by another node yet, and a
+     * deleted KeyStore must not be served from the KeyStoreCache
+     * @param keyStoreId The ID of the KeyStore
+     * @return The quoted, strong ETag of the KeyStore
+     */
+    public String getKeyStoreETag(UUID keyStoreId) {
+        if (!keyStoreInfoRepository.existsById(keyStoreId)) {
+            throw new CaException("KeyStore not found");
+        }
+
+        return "\"" + keyStoreId + "\"";
+    }
+
+    /**
+     * Open the desired KeyStore as a stream, so it can be downloaded from the UI without holding the whole file
+     * <br><br>
+     * A KeyStore that is already cached is served from the cache, and one whose upload is still pending from the
+     * outbox. Otherwise the file is streamed from the blob store, without being added to the cache
      * @param keyStoreId The ID of the KeyStore to be retrieved
-     * @return The KeyStore represented as a byte array
+     * @return A future completed with a stream over the KeyStore, which the caller must close
      */
-    public byte[] getKeyStoreBytes(UUID keyStoreId) {
-        keyStoreInfoRepository.findById(keyStoreId).orElseThrow(() -> new CaException("KeyStore not found"));
+    public CompletableFuture<InputStream> openKeyStore(UUID keyStoreId) {
+        CompletableFuture<byte[]> cached = keyStoreCache.getIfPresent(keyStoreId);
+        if (cached != null) {
+            return cached.thenApply(ByteArrayInputStream::new);
+        }
 
-        return s3Service.fetchKeyStoreAsBytes(keyStoreId);
+        return keyStoreOutboxService.openKeyStoreStream(keyStoreId);
     }
 
     /**
-     * Deletes the KeyStore metadata from the database as well as the corresponding KeyStore from the S3 Bucket
+     * Deletes the KeyStore. It is tombstoned straight away, so it is no longer listed or served, and its file and
+     * metadata are removed in the background by the KeyStoreGarbageCollector
      * @param keyStoreId The ID of the KeyStore to delete
      */
-    @Transactional
     public void deleteKeyStore(UUID keyStoreId) {
-        keyStoreInfoRepository.deleteById(keyStoreId);
-        s3Service.deleteKeyStore(keyStoreId);
+        keyStoreGarbageCollector.tombstone(List.of(keyStoreId));
     }
 
     /**
-     * Retrieve metadata corresponding to all currently saved KeyStores for UI display
-     * @return A list of all currently saved KeyStores
+     * Deletes every given KeyStore with a single bulk update, see {@link #deleteKeyStore(UUID)}
+     * @param keyStoreIds The IDs of the KeyStores to delete
+     * @return The number of KeyStores deleted, excluding IDs that do not exist or were already deleted
      */
-    public List<KeyStoreInfo> getKeyStores() {
-        return keyStoreInfoRepository.findAll();
+    public int deleteKeyStores(Collection<UUID> keyStoreIds) {
+        return keyStoreGarbageCollector.tombstone(keyStoreIds);
+    }
+
+    /**
+     * Deletes every KeyStore whose certificate has expired, see {@link #deleteKeyStore(UUID)}
+     * @return The number of KeyStores deleted
+     */
+    public int deleteExpiredKeyStores() {
+        return keyStoreGarbageCollector.tombstoneExpired();
     }
 
     /**
      * Creates a CSR using the data retrieved from the HTML CSR / 'Create' form
      * @param csrForm The data retrieved from the user that will be used as the Subject in the certificate
-     * @return The CSR wrapper that also contains the corresponding KeyPair
+     * @return The CSR wrapper that also contains the corresponding KeyPair, taken from the KeyPairPool
      */
     private CertificateSigningRequest createCsr(CsrForm csrForm) {
         DistinguishedName subjectDn =
@@ -146,16 +255,6 @@ public class KeyStoreService {
                         .setOrganizationalUnit(csrForm.getOrganizationalUnit())
                         .build();
 
-        return CertificateSigningRequest.using(subjectDn);
-    }
-
-    /**
-     * Saves the provided KeyStore metadata to the database and the KeyStore to the S3 Bucket
-     * @param keyStore The KeyStore to save
-     * @param keyStoreInfo The metadata corresponding to the KeyStore
-     */
-    private void saveKeyStore(KeyStore keyStore, KeyStoreInfo keyStoreInfo) {
-        keyStoreInfoRepository.save(keyStoreInfo);
-        s3Service.saveKeyStore(keyStore, keyStoreInfo);
+        return CertificateSigningRequest.using(subjectDn, keyPairPool.take(csrForm.getKeyAlgorithm()));
     }
 }
@@ -0,0 +1,21 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.controller.api.model.KeyStoreSubject;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+
+import java.util.List;
+
+/**
+ * Published when KeyStores are saved, or when a refresh of the KeyStoreReadModel finds KeyStores saved by another node.
+ * Only their display metadata and Subject DN attributes are carried, never their passwords
+ * @param keyStores The saved KeyStores
+ * @param subjects The stored Subject DN attributes of the saved KeyStores
+ */
+public record KeyStoresCreatedEvent(List<KeyStoreSummary> keyStores, List<KeyStoreSubject> subjects) {
+
+    public static KeyStoresCreatedEvent from(List<KeyStoreInfo> keyStoreInfos) {
+        return new KeyStoresCreatedEvent(keyStoreInfos.stream().map(KeyStoreSummary::from).toList(),
+                keyStoreInfos.stream().map(KeyStoreSubject::from).toList());
+    }
+}
@@ -0,0 +1,12 @@
+package net.majatech.ca.services;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Published when KeyStores are tombstoned, at which point they are no longer listed or served, or when a refresh of
+ * the KeyStoreReadModel finds KeyStores deleted by another node
+ * @param keyStoreIds The IDs of the deleted KeyStores, which may include IDs that did not exist
+ */
+public record KeyStoresDeletedEvent(Collection<UUID> keyStoreIds) {
+}
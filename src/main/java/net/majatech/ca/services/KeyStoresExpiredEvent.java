@@ -0,0 +1,10 @@
+package net.majatech.ca.services;
+
+import java.time.Instant;
+
+/**
+ * Published when every KeyStore whose certificate expired before the given time has been tombstoned
+ * @param expiredBefore The time before which the deleted certificates expired
+ */
+public record KeyStoresExpiredEvent(Instant expiredBefore) {
+}
@@ -0,0 +1,248 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * KeyStoreBlobStore keeping each KeyStore as a file in a directory on the local file system, for single node
+ * deployments
+ * <br><br>
+ * Files are sharded into nested directories named after the leading hex digits of the KeyStore ID, e.g.
+ * {@code 3f/a2/3fa2...p12}. Each file is first written and flushed to a temporary file in the same directory, and then
+ * atomically renamed into place, so a reader only ever sees a complete file
+ * <br><br>
+ * The files are small and the disk is local, so every operation runs on the calling thread and returns a completed
+ * future
+ */
+@Service
+@ConditionalOnProperty(name = "ca.storage.backend", havingValue = "local")
+public class LocalKeyStoreBlobStore implements KeyStoreBlobStore {
+
+    private static final String EXTENSION = ".p12";
+
+    private final Path directory;
+    private final int shardLevels;
+
+    @Autowired
+    public LocalKeyStoreBlobStore(CaSettings caSettings) {
+        this.directory = caSettings.getStorage().getLocalDirectory().toAbsolutePath();
+        // Each level uses two hex digits, and there are 32 in a UUID
+        this.shardLevels = Math.max(0, Math.min(caSettings.getStorage().getLocalShardLevels(), 16));
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new CaException("Unable to create the KeyStore directory " + directory, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> save(UUID keyStoreId, byte[] keyStoreBytes) {
+        Path target = pathOf(keyStoreId);
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+        try {
+            Files.createDirectories(target.getParent());
+
+            try (FileChannel channel = FileChannel.open(temp, CREATE_NEW, WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(keyStoreBytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                // Make sure the content is on disk before the rename makes it visible
+                channel.force(true);
+            }
+
+            Files.move(temp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            return CompletableFuture.failedFuture(new CaException("Failed to store KeyStore " + keyStoreId, e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetch(UUID keyStoreId) {
+        try (FileChannel channel = FileChannel.open(pathOf(keyStoreId), READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("KeyStore file is too large");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("KeyStore file ended early");
+                }
+            }
+
+            return CompletableFuture.completedFuture(buffer.array());
+        } catch (NoSuchFileException e) {
+            return CompletableFuture.failedFuture(new CaException("KeyStore not found", e));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new CaException("Failed to read KeyStore " + keyStoreId, e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<InputStream> openStream(UUID keyStoreId) {
+        try {
+            FileChannel channel = FileChannel.open(pathOf(keyStoreId), READ);
+
+            return CompletableFuture.completedFuture(Channels.newInputStream(channel));
+        } catch (NoSuchFileException e) {
+            return CompletableFuture.failedFuture(new CaException("KeyStore not found", e));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new CaException("Failed to read KeyStore " + keyStoreId, e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(UUID keyStoreId) {
+        return CompletableFuture.completedFuture(Files.isRegularFile(pathOf(keyStoreId)));
+    }
+
+    /**
+     * Visits the shard directories in ascending order, which is also the order of the IDs they hold, and stops once the
+     * page is full. Shards that can not hold an ID matching the prefix, or one following the start, are skipped without
+     * being read, so a page only reads the directories its IDs are taken from
+     */
+    @Override
+    public CompletableFuture<List<UUID>> listIds(String prefix, UUID startAfter, int limit) {
+        String after = startAfter == null ? "" : startAfter.toString();
+        List<UUID> keyStoreIds = new ArrayList<>(Math.min(limit, 1024));
+
+        try {
+            collectIds(directory, "", prefix, after, limit, keyStoreIds);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new CaException("Failed to list the KeyStore directory", e));
+        }
+
+        return CompletableFuture.completedFuture(keyStoreIds);
+    }
+
+    /**
+     * Collect the matching IDs within the shard directory, in ascending order, until the limit is reached
+     * @param shard The leading hex digits of every ID within the directory, two per level
+     */
+    private void collectIds(Path shardDirectory, String shard, String prefix, String after, int limit,
+                            List<UUID> keyStoreIds) throws IOException {
+        if (shard.length() == shardLevels * 2) {
+            for (String name : sortedNames(shardDirectory, false)) {
+                if (keyStoreIds.size() >= limit) {
+                    return;
+                }
+
+                if (name.endsWith(EXTENSION)) {
+                    String id = name.substring(0, name.length() - EXTENSION.length());
+                    if (id.startsWith(prefix) && id.compareTo(after) > 0 && isKeyStoreId(id)) {
+                        keyStoreIds.add(UUID.fromString(id));
+                    }
+                }
+            }
+            return;
+        }
+
+        String prefixHex = prefix.replace("-", "");
+        String afterHex = after.replace("-", "");
+        for (String name : sortedNames(shardDirectory, true)) {
+            if (keyStoreIds.size() >= limit) {
+                return;
+            }
+
+            String child = shard + name;
+            boolean matchesPrefix = child.startsWith(prefixHex) || prefixHex.startsWith(child);
+            String start = afterHex.substring(0, Math.min(child.length(), afterHex.length()));
+
+            if (isShard(name) && matchesPrefix && child.compareTo(start) >= 0) {
+                collectIds(shardDirectory.resolve(name), child, prefix, after, limit, keyStoreIds);
+            }
+        }
+    }
+
+    /**
+     * The names of the directories or files directly within the directory, in ascending order. A directory that was
+     * removed in the meantime is empty
+     */
+    private static List<String> sortedNames(Path directory, boolean directories) throws IOException {
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.filter(path -> Files.isDirectory(path) == directories)
+                    .map(path -> path.getFileName().toString())
+                    .sorted()
+                    .toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(UUID keyStoreId) {
+        try {
+            Files.deleteIfExists(pathOf(keyStoreId));
+
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new CaException("Failed to delete KeyStore " + keyStoreId, e));
+        }
+    }
+
+    /**
+     * Resolve the sharded location of the KeyStore file
+     */
+    Path pathOf(UUID keyStoreId) {
+        String name = keyStoreId.toString();
+        String hex = name.replace("-", "");
+
+        Path path = directory;
+        for (int level = 0; level < shardLevels; level++) {
+            path = path.resolve(hex.substring(level * 2, level * 2 + 2));
+        }
+
+        return path.resolve(name + EXTENSION);
+    }
+
+    private static boolean isShard(String name) {
+        return name.length() == 2 && name.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'));
+    }
+
+    private static boolean isKeyStoreId(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Only a stray temporary file is left behind, it is never read as it does not match any KeyStore ID
+        }
+    }
+}
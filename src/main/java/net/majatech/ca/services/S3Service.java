@@ -1,140 +1,227 @@
 package net.majatech.ca.services;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.majatech.ca.config.CaSettings;
-import net.majatech.ca.data.entity.KeyStoreInfo;
 import net.majatech.ca.exceptions.CaException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.security.KeyStore;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Service class to handle all communication with the S3 Bucket where the Client Certificates / KeyStores are saved
+ * <br><br>
+ * All requests are sent through a non-blocking S3AsyncClient. Every method returns as soon as the request is queued,
+ * and at most the configured number of requests are in flight at once
+ * <br><br>
+ * This is the default KeyStoreBlobStore, and is only created when {@code ca.storage.backend} is {@code S3}
  */
 @Service
-public class S3Service {
+@ConditionalOnProperty(name = "ca.storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3Service implements KeyStoreBlobStore, DisposableBean {
+
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final int MAX_KEYS_PER_LIST = 1000;
 
     private final CaSettings caSettings;
-    private final S3Client s3Client;
+    private final S3AsyncClient s3Client;
+    private final InFlightLimiter inFlightLimiter;
 
     @Autowired
-    public S3Service(CaSettings caSettings) {
+    public S3Service(CaSettings caSettings, MeterRegistry meterRegistry) {
         this.caSettings = caSettings;
         this.s3Client = buildS3Client();
+        this.inFlightLimiter = new InFlightLimiter(caSettings.getAws().getMaxInFlightRequests());
+
+        Gauge.builder("ca.s3.requests.inflight", inFlightLimiter, InFlightLimiter::getInFlight)
+                .description("Number of S3 requests currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("ca.s3.requests.pending", inFlightLimiter, InFlightLimiter::getPending)
+                .description("Number of S3 requests waiting for the in-flight limit")
+                .register(meterRegistry);
     }
 
-    /**
-     * Upload the provided KeyStore to the S3 Bucket
-     * @param keyStore The KeyStore to save
-     * @param keyStoreInfo The KeyStore metadata
-     */
-    public void saveKeyStore(KeyStore keyStore, KeyStoreInfo keyStoreInfo) {
+    @Override
+    public CompletableFuture<Void> save(UUID keyStoreId, byte[] keyStoreBytes) {
         PutObjectRequest putOb = PutObjectRequest.builder()
                 .bucket(caSettings.getAws().getS3Bucket())
-                .key(keyStoreInfo.getKeyStoreId().toString())
+                .key(keyStoreId.toString())
                 .build();
 
-        s3Client.putObject(putOb, RequestBody.fromBytes(getKeyStoreBytes(keyStore, keyStoreInfo.getPass())));
+        return inFlightLimiter.submit(() -> s3Client.putObject(putOb, AsyncRequestBody.fromBytes(keyStoreBytes)))
+                .thenApply(response -> null);
     }
 
-    /**
-     * Convenience method to fetch a KeyStore using the KeyStoreInfo entity
-     * @param keyStoreInfo The metadata of the KeyStore to retrieve
-     * @return The KeyStore
-     */
-    public KeyStore fetchKeyStore(KeyStoreInfo keyStoreInfo) {
-        return fetchKeyStore(keyStoreInfo.keyStoreId, keyStoreInfo.getPass());
-    }
+    @Override
+    public CompletableFuture<byte[]> fetch(UUID keyStoreId) {
+        GetObjectRequest getOb = GetObjectRequest
+                .builder()
+                .key(keyStoreId.toString())
+                .bucket(caSettings.getAws().getS3Bucket())
+                .build();
 
-    /**
-     * Retrieves a KeyStore from the S3 Bucket
-     * @param keyStoreId The ID of the KeyStore to retrieve
-     * @param pass The password of the KeyStore
-     * @return The KeyStore
-     */
-    public KeyStore fetchKeyStore(UUID keyStoreId, String pass) {
-        try (InputStream is = new ByteArrayInputStream(fetchKeyStoreAsBytes(keyStoreId))) {
-            KeyStore keyStore = KeyStore.getInstance("PKCS12");
-            keyStore.load(is, pass.toCharArray());
-
-            return keyStore;
-        } catch (Exception e) {
-            throw new CaException(e.getMessage(), e);
-        }
+        // The response buffer is not shared, so it can be handed out without a copy
+        return inFlightLimiter.submit(() -> s3Client.getObject(getOb, AsyncResponseTransformer.toBytes()))
+                .thenApply(ResponseBytes::asByteArrayUnsafe);
     }
 
     /**
-     * Fetch the requested KeyStore as a byte array
-     * @param keyStoreId The ID of the KeyStore to retrieve
-     * @return The KeyStore represented as a byte array
+     * The stream is handed out as soon as the response headers arrive, and the body is read from the connection as the
+     * stream is consumed. The request only counts towards the in-flight limit until the headers arrive
      */
-    public byte[] fetchKeyStoreAsBytes(UUID keyStoreId) {
+    @Override
+    public CompletableFuture<InputStream> openStream(UUID keyStoreId) {
         GetObjectRequest getOb = GetObjectRequest
                 .builder()
                 .key(keyStoreId.toString())
                 .bucket(caSettings.getAws().getS3Bucket())
                 .build();
 
-        return s3Client.getObjectAsBytes(getOb).asByteArray();
+        return inFlightLimiter.submit(() -> s3Client.getObject(getOb, AsyncResponseTransformer.toBlockingInputStream()))
+                .thenApply(InputStream.class::cast);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(UUID keyStoreId) {
+        HeadObjectRequest headOb = HeadObjectRequest.builder()
+                .bucket(caSettings.getAws().getS3Bucket())
+                .key(keyStoreId.toString())
+                .build();
+
+        return inFlightLimiter.submit(() -> s3Client.headObject(headOb))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return true;
+                    }
+
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof NoSuchKeyException) {
+                        return false;
+                    }
+                    throw new CompletionException(cause);
+                });
     }
 
     /**
-     * Delete the designated KeyStore from the S3 Bucket
-     * @param keyStoreId The ID of the KeyStore to delete
+     * Lists one ListObjectsV2 page at a time, at most 1000 keys per page. Keys that are not KeyStore IDs are skipped,
+     * and further pages are requested until at least one ID is found or the listing is exhausted
      */
-    public void deleteKeyStore(UUID keyStoreId) {
-        ObjectIdentifier objectId = ObjectIdentifier.builder()
+    @Override
+    public CompletableFuture<List<UUID>> listIds(String prefix, UUID startAfter, int limit) {
+        return listIds(prefix, startAfter == null ? null : startAfter.toString(), limit);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(UUID keyStoreId) {
+        DeleteObjectRequest deleteOb = DeleteObjectRequest.builder()
+                .bucket(caSettings.getAws().getS3Bucket())
                 .key(keyStoreId.toString())
                 .build();
 
-        Delete del = Delete.builder()
-                .objects(Collections.singleton(objectId))
-                .build();
+        return inFlightLimiter.submit(() -> s3Client.deleteObject(deleteOb))
+                .thenApply(response -> null);
+    }
+
+    /**
+     * Delete the KeyStores using one DeleteObjects request per 1000 keys, the most a single request accepts
+     */
+    @Override
+    public CompletableFuture<Void> deleteAll(Collection<UUID> keyStoreIds) {
+        List<ObjectIdentifier> objectIds = keyStoreIds.stream()
+                .map(keyStoreId -> ObjectIdentifier.builder().key(keyStoreId.toString()).build())
+                .toList();
+
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+        for (int offset = 0; offset < objectIds.size(); offset += MAX_KEYS_PER_DELETE) {
+            List<ObjectIdentifier> batch =
+                    objectIds.subList(offset, Math.min(offset + MAX_KEYS_PER_DELETE, objectIds.size()));
 
-        try {
             DeleteObjectsRequest multiObjectDeleteRequest = DeleteObjectsRequest.builder()
                     .bucket(caSettings.getAws().getS3Bucket())
-                    .delete(del)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
                     .build();
 
-            s3Client.deleteObjects(multiObjectDeleteRequest);
-        } catch (S3Exception e) {
-            throw new CaException(e.getMessage(), e);
+            requests.add(inFlightLimiter.submit(() -> s3Client.deleteObjects(multiObjectDeleteRequest))
+                    .thenAccept(response -> {
+                        // A DeleteObjects request succeeds as a whole even when individual keys fail
+                        if (response.hasErrors() && !response.errors().isEmpty()) {
+                            S3Error error = response.errors().get(0);
+                            throw new CaException("Failed to delete " + response.errors().size()
+                                    + " KeyStores, first failure " + error.key() + ": " + error.message());
+                        }
+                    }));
         }
+
+        return CompletableFuture.allOf(requests.toArray(CompletableFuture<?>[]::new));
     }
 
-    /**
-     * Convert the provided KeyStore object to a byte array representation
-     * @param keyStore The KeyStore to convert
-     * @param pass The KeyStore password
-     * @return The KeyStore represented as a byte array
-     */
-    private byte[] getKeyStoreBytes(KeyStore keyStore, String pass) {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            keyStore.store(baos, pass.toCharArray());
+    private CompletableFuture<List<UUID>> listIds(String prefix, String startAfter, int limit) {
+        ListObjectsV2Request listOb = ListObjectsV2Request.builder()
+                .bucket(caSettings.getAws().getS3Bucket())
+                .prefix(prefix)
+                .startAfter(startAfter)
+                .maxKeys(Math.min(limit, MAX_KEYS_PER_LIST))
+                .build();
 
-            byte[] bytes = baos.toByteArray();
-            baos.close();
+        return inFlightLimiter.submit(() -> s3Client.listObjectsV2(listOb))
+                .thenCompose(response -> {
+                    List<UUID> keyStoreIds = response.contents().stream()
+                            .map(S3Object::key)
+                            .map(S3Service::toKeyStoreId)
+                            .filter(Objects::nonNull)
+                            .toList();
+
+                    if (!keyStoreIds.isEmpty() || !Boolean.TRUE.equals(response.isTruncated())
+                            || response.contents().isEmpty()) {
+                        return CompletableFuture.completedFuture(keyStoreIds);
+                    }
+
+                    // Only unrelated objects on this page, carry on after the last of them
+                    return listIds(prefix, response.contents().get(response.contents().size() - 1).key(), limit);
+                });
+    }
 
-            return bytes;
-        } catch (Exception e) {
-            throw new CaException(e.getMessage(), e);
+    private static UUID toKeyStoreId(String key) {
+        try {
+            UUID keyStoreId = UUID.fromString(key);
+            return keyStoreId.toString().equals(key) ? keyStoreId : null;
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 
-    private S3Client buildS3Client() {
-        return S3Client.builder()
-                .region(Region.of(caSettings.getAws().getRegion()))
+    @Override
+    public void destroy() {
+        s3Client.close();
+    }
+
+    private S3AsyncClient buildS3Client() {
+        CaSettings.Aws aws = caSettings.getAws();
+
+        return S3AsyncClient.builder()
+                .region(Region.of(aws.getRegion()))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(aws.getMaxConcurrency())
+                        .maxPendingConnectionAcquires(aws.getMaxPendingConnectionAcquires())
+                        .connectionAcquisitionTimeout(aws.getConnectionAcquisitionTimeout()))
                 .build();
     }
 }
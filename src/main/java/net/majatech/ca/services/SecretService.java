@@ -4,6 +4,7 @@ import net.majatech.ca.config.CaSettings;
 import net.majatech.ca.data.entity.KeyStoreInfo;
 import net.majatech.ca.data.repo.KeyStoreInfoRepository;
 import net.majatech.ca.exceptions.CaException;
+import net.majatech.ca.utils.KeyStoreUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
@@ -19,19 +20,21 @@ import java.net.http.HttpResponse;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class SecretService {
 
     private final KeyStoreInfoRepository keyStoreInfoRepository;
     private final CaSettings caSettings;
-    private final S3Service s3Service;
+    private final KeyStoreCache keyStoreCache;
 
     @Autowired
-    public SecretService(KeyStoreInfoRepository keyStoreInfoRepository, CaSettings caSettings, S3Service s3Service) {
+    public SecretService(KeyStoreInfoRepository keyStoreInfoRepository, CaSettings caSettings,
+                         KeyStoreCache keyStoreCache) {
         this.keyStoreInfoRepository = keyStoreInfoRepository;
         this.caSettings = caSettings;
-        this.s3Service = s3Service;
+        this.keyStoreCache = keyStoreCache;
     }
 
     /**
@@ -63,12 +66,26 @@ public class SecretService {
     }
 
     /**
-     * Load the desired KeyStore from the S3 Bucket
-     * @param keyStoreInfo Metadata corresponding to KeyStore stored in the S3 Bucket
+     * Load the desired KeyStore through the KeyStore cache, which falls back to the blob store or the outbox
+     * @param keyStoreInfo Metadata corresponding to the stored KeyStore
      * @return The KeyStore
+     * @throws CaException If the KeyStore could not be fetched
      */
     private KeyStore loadKeyStore(KeyStoreInfo keyStoreInfo) {
-        return s3Service.fetchKeyStore(keyStoreInfo);
+        byte[] keyStoreBytes;
+        try {
+            keyStoreBytes = keyStoreCache.get(keyStoreInfo.getKeyStoreId()).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CaException caException) {
+                throw caException;
+            }
+
+            throw new CaException("Failed to fetch KeyStore " + keyStoreInfo.getKeyStoreId(),
+                    cause instanceof Exception exception ? exception : e);
+        }
+
+        return KeyStoreUtils.fromBytes(keyStoreBytes, keyStoreInfo.getPass());
     }
 
     /**
@@ -0,0 +1,120 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.authority.signing.SerialNumberSource;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.data.entity.SerialCounter;
+import net.majatech.ca.data.repo.SerialCounterRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * Allocates certificate serial numbers that are unique across every node sharing the database
+ * <br><br>
+ * Each node reserves a block of counter values from the database in its own transaction, and then hands out serials
+ * from that block without going back to the database. Values of a block that are never used, for example because the
+ * node was restarted, are simply skipped
+ * <br><br>
+ * Each serial is made up of the 63 bit counter value followed by 64 bits from a single shared DRBG, which keeps the
+ * serials unpredictable while the counter guarantees that no two serials collide. The result is always positive and
+ * no more than 16 octets long, well within the 20 octet limit of RFC 5280
+ */
+@Service
+public class SerialNumberService implements SerialNumberSource {
+    private static final Logger log = LoggerFactory.getLogger(SerialNumberService.class);
+
+    static final String COUNTER_NAME = "certificate";
+    private static final int RANDOM_BITS = 64;
+    private static final int MAX_RESERVATION_ATTEMPTS = 3;
+
+    private final SerialCounterRepository serialCounterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockSize;
+    private final SecureRandom random;
+
+    // The current block is [next, end), guarded by this
+    private long next;
+    private long end;
+
+    @Autowired
+    public SerialNumberService(CaSettings caSettings, SerialCounterRepository serialCounterRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.serialCounterRepository = serialCounterRepository;
+        this.blockSize = Math.max(1, caSettings.getSerial().getBlockSize());
+        this.random = newDrbg();
+
+        // Reserve blocks independently of any transaction the caller is in, so that a rolled back issuance can not
+        // hand the same block out twice
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public BigInteger nextSerialNumber() {
+        long counter = nextCounterValue();
+
+        return BigInteger.valueOf(counter).shiftLeft(RANDOM_BITS).or(new BigInteger(RANDOM_BITS, random));
+    }
+
+    private synchronized long nextCounterValue() {
+        if (next >= end) {
+            next = reserveBlock();
+            end = next + blockSize;
+        }
+
+        return next++;
+    }
+
+    /**
+     * Advance the shared counter by one block while holding a row lock
+     * @return The first counter value of the reserved block
+     */
+    private long reserveBlock() {
+        for (int attempt = 1; attempt <= MAX_RESERVATION_ATTEMPTS; attempt++) {
+            try {
+                Long start = transactionTemplate.execute(status -> {
+                    SerialCounter serialCounter = serialCounterRepository.findForUpdate(COUNTER_NAME)
+                            .orElseGet(() -> serialCounterRepository.saveAndFlush(SerialCounter.named(COUNTER_NAME)));
+
+                    long first = serialCounter.getNextValue();
+                    serialCounter.setNextValue(Math.addExact(first, blockSize));
+
+                    return first;
+                });
+
+                log.debug("Reserved serial number block [{}, {})", start, start + blockSize);
+                return start;
+            } catch (DataIntegrityViolationException e) {
+                // Another node created the counter row at the same time, it can be locked on the next attempt
+                log.debug("Serial counter was created concurrently, retrying reservation", e);
+            }
+        }
+
+        throw new CaException("Unable to reserve a block of serial numbers");
+    }
+
+    private static SecureRandom newDrbg() {
+        byte[] personalization = ("ca-serial-" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+}
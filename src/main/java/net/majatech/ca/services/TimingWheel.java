@@ -0,0 +1,182 @@
+package net.majatech.ca.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel of keys that fall due at a given instant
+ * <br><br>
+ * The lowest wheel has one bucket per tick. Each higher wheel has buckets as wide as the whole wheel below it, and is
+ * only created once a deadline beyond every existing wheel is scheduled. Scheduling and cancelling a key are
+ * constant time, and advancing the clock by a tick only visits the bucket that has passed, plus a bucket of each
+ * higher wheel whose tick has just started, whose keys are moved down a wheel
+ * <br><br>
+ * A key is returned by {@link #advance(Instant)} once its whole tick has passed, so at most one tick after its
+ * deadline and never before it. Not thread safe, callers must synchronize
+ * @param <K> The type of the keys, each of which can be scheduled once at a time
+ */
+public class TimingWheel<K> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Wheel> wheels = new ArrayList<>();
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final List<K> due = new ArrayList<>();
+
+    /**
+     * @param tick The width of a bucket of the lowest wheel
+     * @param wheelSize The number of buckets of every wheel
+     * @param now The current time, from which the clock is advanced
+     */
+    public TimingWheel(Duration tick, int wheelSize, Instant now) {
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.wheelSize = Math.max(2, wheelSize);
+
+        wheels.add(new Wheel(tickMillis, Math.floorDiv(now.toEpochMilli(), tickMillis) * tickMillis));
+    }
+
+    /**
+     * Schedule the key, replacing its earlier schedule if it has one. A deadline that has already passed is returned
+     * by the next advance
+     * @param key The key to schedule
+     * @param deadline The instant the key falls due
+     */
+    public void schedule(K key, Instant deadline) {
+        cancel(key);
+
+        Entry<K> entry = new Entry<>(key, deadline.toEpochMilli());
+        entries.put(key, entry);
+        place(entry);
+    }
+
+    /**
+     * @param key The key to cancel
+     * @return Whether the key was scheduled
+     */
+    public boolean cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+
+        if (entry.bucket != null) {
+            entry.bucket.remove(entry);
+        } else {
+            due.remove(key);
+        }
+
+        return true;
+    }
+
+    /**
+     * Advance the clock to the given time, one tick at a time
+     * @param now The current time. Moving the clock backwards has no effect
+     * @return Every key whose tick has passed, in order of their ticks
+     */
+    public List<K> advance(Instant now) {
+        long nowMillis = now.toEpochMilli();
+        Wheel lowest = wheels.get(0);
+
+        while (lowest.currentTime + tickMillis <= nowMillis) {
+            // The current tick has passed as a whole, so every key in its bucket is due
+            collect(lowest.bucketOf(lowest.currentTime));
+            lowest.currentTime += tickMillis;
+
+            // Once a tick of a higher wheel starts, its keys are moved down to the wheels below
+            for (int level = 1; level < wheels.size(); level++) {
+                Wheel wheel = wheels.get(level);
+                long currentTime = Math.floorDiv(lowest.currentTime, wheel.tickMillis) * wheel.tickMillis;
+                if (currentTime == wheel.currentTime) {
+                    break;
+                }
+                wheel.currentTime = currentTime;
+
+                Set<Entry<K>> bucket = wheel.bucketOf(currentTime);
+                List<Entry<K>> cascaded = new ArrayList<>(bucket);
+                bucket.clear();
+                cascaded.forEach(this::place);
+            }
+        }
+
+        List<K> expired = new ArrayList<>(due);
+        due.clear();
+        expired.forEach(entries::remove);
+
+        return expired;
+    }
+
+    /**
+     * @return The number of keys that are scheduled, including those due but not yet returned
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void place(Entry<K> entry) {
+        Wheel lowest = wheels.get(0);
+        if (entry.deadline < lowest.currentTime) {
+            entry.bucket = null;
+            due.add(entry.key);
+            return;
+        }
+
+        for (int level = 0; ; level++) {
+            if (level == wheels.size()) {
+                Wheel below = wheels.get(level - 1);
+                long tick = below.tickMillis * wheelSize;
+                wheels.add(new Wheel(tick, Math.floorDiv(lowest.currentTime, tick) * tick));
+            }
+
+            Wheel wheel = wheels.get(level);
+            if (entry.deadline < wheel.currentTime + wheel.tickMillis * wheelSize) {
+                entry.bucket = wheel.bucketOf(entry.deadline);
+                entry.bucket.add(entry);
+                return;
+            }
+        }
+    }
+
+    private void collect(Set<Entry<K>> bucket) {
+        bucket.forEach(entry -> {
+            entry.bucket = null;
+            due.add(entry.key);
+        });
+        bucket.clear();
+    }
+
+    private class Wheel {
+        private final long tickMillis;
+        private final List<Set<Entry<K>>> buckets = new ArrayList<>(wheelSize);
+        private long currentTime;
+
+        private Wheel(long tickMillis, long currentTime) {
+            this.tickMillis = tickMillis;
+            this.currentTime = currentTime;
+
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new LinkedHashSet<>());
+            }
+        }
+
+        private Set<Entry<K>> bucketOf(long time) {
+            return buckets.get((int) Math.floorMod(Math.floorDiv(time, tickMillis), (long) wheelSize));
+        }
+    }
+
+    private static class Entry<K> {
+        private final K key;
+        private final long deadline;
+        private Set<Entry<K>> bucket;
+
+        private Entry(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package net.majatech.ca.services;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index of the trigrams of a text per key, for finding the keys whose text is similar to a query
+ * <br><br>
+ * Text is split into words of letters and digits in lower case. Each word is padded with two spaces in front and one
+ * behind, and every run of three characters is a trigram, so that "pay" has the trigrams "  p", " pa", "pay" and
+ * "ay ". The similarity of two texts is the number of trigrams they share divided by the number of distinct trigrams
+ * of both, between 0 and 1
+ * <br><br>
+ * A search only visits the keys that share at least one trigram with the query, by looking up the keys of each
+ * trigram, rather than comparing the query to every key. Safe for concurrent use, as long as the same key is not put
+ * and removed concurrently. Every change to the keys of a trigram is made within an atomic update of that trigram
+ * @param <K> The type of the keys, each of which has one text at a time
+ */
+public class TrigramIndex<K> {
+
+    private final Map<String, Set<K>> keysByTrigram = new ConcurrentHashMap<>();
+    private final Map<K, Set<String>> trigramsByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Index the text of the key, replacing its earlier text if it has one
+     * @param key The key to index
+     * @param text The text of the key. A key with null or blank text is not indexed
+     */
+    public void put(K key, String text) {
+        remove(key);
+
+        Set<String> trigrams = trigrams(text);
+        if (trigrams.isEmpty()) {
+            return;
+        }
+
+        trigramsByKey.put(key, trigrams);
+        // Added within the atomic update of the trigram, so that a concurrent remove of another key can not unmap the
+        // set in between, leaving the key in a set that is no longer indexed
+        trigrams.forEach(trigram -> keysByTrigram.compute(trigram, (t, keys) -> {
+            Set<K> updated = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            updated.add(key);
+            return updated;
+        }));
+    }
+
+    /**
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        Set<String> trigrams = trigramsByKey.remove(key);
+        if (trigrams == null) {
+            return;
+        }
+
+        // Trigrams left without keys are dropped, so the index does not grow with every text it has ever held
+        trigrams.forEach(trigram -> keysByTrigram.computeIfPresent(trigram, (t, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        }));
+    }
+
+    /**
+     * Find the keys whose text is at least as similar to the query as the threshold
+     * @param query The text to compare to
+     * @param threshold The lowest similarity of a match, above 0 and at most 1
+     * @return The similarity of each matching key
+     */
+    public Map<K, Double> search(String query, double threshold) {
+        Set<String> queryTrigrams = trigrams(query);
+        if (queryTrigrams.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<K, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<K> keys = keysByTrigram.get(trigram);
+            if (keys != null) {
+                keys.forEach(key -> shared.merge(key, 1, Integer::sum));
+            }
+        }
+
+        Map<K, Double> matches = new HashMap<>();
+        shared.forEach((key, count) -> {
+            Set<String> trigrams = trigramsByKey.get(key);
+            if (trigrams == null) {
+                return;
+            }
+
+            double similarity = (double) count / (queryTrigrams.size() + trigrams.size() - count);
+            if (similarity >= threshold) {
+                matches.put(key, similarity);
+            }
+        });
+
+        return matches;
+    }
+
+    /**
+     * @return The number of keys that are indexed
+     */
+    public int size() {
+        return trigramsByKey.size();
+    }
+
+    /**
+     * @param text The text to split
+     * @return The distinct trigrams of the words of the text, empty if it has none
+     */
+    static Set<String> trigrams(String text) {
+        if (text == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> trigrams = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+
+        return trigrams;
+    }
+}
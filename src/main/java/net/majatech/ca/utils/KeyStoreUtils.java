@@ -0,0 +1,48 @@
+package net.majatech.ca.utils;
+
+import net.majatech.ca.exceptions.CaException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyStore;
+
+/**
+ * Utility class to aid in KeyStore serialization
+ */
+public final class KeyStoreUtils {
+
+    private KeyStoreUtils() {}
+
+    /**
+     * Convert the provided KeyStore object to a byte array representation
+     * @param keyStore The KeyStore to convert
+     * @param pass The KeyStore password
+     * @return The KeyStore represented as a byte array
+     */
+    public static byte[] toBytes(KeyStore keyStore, String pass) {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            keyStore.store(baos, pass.toCharArray());
+
+            return baos.toByteArray();
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load a PKCS12 KeyStore from its byte array representation
+     * @param keyStoreBytes The PKCS12 encoded KeyStore
+     * @param pass The KeyStore password
+     * @return The loaded KeyStore
+     */
+    public static KeyStore fromBytes(byte[] keyStoreBytes, String pass) {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(new ByteArrayInputStream(keyStoreBytes), pass.toCharArray());
+
+            return keyStore;
+        } catch (Exception e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.majatech.ca.utils;
 
+import net.majatech.ca.authority.keys.KeyAlgorithm;
 import net.majatech.ca.exceptions.CaException;
 
 import java.security.*;
@@ -27,4 +28,20 @@ public final class KeyUtils {
             throw new CaException(e.getMessage(), e);
         }
     }
+
+    public static KeyPair generateKeyPair(KeyAlgorithm keyAlgorithm) {
+        try {
+            final KeyPairGenerator gen = KeyPairGenerator.getInstance(keyAlgorithm.getAlgorithm(), "BC");
+
+            if (keyAlgorithm.getParameterSpec() != null) {
+                gen.initialize(keyAlgorithm.getParameterSpec());
+            } else if (keyAlgorithm.getKeySize() > 0) {
+                gen.initialize(keyAlgorithm.getKeySize());
+            }
+
+            return gen.generateKeyPair();
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
+            throw new CaException(e.getMessage(), e);
+        }
+    }
 }
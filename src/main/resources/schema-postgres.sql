@@ -0,0 +1,94 @@
+-- Schema of the CA database on PostgreSQL, run on every startup as spring.sql.init.platform is postgres. Hibernate
+-- does not manage the schema outside of the embedded test database, so every table, column and index the entities
+-- rely on is created here. Each statement is idempotent, so that existing databases are upgraded in place
+
+create table if not exists keystore_info (
+    keystore_id uuid not null,
+    pass varchar(255) not null,
+    alias varchar(255) not null,
+    subject_dn varchar(255) not null,
+    issuer_dn varchar(255) not null,
+    expiry timestamp(6) with time zone not null,
+    not_before timestamp(6) with time zone not null,
+    primary key (keystore_id)
+);
+
+-- Serial number counters, each advanced by a whole block of serials at a time by SerialNumberService
+create table if not exists serial_counter (
+    counter_name varchar(255) not null,
+    next_value bigint not null,
+    primary key (counter_name)
+);
+
+-- KeyStores committed but not yet written to the blob store, drained by KeyStoreOutboxService
+create table if not exists keystore_upload_outbox (
+    keystore_id uuid not null,
+    content bytea not null,
+    attempts integer not null,
+    next_attempt_at timestamp(6) with time zone not null,
+    created_at timestamp(6) with time zone not null,
+    last_error varchar(1000),
+    primary key (keystore_id)
+);
+
+create index if not exists idx_keystore_upload_outbox_next_attempt on keystore_upload_outbox (next_attempt_at);
+
+-- Deleted KeyStores are tombstoned, hiding them from every query on keystore_info, until KeyStoreGarbageCollector
+-- removes them
+alter table keystore_info add column if not exists deleted_at timestamp(6) with time zone;
+
+create index if not exists idx_keystore_info_deleted_at on keystore_info (deleted_at);
+
+-- Expiry range scans of deleting expired KeyStores, exporting and renewing, in ID order within an expiry
+create index if not exists idx_keystore_info_expiry on keystore_info (expiry, keystore_id);
+
+-- Progress of each bulk renewal by KeyStoreRenewalService, so that an interrupted run resumes after its checkpoint
+create table if not exists keystore_renewal_run (
+    run_id uuid not null,
+    renew_before timestamp(6) with time zone not null,
+    checkpoint uuid,
+    status varchar(255) not null,
+    renewed integer not null,
+    failed integer not null,
+    started_at timestamp(6) with time zone not null,
+    updated_at timestamp(6) with time zone not null,
+    primary key (run_id)
+);
+
+create index if not exists idx_keystore_renewal_run_status on keystore_renewal_run (status);
+
+-- The node holding the lease of a running renewal, renewed by each committed chunk. At most one run is ever running
+alter table keystore_renewal_run add column if not exists lease_owner uuid;
+
+create unique index if not exists uq_keystore_renewal_run_running on keystore_renewal_run (status)
+    where status = 'RUNNING';
+
+-- Subject DN attributes of KeyStoreSearchService, trimmed and in lower case, backfilled on startup for existing rows
+alter table keystore_info add column if not exists subject_cn varchar(255);
+alter table keystore_info add column if not exists subject_l varchar(255);
+alter table keystore_info add column if not exists subject_st varchar(255);
+alter table keystore_info add column if not exists subject_c varchar(255);
+alter table keystore_info add column if not exists subject_o varchar(255);
+alter table keystore_info add column if not exists subject_ou varchar(255);
+
+-- Exact and prefix matches. text_pattern_ops lets a LIKE 'value%' use the index under any database collation
+create index if not exists idx_keystore_info_subject_cn on keystore_info (subject_cn text_pattern_ops, keystore_id);
+create index if not exists idx_keystore_info_subject_l on keystore_info (subject_l text_pattern_ops, keystore_id);
+create index if not exists idx_keystore_info_subject_st on keystore_info (subject_st text_pattern_ops, keystore_id);
+create index if not exists idx_keystore_info_subject_c on keystore_info (subject_c text_pattern_ops, keystore_id);
+create index if not exists idx_keystore_info_subject_o on keystore_info (subject_o text_pattern_ops, keystore_id);
+create index if not exists idx_keystore_info_subject_ou on keystore_info (subject_ou text_pattern_ops, keystore_id);
+
+-- Trigram indexes for substring and similarity matches. The Subject DN index serves the LIKE '%text%' of
+-- subjectDnContains, and the attribute indexes the pg_trgm similarity operators on each attribute. Creating the
+-- extension needs the CREATE privilege on the database, or the extension to be installed beforehand
+create extension if not exists pg_trgm;
+
+create index if not exists idx_keystore_info_subject_dn_trgm
+    on keystore_info using gin (lower(subject_dn) gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_cn_trgm on keystore_info using gin (subject_cn gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_l_trgm on keystore_info using gin (subject_l gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_st_trgm on keystore_info using gin (subject_st gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_c_trgm on keystore_info using gin (subject_c gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_o_trgm on keystore_info using gin (subject_o gin_trgm_ops);
+create index if not exists idx_keystore_info_subject_ou_trgm on keystore_info using gin (subject_ou gin_trgm_ops);
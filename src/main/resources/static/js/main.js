@@ -69,4 +69,169 @@ function hidePreviousResult() {
     anim = document.getElementById('failure-anim')
     anim.style.display = 'none'
     anim.stop()
-}
\ No newline at end of file
+}
+
+// Client Certificate table, loaded a page at a time as it is scrolled
+const KEYSTORE_PAGE_SIZE = 50
+
+const keyStoreTable = {
+    sort: 'EXPIRY',
+    direction: 'ASC',
+    nextCursor: null,
+    loading: false,
+    exhausted: false,
+    failed: false,
+    // Incremented on every sort, so that a page requested under an earlier sort is dropped when it arrives
+    generation: 0
+}
+
+document.addEventListener('DOMContentLoaded', () => {
+    let container = document.getElementById('index-cert-table')
+    container.addEventListener('scroll', () => {
+        // Load the next page shortly before the last row comes into view
+        if (container.scrollTop + container.clientHeight >= container.scrollHeight - 100) {
+            loadKeyStorePage()
+        }
+    })
+
+    loadKeyStorePage()
+})
+
+function sortKeyStores(header) {
+    let sort = header.dataset.sort
+
+    if (keyStoreTable.sort === sort) {
+        keyStoreTable.direction = keyStoreTable.direction === 'ASC' ? 'DESC' : 'ASC'
+    } else {
+        keyStoreTable.sort = sort
+        keyStoreTable.direction = 'ASC'
+    }
+
+    // A cursor is only valid for the sort it was issued for, so start again from the first page. A page still in
+    // flight belongs to the previous sort and is dropped, rather than blocking the first page of this one
+    keyStoreTable.generation++
+    keyStoreTable.nextCursor = null
+    keyStoreTable.loading = false
+    keyStoreTable.exhausted = false
+    keyStoreTable.failed = false
+    document.getElementById('keystore-rows').replaceChildren()
+
+    loadKeyStorePage()
+}
+
+async function loadKeyStorePage() {
+    if (keyStoreTable.loading || keyStoreTable.exhausted || keyStoreTable.failed) {
+        return
+    }
+    keyStoreTable.loading = true
+    let generation = keyStoreTable.generation
+
+    let params = new URLSearchParams({
+        sort: keyStoreTable.sort,
+        direction: keyStoreTable.direction,
+        size: KEYSTORE_PAGE_SIZE
+    })
+    if (keyStoreTable.nextCursor != null) {
+        params.append('cursor', keyStoreTable.nextCursor)
+    }
+
+    let page = await fetch('/api/keystore?' + params)
+        .then(response => {
+            if (response.status !== 200) {
+                throw new Error('Request failed!')
+            }
+
+            return response.json()
+        }).catch((err) => {
+            console.log(err)
+            return null
+        })
+
+    // Issued under an earlier sort, its rows and cursor no longer apply
+    if (generation !== keyStoreTable.generation) {
+        return
+    }
+    keyStoreTable.loading = false
+
+    // Stop rather than request the same page again on every scroll, until the table is sorted again
+    if (page == null) {
+        keyStoreTable.failed = true
+        return
+    }
+
+    let rows = document.getElementById('keystore-rows')
+    page.keyStores.forEach(keyStore => rows.appendChild(createKeyStoreRow(keyStore)))
+
+    keyStoreTable.nextCursor = page.nextCursor
+    keyStoreTable.exhausted = page.nextCursor == null
+
+    // Keep loading until the table can be scrolled, or there is nothing left to load
+    let container = document.getElementById('index-cert-table')
+    if (!keyStoreTable.exhausted && container.scrollHeight <= container.clientHeight) {
+        loadKeyStorePage()
+    }
+}
+
+function createKeyStoreRow(keyStore) {
+    let row = document.createElement('tr')
+    row.className = 'align-middle'
+
+    let radio = document.createElement('input')
+    radio.type = 'radio'
+    radio.name = 'client-cert-radio'
+    radio.value = keyStore.keyStoreId
+    row.appendChild(createCell(radio))
+
+    row.appendChild(createTextCell(keyStore.subjectDn))
+    row.appendChild(createTextCell(keyStore.issuerDn))
+    row.appendChild(createTextCell(formatExpiry(keyStore.expiry)))
+
+    let download = document.createElement('a')
+    download.href = '/api/keystore/download/' + keyStore.keyStoreId
+    download.download = 'file'
+    let downloadImage = document.createElement('img')
+    downloadImage.src = '/images/download.png'
+    downloadImage.alt = 'Download'
+    downloadImage.className = 'img-download'
+    download.appendChild(downloadImage)
+    row.appendChild(createCell(download))
+
+    let deleteForm = document.createElement('form')
+    deleteForm.action = '/api/keystore/delete/' + keyStore.keyStoreId
+    deleteForm.method = 'post'
+
+    let csrf = document.createElement('input')
+    csrf.type = 'hidden'
+    csrf.name = document.querySelector('meta[name="_csrf_parameter"]').content
+    csrf.value = document.querySelector('meta[name="_csrf"]').content
+    deleteForm.appendChild(csrf)
+
+    let deleteButton = document.createElement('input')
+    deleteButton.type = 'image'
+    deleteButton.src = '/images/bin.png'
+    deleteButton.alt = 'Delete'
+    deleteButton.className = 'img-delete'
+    deleteForm.appendChild(deleteButton)
+    row.appendChild(createCell(deleteForm))
+
+    return row
+}
+
+function createCell(child) {
+    let cell = document.createElement('td')
+    cell.appendChild(child)
+    return cell
+}
+
+function createTextCell(text) {
+    let cell = document.createElement('td')
+    cell.textContent = text
+    return cell
+}
+
+// Formatted as dd-MMM-yyyy, matching the rest of the UI
+function formatExpiry(expiry) {
+    return new Date(expiry)
+        .toLocaleDateString('en-GB', { day: '2-digit', month: 'short', year: 'numeric' })
+        .replaceAll(' ', '-')
+}
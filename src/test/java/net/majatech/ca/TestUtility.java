@@ -1,17 +1,36 @@
 package net.majatech.ca;
 
+import net.majatech.ca.authority.certificate.CertificateHolder;
 import net.majatech.ca.authority.certificate.DistinguishedName;
 import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.IssuerInfo;
+import net.majatech.ca.authority.signing.IssuerRegistry;
 import net.majatech.ca.controller.api.model.CsrForm;
-import net.majatech.ca.services.S3Service;
+import net.majatech.ca.services.KeyStoreBlobStore;
+import net.majatech.ca.services.KeyStoreGarbageCollector;
+import net.majatech.ca.services.KeyStoreOutboxService;
+import net.majatech.ca.services.KeyStoreService;
+import net.majatech.ca.utils.KeyStoreUtils;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.math.BigInteger;
+import java.security.KeyPair;
 import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -19,11 +38,21 @@ import static org.assertj.core.api.Assertions.assertThat;
 @Component
 public class TestUtility {
 
-    private final S3Service s3Service;
+    private final KeyStoreBlobStore keyStoreBlobStore;
+    private final KeyStoreService keyStoreService;
+    private final KeyStoreOutboxService keyStoreOutboxService;
+    private final KeyStoreGarbageCollector keyStoreGarbageCollector;
+    private final IssuerRegistry issuerRegistry;
 
     @Autowired
-    public TestUtility(S3Service s3Service) {
-        this.s3Service = s3Service;
+    public TestUtility(KeyStoreBlobStore keyStoreBlobStore, KeyStoreService keyStoreService,
+                       KeyStoreOutboxService keyStoreOutboxService, KeyStoreGarbageCollector keyStoreGarbageCollector,
+                       IssuerRegistry issuerRegistry) {
+        this.keyStoreBlobStore = keyStoreBlobStore;
+        this.keyStoreService = keyStoreService;
+        this.keyStoreOutboxService = keyStoreOutboxService;
+        this.keyStoreGarbageCollector = keyStoreGarbageCollector;
+        this.issuerRegistry = issuerRegistry;
     }
 
     public CsrForm getDefaultTestCsrForm() {
@@ -56,12 +85,39 @@ public class TestUtility {
                 .build();
     }
 
+    /**
+     * Sign a certificate with the default issuer outside of the CertificateSigners, for subjects and extensions that
+     * the signers would not issue themselves, such as those of certificates issued by an earlier version of the CA
+     */
+    public CertificateHolder signWithDefaultIssuer(X500Name subject, KeyPair keyPair, Extension... extensions)
+            throws Exception {
+        IssuerInfo issuerInfo = issuerRegistry.getIssuer();
+
+        Instant notBefore = Instant.now();
+        X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(issuerInfo.getDistinguishedName(),
+                BigInteger.valueOf(notBefore.toEpochMilli()), Date.from(notBefore),
+                Date.from(notBefore.plus(Duration.ofDays(1))), subject,
+                SubjectPublicKeyInfo.getInstance(keyPair.getPublic().getEncoded()));
+        for (Extension extension : extensions) {
+            certBuilder.addExtension(extension);
+        }
+
+        ContentSigner signer = new JcaContentSignerBuilder(issuerInfo.getSignatureAlgorithm())
+                .build(issuerInfo.keyPair().getPrivate());
+        X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(certBuilder.build(signer));
+        return CertificateHolder.with(certificate, keyPair, issuerInfo);
+    }
+
     public KeyStore fetchSavedKeyStore(UUID keyStoreId, String pass) {
-        return s3Service.fetchKeyStore(keyStoreId, pass);
+        // Uploads happen in the background, so drain the outbox to make sure the KeyStore is in the blob store
+        keyStoreOutboxService.drain();
+
+        return KeyStoreUtils.fromBytes(keyStoreBlobStore.fetch(keyStoreId).join(), pass);
     }
 
     public void cleanUpKeyStoreFromS3Bucket(UUID keyStoreId) {
-        s3Service.deleteKeyStore(keyStoreId);
+        keyStoreService.deleteKeyStore(keyStoreId);
+        keyStoreGarbageCollector.collect();
     }
 
     public void assertDistinguishedNamesAreEqual(X500Name x500Name, DistinguishedName dn) {
@@ -54,6 +54,21 @@ public class DistinguishedNameTest {
         assertThat(dn.getOrganizationalUnit()).isNull();
     }
 
+    @Test
+    public void testSpecialCharactersAreKeptAsTheyAre() {
+        DistinguishedName dn = DistinguishedName.newBuilder()
+                .setCommonName("Smith, John + Co = \"1\"")
+                .setOrganization("Acme, Inc")
+                .setOrganizationalUnit("#Payments")
+                .setLocality("\\Leeds")
+                .build();
+
+        // Neither escaped by the string form of the name, nor read as hex or escaped when encoded
+        assertThat(DistinguishedName.fromX500Name(dn.toX500Name())).isEqualTo(dn);
+        assertThat(DistinguishedName.fromString("CN=Smith\\, John \\+ Co \\= 1,O=Acme\\, Inc").getOrganization())
+                .isEqualTo("Acme, Inc");
+    }
+
     @Test
     public void testEquals_NamesAreTheSame() {
         String cn = StringUtils.randomAlphanumeric(16);
@@ -0,0 +1,85 @@
+package net.majatech.ca.authority.certificate;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class Pkcs12EncoderTest {
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private Pkcs12Encoder pkcs12Encoder;
+
+    @Test
+    public void testEncodedKeyStoreCanBeLoadedForEveryProfile() throws Exception {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+
+        for (Pkcs12Encoder.Encryption encryption : Pkcs12Encoder.Encryption.values()) {
+            for (boolean encryptCertificates : new boolean[] {true, false}) {
+                // Every profile other than the configured one needs an encoder of its own
+                CaSettings caSettings = new CaSettings();
+                caSettings.getPkcs12().setEncryption(encryption);
+                caSettings.getPkcs12().setEncryptCertificates(encryptCertificates);
+                caSettings.getPkcs12().setIterationCount(2048);
+
+                byte[] encoded = new Pkcs12Encoder(caSettings).encode(certificateHolder, "testing", "test-alias");
+                assertKeyStoreMatches(encoded, certificateHolder);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamedEncodingMatchesLoadableKeyStore() throws Exception {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pkcs12Encoder.encode(certificateHolder, "testing", "test-alias", baos);
+
+        assertKeyStoreMatches(baos.toByteArray(), certificateHolder);
+    }
+
+    @Test
+    public void testKeyStoreWithoutPrivateKeyIsRejected() throws Exception {
+        CertificateHolder signed = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        CertificateHolder publicOnly = CertificateHolder.with(signed.getX509Certificate(),
+                new KeyPair(signed.getKeyPair().getPublic(), null), signed.getIssuerInfo());
+
+        assertThatThrownBy(() -> pkcs12Encoder.encode(publicOnly, "testing", "test-alias"))
+                .isInstanceOf(CaException.class);
+    }
+
+    private void assertKeyStoreMatches(byte[] encoded, CertificateHolder certificateHolder) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(new ByteArrayInputStream(encoded), "testing".toCharArray());
+
+        assertThat(keyStore.isKeyEntry("test-alias")).isTrue();
+
+        Key key = keyStore.getKey("test-alias", "testing".toCharArray());
+        assertThat(key.getEncoded()).isEqualTo(certificateHolder.getKeyPair().getPrivate().getEncoded());
+
+        Certificate[] chain = keyStore.getCertificateChain("test-alias");
+        assertThat(chain).hasSize(2);
+        assertThat(chain[0]).isEqualTo(certificateHolder.getX509Certificate());
+        assertThat(chain[1]).isEqualTo(certificateHolder.getIssuerInfo().rootCa());
+    }
+}
@@ -0,0 +1,108 @@
+package net.majatech.ca.authority.keys;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.majatech.ca.config.CaSettings;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class KeyPairPoolTest {
+
+    private static boolean providerAdded;
+
+    @BeforeAll
+    public static void registerProvider() {
+        // Registered by the SecurityConfig when the application starts, which this test does without
+        providerAdded = Security.getProvider("BC") == null && Security.addProvider(new BouncyCastleProvider()) != -1;
+    }
+
+    @AfterAll
+    public static void removeProvider() {
+        // Left as it was found, as KeyUtilsTest relies on the provider being absent
+        if (providerAdded) {
+            Security.removeProvider("BC");
+        }
+    }
+
+    @Test
+    public void testEmptyPoolFallsBackToInlineGeneration() {
+        CaSettings caSettings = new CaSettings();
+        caSettings.getKeyPool().setEnabled(false);
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KeyPairPool keyPairPool = new KeyPairPool(caSettings, meterRegistry);
+
+        KeyPair keyPair = keyPairPool.take();
+
+        assertThat(keyPair.getPublic().getAlgorithm()).isEqualTo("RSA");
+        assertThat(keyPairPool.size()).isZero();
+        assertThat(meterRegistry.get("ca.keypool.taken").tag("algorithm", "RSA_2048").tag("source", "inline")
+                .counter().count()).isEqualTo(1);
+
+        keyPairPool.destroy();
+    }
+
+    @Test
+    public void testPoolIsRefilledToHighWaterMark() {
+        CaSettings caSettings = new CaSettings();
+        caSettings.getKeyPool().setLowWaterMark(2);
+        caSettings.getKeyPool().setHighWaterMark(3);
+        caSettings.getKeyPool().setWorkers(2);
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KeyPairPool keyPairPool = new KeyPairPool(caSettings, meterRegistry);
+        keyPairPool.prefill();
+
+        awaitPoolSize(keyPairPool, 3);
+        assertThat(meterRegistry.get("ca.keypool.depth").tag("algorithm", "RSA_2048").gauge().value())
+                .isEqualTo(3);
+
+        // Every KeyPair handed out must be unique, whether it came from the pool or not
+        Set<KeyPair> keyPairs = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            keyPairs.add(keyPairPool.take());
+        }
+        assertThat(keyPairs).hasSize(5);
+        assertThat(meterRegistry.get("ca.keypool.taken").tag("algorithm", "RSA_2048").tag("source", "pool")
+                .counter().count()).isPositive();
+
+        // Dropping below the low water mark triggers another refill
+        awaitPoolSize(keyPairPool, 3);
+        assertThat(meterRegistry.get("ca.keypool.refill").tag("algorithm", "RSA_2048").timer().count())
+                .isGreaterThanOrEqualTo(3);
+
+        keyPairPool.destroy();
+    }
+
+    @Test
+    public void testAlgorithmsThatAreNotPooledAreGeneratedInline() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KeyPairPool keyPairPool = new KeyPairPool(new CaSettings(), meterRegistry);
+
+        KeyPair keyPair = keyPairPool.take(KeyAlgorithm.EC_P256);
+
+        assertThat(keyPair.getPublic().getAlgorithm()).isEqualTo("EC");
+        assertThat(keyPairPool.size(KeyAlgorithm.EC_P256)).isZero();
+        assertThat(meterRegistry.get("ca.keypool.taken").tag("algorithm", "EC_P256").tag("source", "inline")
+                .counter().count()).isEqualTo(1);
+
+        keyPairPool.destroy();
+    }
+
+    private void awaitPoolSize(KeyPairPool keyPairPool, int size) {
+        await().atMost(Duration.ofSeconds(30)).until(() -> keyPairPool.size() >= size);
+
+        assertThat(keyPairPool.size()).isEqualTo(size);
+    }
+}
@@ -0,0 +1,104 @@
+package net.majatech.ca.authority.signing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import net.majatech.ca.utils.KeyUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class CertificateAuditorTest {
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Test
+    public void testInlineVerificationRejectsMismatchedIssuer() {
+        CertificateAuditor auditor = newAuditor(CertificateAuditor.VerificationMode.INLINE, new SimpleMeterRegistry(),
+                event -> {});
+
+        CertificateHolder invalid = withWrongIssuer(clientCertificateSigner.sign(testUtility.getDefaultTestCsr()));
+
+        assertThatThrownBy(() -> auditor.verify(invalid)).isInstanceOf(CaException.class);
+    }
+
+    @Test
+    public void testSampledVerificationCanSkipCertificates() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CertificateAuditor auditor = newAuditor(CertificateAuditor.VerificationMode.SAMPLED, meterRegistry,
+                event -> {});
+
+        // With a sample rate of 0 nothing is verified, so even a mismatched certificate passes
+        auditor.verify(withWrongIssuer(clientCertificateSigner.sign(testUtility.getDefaultTestCsr())));
+
+        assertThat(meterRegistry.get("ca.audit.skipped").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ca.audit.verified").counter().count()).isZero();
+    }
+
+    @Test
+    public void testAsyncAuditRecordsFailuresAndRaisesAlert() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        List<Object> events = new CopyOnWriteArrayList<>();
+        CountDownLatch alerted = new CountDownLatch(1);
+        CertificateAuditor auditor = newAuditor(CertificateAuditor.VerificationMode.ASYNC, meterRegistry, event -> {
+            events.add(event);
+            alerted.countDown();
+        });
+
+        CertificateHolder valid = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        CertificateHolder invalid = withWrongIssuer(clientCertificateSigner.sign(testUtility.getDefaultTestCsr()));
+
+        // Neither call may fail, as verification happens off the calling thread
+        auditor.verify(valid);
+        auditor.verify(invalid);
+
+        // The single audit worker takes certificates in order, so the valid one is verified before the alert
+        assertThat(alerted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(meterRegistry.get("ca.audit.verified").counter().count()).isEqualTo(1);
+        assertThat(auditor.getFailures()).hasSize(1);
+        assertThat(auditor.getFailures().get(0).serialNumber())
+                .isEqualTo(invalid.getX509Certificate().getSerialNumber().toString(16));
+        assertThat(events).singleElement().isInstanceOf(CertificateAuditFailedEvent.class);
+
+        auditor.destroy();
+    }
+
+    private CertificateAuditor newAuditor(CertificateAuditor.VerificationMode mode, MeterRegistry meterRegistry,
+                                          ApplicationEventPublisher eventPublisher) {
+        CaSettings caSettings = new CaSettings();
+        caSettings.getSigning().setVerification(mode);
+        caSettings.getSigning().setVerificationSampleRate(0);
+
+        return new CertificateAuditor(caSettings, meterRegistry, eventPublisher);
+    }
+
+    /**
+     * Pair an issued certificate with an issuer whose key did not sign it
+     */
+    private CertificateHolder withWrongIssuer(CertificateHolder certificateHolder) {
+        KeyPair otherKeyPair = KeyUtils.generateKeyPair();
+        IssuerInfo wrongIssuer = IssuerInfo.from(otherKeyPair, certificateHolder.getIssuerInfo().rootCa());
+
+        return CertificateHolder.with(certificateHolder.getX509Certificate(), certificateHolder.getKeyPair(),
+                wrongIssuer);
+    }
+}
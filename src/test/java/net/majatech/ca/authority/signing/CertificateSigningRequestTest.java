@@ -2,15 +2,29 @@ package net.majatech.ca.authority.signing;
 
 import net.majatech.ca.TestUtility;
 import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.exceptions.CaException;
+import net.majatech.ca.utils.KeyUtils;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
 import java.security.Signature;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 public class CertificateSigningRequestTest {
@@ -18,6 +32,9 @@ public class CertificateSigningRequestTest {
     @Autowired
     private TestUtility testUtility;
 
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
     @Test
     public void testPublicAndPrivateKeysMatch() throws Exception {
         CertificateSigningRequest csr = testUtility.getDefaultTestCsr();
@@ -48,4 +65,65 @@ public class CertificateSigningRequestTest {
 
         testUtility.assertDistinguishedNamesAreEqual(pkcs10Csr.getSubject(), dn);
     }
+
+    @Test
+    public void testClientCsrIsParsedFromPemAndDer() throws Exception {
+        CertificateSigningRequest clientCsr = testUtility.getDefaultTestCsr();
+        byte[] der = clientCsr.getCsr().getEncoded();
+
+        StringWriter pem = new StringWriter();
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(pem)) {
+            pemWriter.writeObject(clientCsr.getCsr());
+        }
+
+        for (byte[] encoded : new byte[][] {der, pem.toString().getBytes(StandardCharsets.US_ASCII)}) {
+            CertificateSigningRequest csr = CertificateSigningRequest.parse(encoded);
+
+            assertThat(csr.hasPrivateKey()).isFalse();
+            assertThat(csr.getPublicKey().getEncoded()).isEqualTo(clientCsr.getPublicKey().getEncoded());
+            assertThat(csr.getDistinguishedName()).isEqualTo(clientCsr.getDistinguishedName());
+        }
+    }
+
+    @Test
+    public void testClientCsrWithSpecialCharactersIsSignedAsItIs() throws Exception {
+        KeyPair subjectKeyPair = KeyUtils.generateKeyPair();
+        X500Name subject = new X500NameBuilder()
+                .addRDN(BCStyle.O, new DERUTF8String("Acme, Inc"))
+                .addRDN(BCStyle.CN, new DERUTF8String("Smith, John + Co = 1"))
+                .build();
+
+        PKCS10CertificationRequest pkcs10Csr = new JcaPKCS10CertificationRequestBuilder(
+                subject, subjectKeyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(subjectKeyPair.getPrivate()));
+
+        CertificateSigningRequest csr = CertificateSigningRequest.from(pkcs10Csr);
+        assertThat(csr.getDistinguishedName().getCommonName()).isEqualTo("Smith, John + Co = 1");
+        assertThat(csr.getDistinguishedName().getOrganization()).isEqualTo("Acme, Inc");
+
+        // The certificate has the values of the CSR, rather than their escaped string form
+        X500Name issued = X500Name.getInstance(
+                clientCertificateSigner.sign(csr).getX509Certificate().getSubjectX500Principal().getEncoded());
+        assertThat(((ASN1String) issued.getRDNs(BCStyle.CN)[0].getFirst().getValue()).getString())
+                .isEqualTo("Smith, John + Co = 1");
+        assertThat(((ASN1String) issued.getRDNs(BCStyle.O)[0].getFirst().getValue()).getString())
+                .isEqualTo("Acme, Inc");
+    }
+
+    @Test
+    public void testClientCsrWithoutProofOfPossessionIsRejected() throws Exception {
+        KeyPair subjectKeyPair = KeyUtils.generateKeyPair();
+        KeyPair otherKeyPair = KeyUtils.generateKeyPair();
+
+        // The CSR carries one public key but is signed with an unrelated private key
+        PKCS10CertificationRequest pkcs10Csr = new JcaPKCS10CertificationRequestBuilder(
+                testUtility.getDefaultTestCsr().getDistinguishedName().toX500Name(), subjectKeyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(otherKeyPair.getPrivate()));
+
+        assertThatThrownBy(() -> CertificateSigningRequest.from(pkcs10Csr))
+                .isInstanceOf(CaException.class)
+                .hasMessageContaining("proof of possession");
+        assertThatThrownBy(() -> CertificateSigningRequest.parse("not a csr".getBytes(StandardCharsets.US_ASCII)))
+                .isInstanceOf(CaException.class);
+    }
 }
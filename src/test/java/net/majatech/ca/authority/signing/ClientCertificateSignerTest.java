@@ -1,13 +1,27 @@
 package net.majatech.ca.authority.signing;
 
 import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.keys.KeyAlgorithm;
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 public class ClientCertificateSignerTest {
@@ -18,6 +32,9 @@ public class ClientCertificateSignerTest {
     @Autowired
     private ClientCertificateSigner clientCertificateSigner;
 
+    @Autowired
+    private IssuerRegistry issuerRegistry;
+
     @Test
     public void testCorrectKeyUsageExtensionsAreUsed() {
         CertificateSigningRequest csr = testUtility.getDefaultTestCsr();
@@ -62,4 +79,92 @@ public class ClientCertificateSignerTest {
         assertThat(certificate.getExtendedKeyUsage().size()).isEqualTo(1);
         assertThat(certificate.getExtendedKeyUsage().get(0)).isEqualTo("1.3.6.1.5.5.7.3.2");
     }
+
+    @Test
+    public void testSubjectKeyAlgorithmsCanBeSigned() throws Exception {
+        for (KeyAlgorithm keyAlgorithm : KeyAlgorithm.values()) {
+            CertificateSigningRequest csr = CertificateSigningRequest.using(
+                    testUtility.getDefaultTestDn(testUtility.getDefaultTestCsrForm()), keyAlgorithm);
+            CertificateHolder certificateHolder = clientCertificateSigner.sign(csr);
+            X509Certificate certificate = certificateHolder.getX509Certificate();
+
+            // The subject key keeps its own algorithm, while the certificate is signed by the RSA Root CA
+            assertThat(KeyAlgorithm.forKey(certificate.getPublicKey())).isEqualTo(keyAlgorithm);
+            assertThat(certificate.getPublicKey().getEncoded()).isEqualTo(csr.getPublicKey().getEncoded());
+            assertThat(certificate.getSigAlgName()).isEqualToIgnoringCase("SHA256withRSA");
+            certificate.verify(certificateHolder.getIssuerInfo().keyPair().getPublic());
+        }
+    }
+
+    @Test
+    public void testConstantExtensionsAreEncodedOnce() throws Exception {
+        List<Extension> profileExtensions = clientCertificateSigner.getProfileExtensions();
+        assertThat(clientCertificateSigner.getProfileExtensions()).isSameAs(profileExtensions);
+
+        // The pre-encoded authority key identifier must still match the key of the issuer
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        byte[] expectedAki = new JcaX509ExtensionUtils()
+                .createAuthorityKeyIdentifier(certificateHolder.getIssuerInfo().keyPair().getPublic())
+                .getEncoded();
+
+        assertThat(certificateHolder.getX509Certificate().getExtensionValue(Extension.authorityKeyIdentifier.getId()))
+                .isEqualTo(new DEROctetString(expectedAki).getEncoded());
+    }
+
+    @Test
+    public void testRenewalKeepsTheSubjectAndExtensionsAsTheyAre() throws Exception {
+        // A subject with attributes, repeated attributes and an order that a DistinguishedName does not hold
+        X500Name subject = new X500NameBuilder(BCStyle.INSTANCE)
+                .addRDN(BCStyle.DC, "com")
+                .addRDN(BCStyle.DC, "example")
+                .addRDN(BCStyle.O, "Example")
+                .addRDN(BCStyle.OU, "One")
+                .addRDN(BCStyle.OU, "Two")
+                .addRDN(BCStyle.CN, "client")
+                .addRDN(BCStyle.EmailAddress, "client@example.com")
+                .build();
+        GeneralNames subjectAltNames = new GeneralNames(new GeneralName[] {
+                new GeneralName(GeneralName.dNSName, "client.example.com"),
+                new GeneralName(GeneralName.rfc822Name, "client@example.com")});
+        KeyPair keyPair = testUtility.getDefaultTestCsr().getKeyPair();
+
+        X509Certificate original = testUtility.signWithDefaultIssuer(subject, keyPair,
+                new Extension(Extension.subjectAlternativeName, false, subjectAltNames.getEncoded()),
+                new Extension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature).getEncoded()),
+                new Extension(Extension.extendedKeyUsage, false,
+                        new ExtendedKeyUsage(KeyPurposeId.id_kp_emailProtection).getEncoded()))
+                .getX509Certificate();
+
+        String issuerName = issuerRegistry.findIssuerName(original.getIssuerX500Principal()).orElseThrow();
+        CertificateHolder renewed = clientCertificateSigner.renew(original, keyPair, issuerName);
+        X509Certificate certificate = renewed.getX509Certificate();
+
+        assertThat(certificate.getSubjectX500Principal().getEncoded())
+                .isEqualTo(original.getSubjectX500Principal().getEncoded());
+        assertThat(certificate.getSerialNumber()).isNotEqualTo(original.getSerialNumber());
+        assertThat(certificate.getPublicKey().getEncoded()).isEqualTo(keyPair.getPublic().getEncoded());
+
+        // The extensions of the original are kept, rather than replaced by those of the client certificate profile
+        for (ASN1ObjectIdentifier oid : List.of(Extension.subjectAlternativeName, Extension.keyUsage,
+                Extension.extendedKeyUsage)) {
+            assertThat(certificate.getExtensionValue(oid.getId())).isEqualTo(original.getExtensionValue(oid.getId()));
+        }
+        assertThat(certificate.getCriticalExtensionOIDs()).isEqualTo(original.getCriticalExtensionOIDs());
+        assertThat(certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId())).isNotNull();
+        certificate.verify(renewed.getIssuerInfo().keyPair().getPublic());
+    }
+
+    @Test
+    public void testRenewalOfCertificateWithUnknownCriticalExtensionFails() throws Exception {
+        KeyPair keyPair = testUtility.getDefaultTestCsr().getKeyPair();
+        X509Certificate original = testUtility.signWithDefaultIssuer(new X500Name("CN=client"), keyPair,
+                new Extension(new ASN1ObjectIdentifier("1.3.6.1.4.1.55555.1"), true, DERNull.INSTANCE.getEncoded()))
+                .getX509Certificate();
+
+        String issuerName = issuerRegistry.findIssuerName(original.getIssuerX500Principal()).orElseThrow();
+
+        assertThatThrownBy(() -> clientCertificateSigner.renew(original, keyPair, issuerName))
+                .isInstanceOf(CaException.class)
+                .hasMessageContaining("1.3.6.1.4.1.55555.1");
+    }
 }
@@ -0,0 +1,121 @@
+package net.majatech.ca.authority.signing;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class IssuerRegistryTest {
+
+    @Autowired
+    private IssuerRegistry issuerRegistry;
+
+    @Test
+    public void testDefaultIssuerIsLoadedOnce() {
+        IssuerInfo issuerInfo = issuerRegistry.getIssuer();
+
+        assertThat(issuerInfo.rootCa()).isNotNull();
+        assertThat(issuerInfo.keyPair().getPrivate()).isNotNull();
+        assertThat(issuerInfo.keyPair().getPublic()).isEqualTo(issuerInfo.rootCa().getPublicKey());
+
+        // Repeated lookups must not re-parse the issuer files
+        assertThat(issuerRegistry.getIssuer()).isSameAs(issuerInfo);
+        assertThat(issuerRegistry.getIssuer("root")).isSameAs(issuerInfo);
+    }
+
+    @Test
+    public void testUnknownIssuerThrowsException() {
+        assertThatThrownBy(() -> issuerRegistry.getIssuer("does-not-exist"))
+                .isInstanceOf(CaException.class)
+                .hasMessageContaining("does-not-exist");
+    }
+
+    @Test
+    public void testIssuerIsFoundByItsDn() {
+        CaSettings.Issuer definition = new CaSettings.Issuer();
+
+        // Both issuers share the same Root CA, so the default issuer is preferred
+        CaSettings caSettings = new CaSettings();
+        caSettings.getIssuers().setDefinitions(Map.of("another", definition, "root", definition));
+
+        IssuerRegistry registry = new IssuerRegistry(caSettings, new DefaultResourceLoader());
+        X500Principal rootDn = registry.getIssuer().rootCa().getSubjectX500Principal();
+
+        assertThat(registry.findIssuerName(rootDn)).contains("root");
+        assertThat(registry.findIssuerName(new X500Principal("CN=Unknown CA"))).isEmpty();
+    }
+
+    @Test
+    public void testModifiedIssuerIsReloaded(@TempDir Path dir) throws Exception {
+        Path certificate = copyResource("/ca/rootca.pem", dir.resolve("rootca.pem"));
+        Path privateKey = copyResource("/ca/private.der", dir.resolve("private.der"));
+
+        CaSettings.Issuer definition = new CaSettings.Issuer();
+        definition.setCertificate(certificate.toUri().toString());
+        definition.setPrivateKey(privateKey.toUri().toString());
+
+        CaSettings caSettings = new CaSettings();
+        caSettings.getIssuers().setDefinitions(Map.of("root", definition));
+
+        IssuerRegistry registry = new IssuerRegistry(caSettings, new DefaultResourceLoader());
+        IssuerInfo original = registry.getIssuer();
+
+        // Nothing has changed, so the same IssuerInfo should be kept
+        registry.reloadModifiedIssuers();
+        assertThat(registry.getIssuer()).isSameAs(original);
+
+        Files.setLastModifiedTime(certificate, FileTime.from(Instant.now().plusSeconds(60)));
+        registry.reloadModifiedIssuers();
+
+        IssuerInfo reloaded = registry.getIssuer();
+        assertThat(reloaded).isNotSameAs(original);
+        assertThat(reloaded.rootCa()).isEqualTo(original.rootCa());
+    }
+
+    @Test
+    public void testFailedReloadKeepsPreviousIssuer(@TempDir Path dir) throws Exception {
+        Path certificate = copyResource("/ca/rootca.pem", dir.resolve("rootca.pem"));
+        Path privateKey = copyResource("/ca/private.der", dir.resolve("private.der"));
+
+        CaSettings.Issuer definition = new CaSettings.Issuer();
+        definition.setCertificate(certificate.toUri().toString());
+        definition.setPrivateKey(privateKey.toUri().toString());
+
+        CaSettings caSettings = new CaSettings();
+        caSettings.getIssuers().setDefinitions(Map.of("root", definition));
+
+        IssuerRegistry registry = new IssuerRegistry(caSettings, new DefaultResourceLoader());
+        IssuerInfo original = registry.getIssuer();
+
+        // Simulate a partially written certificate
+        Files.writeString(certificate, "-----BEGIN CERTIFICATE-----");
+        Files.setLastModifiedTime(certificate, FileTime.from(Instant.now().plusSeconds(60)));
+        registry.reloadModifiedIssuers();
+
+        assertThat(registry.getIssuer()).isSameAs(original);
+    }
+
+    private Path copyResource(String resource, Path target) throws Exception {
+        try (InputStream is = new ClassPathResource(resource).getInputStream()) {
+            Files.copy(is, target);
+        }
+
+        return target;
+    }
+}
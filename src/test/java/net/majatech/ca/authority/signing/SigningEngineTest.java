@@ -0,0 +1,65 @@
+package net.majatech.ca.authority.signing;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.config.CaSettings;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class SigningEngineTest {
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Autowired
+    private IssuerRegistry issuerRegistry;
+
+    @Autowired
+    private CertificateAuditor certificateAuditor;
+
+    @Autowired
+    private SerialNumberSource serialNumberSource;
+
+    @Autowired
+    private SigningEngine signingEngine;
+
+    @Test
+    public void testContentSignerIsReusedPerThread() throws Exception {
+        IssuerInfo issuerInfo = issuerRegistry.getIssuer();
+
+        ContentSigner contentSigner = signingEngine.getContentSigner(issuerInfo);
+        assertThat(signingEngine.getContentSigner(issuerInfo)).isSameAs(contentSigner);
+
+        // Another thread must never be handed the same instance
+        ContentSigner otherThreadSigner =
+                CompletableFuture.supplyAsync(() -> signingEngine.getContentSigner(issuerInfo)).get();
+        assertThat(otherThreadSigner).isNotSameAs(contentSigner);
+    }
+
+    @Test
+    public void testLightweightEngineProducesValidCertificates() throws Exception {
+        // The application runs the JCA engine, so the lightweight one is created with its own settings
+        CaSettings caSettings = new CaSettings();
+        caSettings.getSigning().setEngine(SigningEngine.Engine.LIGHTWEIGHT);
+
+        ClientCertificateSigner signer = new ClientCertificateSigner(issuerRegistry, new SigningEngine(caSettings),
+                certificateAuditor, serialNumberSource);
+
+        // Sign more than once so that the reused ContentSigner is exercised
+        for (int i = 0; i < 3; i++) {
+            CertificateHolder certificateHolder = signer.sign(testUtility.getDefaultTestCsr());
+            X509Certificate certificate = certificateHolder.getX509Certificate();
+
+            certificate.checkValidity();
+            certificate.verify(certificateHolder.getIssuerInfo().keyPair().getPublic());
+        }
+    }
+}
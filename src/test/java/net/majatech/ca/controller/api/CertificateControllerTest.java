@@ -0,0 +1,126 @@
+package net.majatech.ca.controller.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.IssuerRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class CertificateControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Autowired
+    private IssuerRegistry issuerRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @WithMockUser
+    public void testSignPemAndDerPkcs10() throws Exception {
+        CertificateSigningRequest csr = testUtility.getDefaultTestCsr();
+
+        String pemChain = mockMvc.perform(post("/api/certificate/pkcs10")
+                        .contentType(CertificateController.APPLICATION_PKCS10_VALUE)
+                        .content(toPem(csr))
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertChainIsValid(pemChain, csr);
+
+        String derChain = mockMvc.perform(post("/api/certificate/pkcs10")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(csr.getCsr().getEncoded())
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertChainIsValid(derChain, csr);
+    }
+
+    @Test
+    @WithMockUser
+    public void testBatchPkcs10ReportsInvalidEntries() throws Exception {
+        CertificateSigningRequest csr = testUtility.getDefaultTestCsr();
+        String batch = objectMapper.writeValueAsString(Map.of("requests", List.of(toPem(csr), "not a csr")));
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/certificate/pkcs10/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(batch)
+                        .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String ndjson = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.strip().split("\n");
+        assertThat(lines).hasSize(2);
+
+        JsonNode signed = objectMapper.readTree(lines[0]);
+        assertThat(signed.get("index").asInt()).isZero();
+        assertChainIsValid(signed.get("certificateChain").asText(), csr);
+
+        JsonNode failed = objectMapper.readTree(lines[1]);
+        assertThat(failed.get("index").asInt()).isEqualTo(1);
+        assertThat(failed.has("error")).isTrue();
+        assertThat(failed.has("certificateChain")).isFalse();
+    }
+
+    private void assertChainIsValid(String pemChain, CertificateSigningRequest csr) throws Exception {
+        List<X509Certificate> chain = CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(pemChain.getBytes(StandardCharsets.US_ASCII)))
+                .stream()
+                .map(X509Certificate.class::cast)
+                .toList();
+
+        assertThat(chain).hasSize(2);
+        assertThat(chain.get(0).getPublicKey().getEncoded()).isEqualTo(csr.getPublicKey().getEncoded());
+        assertThat(chain.get(1)).isEqualTo(issuerRegistry.getIssuer().rootCa());
+
+        chain.get(0).checkValidity();
+        chain.get(0).verify(chain.get(1).getPublicKey());
+        testUtility.assertDistinguishedNamesAreEqual(
+                X500Name.getInstance(chain.get(0).getSubjectX500Principal().getEncoded()), csr.getDistinguishedName());
+    }
+
+    private String toPem(CertificateSigningRequest csr) throws Exception {
+        StringWriter writer = new StringWriter();
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(csr.getCsr());
+        }
+
+        return writer.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package net.majatech.ca.controller.api;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.majatech.ca.TestUtility;
 import net.majatech.ca.authority.certificate.CertificateHolder;
 import net.majatech.ca.authority.certificate.DistinguishedName;
@@ -12,22 +14,41 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -46,6 +67,9 @@ public class KeyStoreControllerTest {
     @Autowired
     private TestUtility testUtility;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Test
     @WithMockUser
     public void testGenerateAndSaveKeyStoreFromCsr() throws Exception {
@@ -229,11 +253,20 @@ public class KeyStoreControllerTest {
                 .andReturn().getResponse().getContentAsString();
 
         // Now simulate downloading the KeyStore
-        byte[] keyStoreBytes = mockMvc.perform(get("/api/keystore/download/" + savedKeyStoreId)
+        MockHttpServletResponse response = performAsync(get("/api/keystore/download/" + savedKeyStoreId)
                         .with(csrf()))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + savedKeyStoreId + "\""))
                 .andDo(print())
-                .andReturn().getResponse().getContentAsByteArray();
+                .andReturn().getResponse();
+        byte[] keyStoreBytes = response.getContentAsByteArray();
+
+        // A repeated download with the same ETag is answered without a body
+        mockMvc.perform(get("/api/keystore/download/" + savedKeyStoreId)
+                        .header(HttpHeaders.IF_NONE_MATCH, response.getHeader(HttpHeaders.ETAG))
+                        .with(csrf()))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
 
         KeyStore downloadedKeyStore = KeyStore.getInstance("PKCS12");
         downloadedKeyStore.load(new ByteArrayInputStream(keyStoreBytes), "123456".toCharArray());
@@ -285,4 +318,297 @@ public class KeyStoreControllerTest {
         // Assert KeyStore has been deleted
         assertThat(keyStoreInfoRepository.findById(UUID.fromString(savedKeyStoreId))).isNotPresent();
     }
+
+    @Test
+    @WithMockUser
+    public void testBulkDeleteKeyStores() throws Exception {
+        List<UUID> keyStoreIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+            keyStoreIds.add(keyStoreInfoRepository.save(
+                    KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias")).getKeyStoreId());
+        }
+
+        // Unknown IDs are ignored
+        String body = objectMapper.writeValueAsString(
+                Map.of("keyStoreIds", List.of(keyStoreIds.get(0), keyStoreIds.get(1), UUID.randomUUID())));
+
+        mockMvc.perform(post("/api/keystore/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(2));
+
+        assertThat(keyStoreInfoRepository.findById(keyStoreIds.get(0))).isNotPresent();
+        assertThat(keyStoreInfoRepository.findById(keyStoreIds.get(1))).isNotPresent();
+        assertThat(keyStoreInfoRepository.findById(keyStoreIds.get(2))).isPresent();
+
+        testUtility.cleanUpKeyStoreFromS3Bucket(keyStoreIds.get(2));
+    }
+
+    @Test
+    @WithMockUser
+    public void testEmptyBulkDeleteIsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/keystore/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"keyStoreIds\": []}")
+                        .with(csrf()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void testExportKeyStoresAsZip() throws Exception {
+        List<String> keyStoreIds = new ArrayList<>();
+        for (String commonName : List.of("export-a", "export-b", "export-c")) {
+            keyStoreIds.add(mockMvc.perform(post("/api/keystore/csr")
+                            .contentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+                            .param("commonName", commonName)
+                            .param("keyStorePass", "123456")
+                            .param("keyStoreAlias", "alias")
+                            .with(csrf()))
+                    .andExpect(status().isFound())
+                    .andReturn().getResponse().getContentAsString());
+        }
+
+        // Criteria are combined, and unknown IDs are ignored
+        String body = objectMapper.writeValueAsString(Map.of(
+                "keyStoreIds", List.of(keyStoreIds.get(0), keyStoreIds.get(1), UUID.randomUUID()),
+                "subjectDn", "EXPORT-"));
+
+        byte[] zip = performAsync(post("/api/keystore/export")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/zip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.put(entry.getName(), zis.readAllBytes());
+            }
+        }
+
+        assertThat(entries.keySet()).containsExactlyInAnyOrder(
+                keyStoreIds.get(0) + ".p12", keyStoreIds.get(1) + ".p12", "manifest.ndjson");
+
+        KeyStore exportedKeyStore = KeyStore.getInstance("PKCS12");
+        exportedKeyStore.load(new ByteArrayInputStream(entries.get(keyStoreIds.get(0) + ".p12")),
+                "123456".toCharArray());
+        assertThat(exportedKeyStore.isKeyEntry("alias")).isTrue();
+
+        // One line per KeyStore
+        String[] manifest = new String(entries.get("manifest.ndjson"), StandardCharsets.UTF_8).strip().split("\n");
+        assertThat(manifest).hasSize(2);
+        for (String line : manifest) {
+            JsonNode manifestEntry = objectMapper.readTree(line);
+            assertThat(manifestEntry.has("error")).isFalse();
+            assertThat(entries).containsKey(manifestEntry.get("fileName").asText());
+        }
+
+        keyStoreIds.forEach(id -> testUtility.cleanUpKeyStoreFromS3Bucket(UUID.fromString(id)));
+    }
+
+    @Test
+    @WithMockUser
+    public void testBulkImportReportsEveryManifestEntry() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(archive)) {
+            for (String fileName : List.of("first.p12", "nested/second.p12")) {
+                CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                certificateHolder.generateKeyStore("123456", "alias").store(baos, "123456".toCharArray());
+
+                zos.putNextEntry(new ZipEntry(fileName));
+                zos.write(baos.toByteArray());
+                zos.closeEntry();
+            }
+
+            zos.putNextEntry(new ZipEntry("invalid.p12"));
+            zos.write(new byte[] {1, 2, 3});
+            zos.closeEntry();
+        }
+
+        String manifest = objectMapper.writeValueAsString(Map.of("entries", List.of(
+                Map.of("fileName", "first.p12", "pass", "123456", "alias", "alias"),
+                Map.of("fileName", "invalid.p12", "pass", "123456", "alias", "alias"),
+                Map.of("fileName", "nested/second.p12", "pass", "123456", "alias", "alias"),
+                Map.of("fileName", "missing.p12", "pass", "123456", "alias", "alias"))));
+
+        String report = mockMvc.perform(multipart("/api/keystore/import")
+                        .file(new MockMultipartFile("archive", "keystores.zip", "application/zip",
+                                archive.toByteArray()))
+                        .file(new MockMultipartFile("manifest", "", MediaType.APPLICATION_JSON_VALUE,
+                                manifest.getBytes()))
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andReturn().getResponse().getContentAsString();
+
+        JsonNode results = objectMapper.readTree(report).get("results");
+        assertThat(results.get(1).has("error")).isTrue();
+        assertThat(results.get(3).get("error").asText()).isEqualTo("File not found in the archive");
+
+        for (int i : new int[] {0, 2}) {
+            assertThat(results.get(i).get("index").asInt()).isEqualTo(i);
+            assertThat(results.get(i).has("error")).isFalse();
+
+            UUID keyStoreId = UUID.fromString(results.get(i).get("keyStoreId").asText());
+            KeyStore savedKeyStore = testUtility.fetchSavedKeyStore(keyStoreId, "123456");
+            assertThat(savedKeyStore.isKeyEntry("alias")).isTrue();
+
+            // Cleanup S3 Bucket
+            testUtility.cleanUpKeyStoreFromS3Bucket(keyStoreId);
+        }
+    }
+
+    @Test
+    @WithMockUser
+    public void testListKeyStoresPagesWithCursor() throws Exception {
+        // A common name unique to this test, so only the KeyStores created here match the filter
+        String commonName = "list-" + UUID.randomUUID();
+        List<String> savedKeyStoreIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            savedKeyStoreIds.add(mockMvc.perform(post("/api/keystore/csr")
+                            .contentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+                            .param("commonName", commonName + "-" + i)
+                            .param("locality", "Sydney")
+                            .param("state", "NSW")
+                            .param("country", "AU")
+                            .param("organization", "MajaTech")
+                            .param("organizationalUnit", "CA")
+                            .param("keyStorePass", "123456")
+                            .param("keyStoreAlias", "alias")
+                            .with(csrf()))
+                    .andExpect(status().is3xxRedirection())
+                    .andReturn().getResponse().getContentAsString());
+        }
+
+        // The first page holds two KeyStores, and a cursor to the rest
+        JsonNode firstPage = objectMapper.readTree(mockMvc.perform(get("/api/keystore")
+                        .param("subjectDn", commonName.toUpperCase())
+                        .param("sort", "SUBJECT")
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keyStores.length()").value(2))
+                .andExpect(jsonPath("$.keyStores[0].pass").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").isString())
+                .andReturn().getResponse().getContentAsString());
+
+        // The following page holds the last KeyStore, and no cursor
+        JsonNode secondPage = objectMapper.readTree(mockMvc.perform(get("/api/keystore")
+                        .param("subjectDn", commonName.toUpperCase())
+                        .param("sort", "SUBJECT")
+                        .param("size", "2")
+                        .param("cursor", firstPage.get("nextCursor").asText()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keyStores.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist())
+                .andReturn().getResponse().getContentAsString());
+
+        // Together the pages list every KeyStore once, in subject order
+        List<String> listedKeyStoreIds = new ArrayList<>();
+        firstPage.get("keyStores").forEach(keyStore -> listedKeyStoreIds.add(keyStore.get("keyStoreId").asText()));
+        secondPage.get("keyStores").forEach(keyStore -> listedKeyStoreIds.add(keyStore.get("keyStoreId").asText()));
+        assertThat(listedKeyStoreIds).containsExactlyElementsOf(savedKeyStoreIds);
+
+        // Cleanup S3 Bucket
+        savedKeyStoreIds.forEach(keyStoreId -> testUtility.cleanUpKeyStoreFromS3Bucket(UUID.fromString(keyStoreId)));
+    }
+
+    @Test
+    @WithMockUser
+    public void testBatchIssuanceStreamsResultPerEntry() throws Exception {
+        String batch = """
+                {"entries": [
+                    {"commonName": "batch-rsa", "keyStorePass": "123456", "keyStoreAlias": "alias"},
+                    {"commonName": "batch-ec", "keyStorePass": "123456", "keyStoreAlias": "alias",
+                     "keyAlgorithm": "EC_P256"}
+                ]}
+                """;
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/keystore/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(batch)
+                        .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String ndjson = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // One line per entry, in the same order as the request
+        String[] lines = ndjson.strip().split("\n");
+        assertThat(lines).hasSize(2);
+
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode result = objectMapper.readTree(lines[i]);
+            assertThat(result.get("index").asInt()).isEqualTo(i);
+            assertThat(result.has("error")).isFalse();
+
+            UUID keyStoreId = UUID.fromString(result.get("keyStoreId").asText());
+            KeyStoreInfo savedInfo = keyStoreInfoRepository.findById(keyStoreId).get();
+            assertThat(savedInfo.getSubjectDn()).isEqualTo(result.get("subjectDn").asText());
+
+            // Cleanup S3 Bucket
+            testUtility.cleanUpKeyStoreFromS3Bucket(keyStoreId);
+        }
+    }
+
+    @Test
+    @WithMockUser
+    public void testEmptyBatchIsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/keystore/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"entries\": []}")
+                        .with(csrf()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void testOversizedBatchIsBadRequest() throws Exception {
+        Map<String, String> entry = Map.of("commonName", "batch-oversized", "keyStorePass", "123456",
+                "keyStoreAlias", "alias");
+        String batch = objectMapper.writeValueAsString(Map.of("entries", Collections.nCopies(1001, entry)));
+
+        // Rejected by validation before anything is issued, rather than failing the stream
+        mockMvc.perform(post("/api/keystore/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(batch)
+                        .with(csrf()))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void testRenewalWindowOutOfRangeIsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/keystore/renew")
+                        .param("withinDays", "0")
+                        .with(csrf()))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/api/keystore/renew")
+                        .param("withinDays", "366")
+                        .with(csrf()))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Perform a request against an endpoint that completes asynchronously, and dispatch its result
+     */
+    private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(mvcResult));
+    }
 }
@@ -0,0 +1,74 @@
+package net.majatech.ca.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InFlightLimiterTest {
+
+    @Test
+    public void testRequestsOverTheLimitAreQueued() {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(2);
+
+        List<CompletableFuture<Integer>> requests = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> request = new CompletableFuture<>();
+            requests.add(request);
+            results.add(inFlightLimiter.submit(() -> request));
+        }
+
+        // Only two requests are started, submitting the rest did not block
+        assertThat(inFlightLimiter.getInFlight()).isEqualTo(2);
+        assertThat(inFlightLimiter.getPending()).isEqualTo(3);
+
+        // Every completion starts the next queued request
+        for (int i = 0; i < requests.size(); i++) {
+            requests.get(i).complete(i);
+            assertThat(results.get(i)).isCompletedWithValue(i);
+        }
+
+        assertThat(inFlightLimiter.getInFlight()).isZero();
+        assertThat(inFlightLimiter.getPending()).isZero();
+    }
+
+    @Test
+    public void testFailedRequestReleasesItsPermit() {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(1);
+
+        CompletableFuture<Object> failed = inFlightLimiter.submit(() -> {
+            throw new IllegalStateException("S3 unavailable");
+        });
+        CompletableFuture<String> next = inFlightLimiter.submit(() -> CompletableFuture.completedFuture("ok"));
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(next).isCompletedWithValue("ok");
+        assertThat(inFlightLimiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void testRequestsCompletingInlineDoNotGrowTheStack() {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(1);
+
+        CompletableFuture<Integer> blocker = new CompletableFuture<>();
+        inFlightLimiter.submit(() -> blocker);
+
+        // Each queued request completes as soon as it is started, releasing its permit to the next one
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int value = i;
+            results.add(inFlightLimiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+
+        blocker.complete(-1);
+
+        assertThat(results).allMatch(result -> result.isDone() && !result.isCompletedExceptionally());
+        assertThat(results.get(results.size() - 1)).isCompletedWithValue(99_999);
+        assertThat(inFlightLimiter.getInFlight()).isZero();
+        assertThat(inFlightLimiter.getPending()).isZero();
+    }
+}
@@ -0,0 +1,71 @@
+package net.majatech.ca.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+public class KeyStoreCacheTest {
+
+    @Autowired
+    private KeyStoreCache keyStoreCache;
+
+    @SpyBean
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Test
+    public void testConcurrentMissesShareOneFetch() {
+        UUID keyStoreId = UUID.randomUUID();
+        byte[] keyStoreBytes = {1, 2, 3};
+
+        CompletableFuture<byte[]> fetch = new CompletableFuture<>();
+        doReturn(fetch).when(keyStoreOutboxService).fetchKeyStoreBytes(keyStoreId);
+
+        // Both requests arrive while the fetch is still in flight
+        CompletableFuture<byte[]> first = keyStoreCache.get(keyStoreId);
+        CompletableFuture<byte[]> second = keyStoreCache.get(keyStoreId);
+        fetch.complete(keyStoreBytes);
+
+        assertThat(first.join()).isEqualTo(keyStoreBytes);
+        assertThat(second.join()).isEqualTo(keyStoreBytes);
+
+        // Later requests are served from the cache
+        assertThat(keyStoreCache.get(keyStoreId).join()).isEqualTo(keyStoreBytes);
+        verify(keyStoreOutboxService, times(1)).fetchKeyStoreBytes(keyStoreId);
+    }
+
+    @Test
+    public void testInvalidatedKeyStoreIsFetchedAgain() {
+        UUID keyStoreId = UUID.randomUUID();
+
+        doReturn(CompletableFuture.completedFuture(new byte[] {1}))
+                .when(keyStoreOutboxService).fetchKeyStoreBytes(keyStoreId);
+        keyStoreCache.get(keyStoreId).join();
+
+        keyStoreCache.invalidate(keyStoreId);
+        keyStoreCache.get(keyStoreId).join();
+
+        verify(keyStoreOutboxService, times(2)).fetchKeyStoreBytes(keyStoreId);
+    }
+
+    @Test
+    public void testFailedFetchIsNotCached() {
+        UUID keyStoreId = UUID.randomUUID();
+
+        doReturn(CompletableFuture.failedFuture(new IllegalStateException("S3 unavailable")))
+                .doReturn(CompletableFuture.completedFuture(new byte[] {1}))
+                .when(keyStoreOutboxService).fetchKeyStoreBytes(keyStoreId);
+
+        assertThat(keyStoreCache.get(keyStoreId)).isCompletedExceptionally();
+        assertThat(keyStoreCache.get(keyStoreId).join()).isEqualTo(new byte[] {1});
+    }
+}
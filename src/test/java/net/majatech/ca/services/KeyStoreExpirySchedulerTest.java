@@ -0,0 +1,84 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@RecordApplicationEvents
+public class KeyStoreExpirySchedulerTest {
+
+    @Autowired
+    private KeyStoreExpiryScheduler keyStoreExpiryScheduler;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreGarbageCollector keyStoreGarbageCollector;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @Test
+    public void testKeyStoreSavedWithinItsWarningIsAnnouncedAsExpiring() {
+        UUID expiring = stageKeyStore(Instant.now().plus(Duration.ofDays(1)));
+        UUID deleted = stageKeyStore(Instant.now().plus(Duration.ofDays(2)));
+        keyStoreGarbageCollector.tombstone(List.of(deleted));
+
+        keyStoreExpiryScheduler.tick();
+
+        // Only the KeyStore that was not deleted is announced, and only as expiring
+        List<KeyStoreExpiryEvent> events = applicationEvents.stream(KeyStoreExpiryEvent.class).toList();
+        assertThat(events).anyMatch(event -> event.keyStore().keyStoreId().equals(expiring)
+                && event.type() == KeyStoreExpiryEvent.Type.EXPIRING);
+        assertThat(events).noneMatch(event -> event.keyStore().keyStoreId().equals(deleted));
+        assertThat(events).noneMatch(event -> event.type() == KeyStoreExpiryEvent.Type.EXPIRED);
+
+        keyStoreGarbageCollector.tombstone(List.of(expiring));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testExpiringWithinFindsOnlyKeyStoresInTheWindow() {
+        UUID inWindow = stageKeyStore(Instant.now().plus(Duration.ofDays(3)));
+        UUID outOfWindow = stageKeyStore(Instant.now().plus(Duration.ofDays(10)));
+
+        assertThat(keyStoreExpiryScheduler.expiringWithin(Duration.ofDays(5)))
+                .extracting(KeyStoreSummary::keyStoreId)
+                .contains(inWindow)
+                .doesNotContain(outOfWindow);
+
+        keyStoreGarbageCollector.tombstone(List.of(inWindow, outOfWindow));
+        keyStoreGarbageCollector.collect();
+    }
+
+    private UUID stageKeyStore(Instant expiry) {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+        keyStoreInfo.setExpiry(expiry);
+
+        return keyStoreOutboxService.stage(keyStoreInfo, new byte[] {1, 2, 3}).getKeyStoreId();
+    }
+}
@@ -0,0 +1,94 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class KeyStoreGarbageCollectorTest {
+
+    @Autowired
+    private KeyStoreGarbageCollector keyStoreGarbageCollector;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreBlobStore keyStoreBlobStore;
+
+    @Autowired
+    private KeyStoreInfoRepository keyStoreInfoRepository;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Test
+    public void testTombstonedKeyStoresAreHiddenAndThenCollected() {
+        UUID first = stageKeyStore(null);
+        UUID second = stageKeyStore(null);
+        keyStoreOutboxService.drain();
+
+        assertThat(keyStoreGarbageCollector.tombstone(List.of(first, second))).isEqualTo(2);
+
+        // Hidden straight away, but the files are only removed once collected
+        assertThat(keyStoreInfoRepository.findById(first)).isNotPresent();
+        assertThat(keyStoreInfoRepository.findTombstonedIds(1000)).contains(first, second);
+        assertThat(keyStoreBlobStore.fetch(first).join()).isNotEmpty();
+
+        // Tombstoning again is a no-op
+        assertThat(keyStoreGarbageCollector.tombstone(List.of(first))).isZero();
+
+        keyStoreGarbageCollector.collect();
+
+        assertThat(keyStoreInfoRepository.findTombstonedIds(1000)).doesNotContain(first, second);
+        assertThatThrownBy(() -> keyStoreBlobStore.fetch(first).join()).hasCauseInstanceOf(Exception.class);
+        assertThatThrownBy(() -> keyStoreBlobStore.fetch(second).join()).hasCauseInstanceOf(Exception.class);
+    }
+
+    @Test
+    public void testOnlyExpiredKeyStoresAreTombstoned() {
+        UUID expired = stageKeyStore(Instant.now().minus(Duration.ofDays(1)));
+        UUID valid = stageKeyStore(null);
+
+        assertThat(keyStoreGarbageCollector.tombstoneExpired()).isGreaterThanOrEqualTo(1);
+
+        assertThat(keyStoreInfoRepository.findById(expired)).isNotPresent();
+        assertThat(keyStoreInfoRepository.findById(valid)).isPresent();
+
+        // The pending upload of the expired KeyStore is discarded rather than written
+        keyStoreGarbageCollector.collect();
+        assertThat(keyStoreInfoRepository.findTombstonedIds(1000)).doesNotContain(expired);
+        assertThatThrownBy(() -> keyStoreOutboxService.fetchKeyStoreBytes(expired).join())
+                .hasCauseInstanceOf(Exception.class);
+        assertThat(keyStoreOutboxService.fetchKeyStoreBytes(valid).join()).isNotEmpty();
+
+        testUtility.cleanUpKeyStoreFromS3Bucket(valid);
+    }
+
+    private UUID stageKeyStore(Instant expiry) {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+        if (expiry != null) {
+            keyStoreInfo.setExpiry(expiry);
+        }
+
+        return keyStoreOutboxService.stage(keyStoreInfo, new byte[] {1, 2, 3}).getKeyStoreId();
+    }
+}
@@ -0,0 +1,92 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.entity.KeyStoreUpload;
+import net.majatech.ca.data.repo.KeyStoreUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+
+@SpringBootTest
+public class KeyStoreOutboxServiceTest {
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreUploadRepository keyStoreUploadRepository;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private Pkcs12Encoder pkcs12Encoder;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @SpyBean
+    private KeyStoreBlobStore keyStoreBlobStore;
+
+    @Test
+    public void testPendingKeyStoreIsServedFromOutboxUntilUploaded() {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        byte[] keyStoreBytes = pkcs12Encoder.encode(certificateHolder, "123456", "alias");
+        UUID keyStoreId = keyStoreOutboxService.stage(
+                KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias"), keyStoreBytes)
+                .getKeyStoreId();
+
+        // Before the drain, the KeyStore is only in the outbox
+        assertThat(keyStoreUploadRepository.findById(keyStoreId)).isPresent();
+        assertThat(keyStoreOutboxService.fetchKeyStoreBytes(keyStoreId).join()).isEqualTo(keyStoreBytes);
+
+        keyStoreOutboxService.drain();
+
+        // After the drain, the outbox entry is gone and the KeyStore is served from the blob store
+        assertThat(keyStoreUploadRepository.findById(keyStoreId)).isNotPresent();
+        assertThat(keyStoreBlobStore.fetch(keyStoreId).join()).isEqualTo(keyStoreBytes);
+        assertThat(keyStoreOutboxService.fetchKeyStoreBytes(keyStoreId).join()).isEqualTo(keyStoreBytes);
+
+        testUtility.cleanUpKeyStoreFromS3Bucket(keyStoreId);
+    }
+
+    @Test
+    public void testFailedUploadIsRetriedLater() {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        byte[] keyStoreBytes = pkcs12Encoder.encode(certificateHolder, "123456", "alias");
+        UUID keyStoreId = keyStoreOutboxService.stage(
+                KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias"), keyStoreBytes)
+                .getKeyStoreId();
+
+        doReturn(CompletableFuture.failedFuture(new IllegalStateException("Storage unavailable")))
+                .when(keyStoreBlobStore).save(any(), any());
+
+        Instant drainedAt = Instant.now();
+        keyStoreOutboxService.drain();
+
+        // The entry is kept with the failure recorded, and is not due again straight away
+        KeyStoreUpload keyStoreUpload = keyStoreUploadRepository.findById(keyStoreId).get();
+        assertThat(keyStoreUpload.getAttempts()).isEqualTo(1);
+        assertThat(keyStoreUpload.getLastError()).isEqualTo("Storage unavailable");
+        assertThat(keyStoreUpload.getNextAttemptAt()).isAfter(drainedAt);
+
+        // Readers are still served from the outbox
+        assertThat(keyStoreOutboxService.fetchKeyStoreBytes(keyStoreId).join()).isEqualTo(keyStoreBytes);
+
+        testUtility.cleanUpKeyStoreFromS3Bucket(keyStoreId);
+        assertThat(keyStoreUploadRepository.findById(keyStoreId)).isNotPresent();
+    }
+}
@@ -0,0 +1,137 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.KeyStoreListForm;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class KeyStoreReadModelTest {
+
+    @Autowired
+    private KeyStoreReadModel keyStoreReadModel;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreGarbageCollector keyStoreGarbageCollector;
+
+    @Autowired
+    private KeyStoreInfoRepository keyStoreInfoRepository;
+
+    @Autowired
+    private KeyStoreService keyStoreService;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Test
+    public void testSavedKeyStoresAreListedUntilDeleted() {
+        UUID keyStoreId = stageKeyStore(null);
+
+        assertThat(keyStoreReadModel.contains(keyStoreId)).isTrue();
+        for (KeyStoreListForm.SortField sortField : KeyStoreListForm.SortField.values()) {
+            assertThat(keyStoreReadModel.sortedBy(sortField))
+                    .extracting(KeyStoreSummary::keyStoreId)
+                    .contains(keyStoreId);
+        }
+
+        keyStoreGarbageCollector.tombstone(List.of(keyStoreId));
+
+        assertThat(keyStoreReadModel.contains(keyStoreId)).isFalse();
+        for (KeyStoreListForm.SortField sortField : KeyStoreListForm.SortField.values()) {
+            assertThat(keyStoreReadModel.sortedBy(sortField))
+                    .extracting(KeyStoreSummary::keyStoreId)
+                    .doesNotContain(keyStoreId);
+        }
+
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testExpiredKeyStoresAreRemoved() {
+        UUID expired = stageKeyStore(Instant.now().minus(Duration.ofDays(1)));
+        UUID valid = stageKeyStore(null);
+
+        keyStoreGarbageCollector.tombstoneExpired();
+
+        assertThat(keyStoreReadModel.contains(expired)).isFalse();
+        assertThat(keyStoreReadModel.contains(valid)).isTrue();
+
+        keyStoreGarbageCollector.collect();
+        testUtility.cleanUpKeyStoreFromS3Bucket(valid);
+    }
+
+    @Test
+    public void testRolledBackSaveIsNeverListed() {
+        UUID[] keyStoreId = new UUID[1];
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            keyStoreId[0] = stageKeyStore(null);
+            status.setRollbackOnly();
+        });
+
+        assertThat(keyStoreReadModel.contains(keyStoreId[0])).isFalse();
+    }
+
+    @Test
+    public void testChangesOfOtherNodesArePickedUpByRefresh() {
+        // Saved and deleted straight through the repository, as another node would, so no event is published here
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        UUID keyStoreId = keyStoreInfoRepository.save(
+                KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias")).getKeyStoreId();
+        assertThat(keyStoreReadModel.contains(keyStoreId)).isFalse();
+
+        keyStoreReadModel.refresh();
+        assertThat(keyStoreReadModel.contains(keyStoreId)).isTrue();
+        assertThat(keyStoreReadModel.sortedBy(KeyStoreListForm.SortField.EXPIRY))
+                .extracting(KeyStoreSummary::keyStoreId)
+                .contains(keyStoreId);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                keyStoreInfoRepository.tombstoneAllById(List.of(keyStoreId), Instant.now()));
+
+        // Downloads check the database, so a KeyStore deleted elsewhere is not served before the model catches up
+        assertThatThrownBy(() -> keyStoreService.getKeyStoreETag(keyStoreId)).isInstanceOf(CaException.class);
+
+        keyStoreReadModel.refresh();
+        assertThat(keyStoreReadModel.contains(keyStoreId)).isFalse();
+
+        keyStoreGarbageCollector.collect();
+    }
+
+    private UUID stageKeyStore(Instant expiry) {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+        if (expiry != null) {
+            keyStoreInfo.setExpiry(expiry);
+        }
+
+        return keyStoreOutboxService.stage(keyStoreInfo, new byte[] {1, 2, 3}).getKeyStoreId();
+    }
+}
@@ -0,0 +1,82 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.ReconciliationReport;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class KeyStoreReconcilerTest {
+
+    @Autowired
+    private KeyStoreReconciler keyStoreReconciler;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreBlobStore keyStoreBlobStore;
+
+    @Autowired
+    private KeyStoreInfoRepository keyStoreInfoRepository;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Test
+    public void testDriftIsReportedAndThenRepaired() {
+        UUID healthy = stageKeyStore();
+        UUID missing = stageKeyStore();
+        keyStoreOutboxService.drain();
+
+        // Lost file, orphaned file and a KeyStore whose upload is still pending
+        keyStoreBlobStore.delete(missing).join();
+        UUID orphaned = UUID.randomUUID();
+        keyStoreBlobStore.save(orphaned, new byte[] {1, 2, 3}).join();
+        UUID pending = stageKeyStore();
+
+        ReconciliationReport report = keyStoreReconciler.reconcile(false);
+
+        assertThat(report.repaired()).isFalse();
+        assertThat(report.orphanedSample()).contains(orphaned).doesNotContain(healthy, missing, pending);
+        assertThat(report.missingSample()).contains(missing).doesNotContain(healthy, orphaned, pending);
+
+        // Reporting alone changes nothing
+        assertThat(keyStoreBlobStore.exists(orphaned).join()).isTrue();
+        assertThat(keyStoreInfoRepository.findById(missing)).isPresent();
+
+        report = keyStoreReconciler.reconcile(true);
+
+        assertThat(report.repaired()).isTrue();
+        assertThat(keyStoreBlobStore.exists(orphaned).join()).isFalse();
+        assertThat(keyStoreInfoRepository.findById(missing)).isNotPresent();
+        assertThat(keyStoreInfoRepository.findById(healthy)).isPresent();
+        assertThat(keyStoreInfoRepository.findById(pending)).isPresent();
+
+        report = keyStoreReconciler.reconcile(false);
+        assertThat(report.orphanedSample()).doesNotContain(orphaned);
+        assertThat(report.missingSample()).doesNotContain(missing);
+
+        testUtility.cleanUpKeyStoreFromS3Bucket(healthy);
+        testUtility.cleanUpKeyStoreFromS3Bucket(pending);
+    }
+
+    private UUID stageKeyStore() {
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+
+        return keyStoreOutboxService.stage(keyStoreInfo, new byte[] {1, 2, 3}).getKeyStoreId();
+    }
+}
@@ -0,0 +1,212 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.RenewalReport;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.entity.RenewalRun;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.data.repo.RenewalRunRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class KeyStoreRenewalServiceTest {
+
+    @Autowired
+    private KeyStoreRenewalService keyStoreRenewalService;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreGarbageCollector keyStoreGarbageCollector;
+
+    @Autowired
+    private KeyStoreInfoRepository keyStoreInfoRepository;
+
+    @Autowired
+    private RenewalRunRepository renewalRunRepository;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private Pkcs12Encoder pkcs12Encoder;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Test
+    public void testExpiringKeyStoreIsRenewedWithItsExistingKey() throws Exception {
+        CertificateHolder original = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        UUID originalId = stageKeyStore(original, Instant.now().plus(Duration.ofDays(1)));
+        Set<UUID> before = keyStoreInfoRepository.findAll().stream()
+                .map(KeyStoreInfo::getKeyStoreId)
+                .collect(Collectors.toSet());
+
+        RenewalReport report = keyStoreRenewalService.renew(Duration.ofDays(2));
+
+        assertThat(report.resumed()).isFalse();
+        assertThat(report.renewed()).isGreaterThanOrEqualTo(1);
+        assertThat(renewalRunRepository.findById(report.runId()).get().getStatus())
+                .isEqualTo(RenewalRun.Status.COMPLETED);
+
+        // The original is deleted, and the renewal saved under a new ID with the same password and alias
+        assertThat(keyStoreInfoRepository.findById(originalId)).isNotPresent();
+        KeyStoreInfo renewedInfo = keyStoreInfoRepository.findAll().stream()
+                .filter(keyStoreInfo -> !before.contains(keyStoreInfo.getKeyStoreId()))
+                .filter(keyStoreInfo -> keyStoreInfo.getSubjectDn().equals(
+                        original.getX509Certificate().getSubjectX500Principal().toString()))
+                .findFirst()
+                .orElseThrow();
+        assertThat(renewedInfo.getAlias()).isEqualTo("alias");
+
+        // The renewed certificate has a fresh validity, but the same key
+        KeyStore renewed = testUtility.fetchSavedKeyStore(renewedInfo.getKeyStoreId(), renewedInfo.getPass());
+        X509Certificate certificate = (X509Certificate) renewed.getCertificate("alias");
+        certificate.checkValidity();
+        assertThat(certificate.getSerialNumber()).isNotEqualTo(original.getX509Certificate().getSerialNumber());
+        assertThat(certificate.getIssuerX500Principal())
+                .isEqualTo(original.getX509Certificate().getIssuerX500Principal());
+        assertThat(certificate.getPublicKey().getEncoded()).isEqualTo(original.getKeyPair().getPublic().getEncoded());
+        assertThat(renewed.getKey("alias", "123456".toCharArray()).getEncoded())
+                .isEqualTo(original.getKeyPair().getPrivate().getEncoded());
+
+        keyStoreGarbageCollector.tombstone(List.of(renewedInfo.getKeyStoreId()));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testRenewedKeyStoreKeepsTheSubjectAndSubjectAltNameOfTheOriginal() throws Exception {
+        X500Name subject = new X500NameBuilder(BCStyle.INSTANCE)
+                .addRDN(BCStyle.CN, "renewal")
+                .addRDN(BCStyle.OU, "One")
+                .addRDN(BCStyle.OU, "Two")
+                .addRDN(BCStyle.EmailAddress, "renewal@example.com")
+                .build();
+        Extension subjectAltName = new Extension(Extension.subjectAlternativeName, false,
+                new GeneralNames(new GeneralName(GeneralName.dNSName, "renewal.example.com")).getEncoded());
+        CertificateHolder original = testUtility.signWithDefaultIssuer(subject,
+                testUtility.getDefaultTestCsr().getKeyPair(), subjectAltName);
+        stageKeyStore(original, Instant.now().plus(Duration.ofDays(1)));
+        Set<UUID> before = keyStoreInfoRepository.findAll().stream()
+                .map(KeyStoreInfo::getKeyStoreId)
+                .collect(Collectors.toSet());
+
+        keyStoreRenewalService.renew(Duration.ofDays(2));
+
+        KeyStoreInfo renewedInfo = keyStoreInfoRepository.findAll().stream()
+                .filter(keyStoreInfo -> !before.contains(keyStoreInfo.getKeyStoreId()))
+                .filter(keyStoreInfo -> keyStoreInfo.getSubjectDn().equals(
+                        original.getX509Certificate().getSubjectX500Principal().toString()))
+                .findFirst()
+                .orElseThrow();
+        X509Certificate certificate = (X509Certificate) testUtility
+                .fetchSavedKeyStore(renewedInfo.getKeyStoreId(), renewedInfo.getPass())
+                .getCertificate("alias");
+
+        assertThat(certificate.getSubjectX500Principal().getEncoded())
+                .isEqualTo(original.getX509Certificate().getSubjectX500Principal().getEncoded());
+        assertThat(certificate.getExtensionValue(Extension.subjectAlternativeName.getId()))
+                .isEqualTo(original.getX509Certificate().getExtensionValue(Extension.subjectAlternativeName.getId()));
+
+        keyStoreGarbageCollector.tombstone(List.of(renewedInfo.getKeyStoreId()));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testInterruptedRunIsResumed() {
+        RenewalRun interrupted = saveInterruptedRun();
+
+        CertificateHolder original = clientCertificateSigner.sign(testUtility.getDefaultTestCsr());
+        UUID originalId = stageKeyStore(original, Instant.now().plus(Duration.ofDays(1)));
+
+        // The interrupted run keeps its own cutoff, rather than taking the window of the new request
+        RenewalReport report = keyStoreRenewalService.renew(Duration.ZERO);
+
+        assertThat(report.resumed()).isTrue();
+        assertThat(report.runId()).isEqualTo(interrupted.getRunId());
+        assertThat(keyStoreInfoRepository.findById(originalId)).isNotPresent();
+        assertThat(renewalRunRepository.findFirstByStatusOrderByStartedAt(RenewalRun.Status.RUNNING)).isEmpty();
+
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testRenewalWithinAnotherWindowIsRejectedWhileARunIsInterrupted() {
+        RenewalRun interrupted = saveInterruptedRun();
+
+        assertThatThrownBy(() -> keyStoreRenewalService.renewWithin(Duration.ofDays(7)))
+                .isInstanceOf(CaException.class)
+                .hasMessageContaining(interrupted.getRunId().toString());
+        assertThat(renewalRunRepository.findById(interrupted.getRunId()).get().getStatus())
+                .isEqualTo(RenewalRun.Status.RUNNING);
+
+        // Once the interrupted run is resumed, a new window is accepted
+        assertThat(keyStoreRenewalService.renew(Duration.ZERO).runId()).isEqualTo(interrupted.getRunId());
+        assertThat(keyStoreRenewalService.renewWithin(Duration.ofDays(1)).resumed()).isFalse();
+
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testRunIsNotResumedWhileItsLeaseIsHeld() {
+        // A run renewed by another node within the lease timeout is still running there
+        RenewalRun leased = RenewalRun.start(Instant.now().plus(Duration.ofDays(2)));
+        leased.setLeaseOwner(UUID.randomUUID());
+        RenewalRun running = renewalRunRepository.save(leased);
+
+        try {
+            assertThatThrownBy(() -> keyStoreRenewalService.renew(Duration.ZERO))
+                    .isInstanceOf(CaException.class)
+                    .hasMessageContaining(running.getRunId() + " is already running");
+            assertThat(renewalRunRepository.findById(running.getRunId()).get().getLeaseOwner())
+                    .isEqualTo(running.getLeaseOwner());
+        } finally {
+            running.setStatus(RenewalRun.Status.COMPLETED);
+            renewalRunRepository.save(running);
+        }
+    }
+
+    /**
+     * Save a run whose node stopped renewing its lease longer than the lease timeout ago
+     */
+    private RenewalRun saveInterruptedRun() {
+        RenewalRun run = RenewalRun.start(Instant.now().plus(Duration.ofDays(2)));
+        run.setLeaseOwner(UUID.randomUUID());
+        run.setUpdatedAt(Instant.now().minus(Duration.ofHours(1)));
+
+        return renewalRunRepository.save(run);
+    }
+
+    private UUID stageKeyStore(CertificateHolder certificateHolder, Instant expiry) {
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+        keyStoreInfo.setExpiry(expiry);
+
+        byte[] keyStoreBytes = pkcs12Encoder.encode(certificateHolder, "123456", "alias");
+        return keyStoreOutboxService.stage(keyStoreInfo, keyStoreBytes).getKeyStoreId();
+    }
+}
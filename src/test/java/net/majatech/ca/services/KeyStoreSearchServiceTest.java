@@ -0,0 +1,177 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.TestUtility;
+import net.majatech.ca.authority.certificate.CertificateHolder;
+import net.majatech.ca.authority.certificate.DistinguishedName;
+import net.majatech.ca.authority.certificate.Pkcs12Encoder;
+import net.majatech.ca.authority.signing.CertificateSigningRequest;
+import net.majatech.ca.authority.signing.ClientCertificateSigner;
+import net.majatech.ca.controller.api.model.CsrForm;
+import net.majatech.ca.controller.api.model.KeyStoreSearchForm;
+import net.majatech.ca.controller.api.model.KeyStoreSummary;
+import net.majatech.ca.data.entity.KeyStoreInfo;
+import net.majatech.ca.data.repo.KeyStoreInfoRepository;
+import net.majatech.ca.exceptions.CaException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class KeyStoreSearchServiceTest {
+
+    @Autowired
+    private KeyStoreSearchService keyStoreSearchService;
+
+    @Autowired
+    private KeyStoreOutboxService keyStoreOutboxService;
+
+    @Autowired
+    private KeyStoreGarbageCollector keyStoreGarbageCollector;
+
+    @Autowired
+    private KeyStoreInfoRepository keyStoreInfoRepository;
+
+    @Autowired
+    private ClientCertificateSigner clientCertificateSigner;
+
+    @Autowired
+    private Pkcs12Encoder pkcs12Encoder;
+
+    @Autowired
+    private TestUtility testUtility;
+
+    @Test
+    public void testExactAndPrefixSearchBySubjectAttribute() {
+        String unit = uniqueWord();
+        UUID payments = stageKeyStore("default-cn", unit + " Payments", true);
+        UUID gateway = stageKeyStore("default-cn", unit + " Payments Gateway", true);
+
+        assertThat(keyStoreInfoRepository.findById(payments).get().getSubjectOu())
+                .isEqualTo(unit.toLowerCase(Locale.ROOT) + " payments");
+
+        // Matching ignores case and surrounding whitespace
+        KeyStoreSearchForm form = new KeyStoreSearchForm();
+        form.setOrganizationalUnit("  " + unit.toUpperCase(Locale.ROOT) + " PAYMENTS ");
+        form.setMatch(KeyStoreSearchForm.Match.EXACT);
+        assertThat(keyStoreSearchService.search(form)).extracting(KeyStoreSummary::keyStoreId)
+                .containsExactly(payments);
+
+        form.setOrganizationalUnit(unit);
+        form.setMatch(KeyStoreSearchForm.Match.PREFIX);
+        assertThat(keyStoreSearchService.search(form)).extracting(KeyStoreSummary::keyStoreId)
+                .containsExactlyInAnyOrder(payments, gateway);
+
+        // Every attribute that is set must match
+        form.setOrganization("Another Org");
+        assertThat(keyStoreSearchService.search(form)).isEmpty();
+
+        keyStoreGarbageCollector.tombstone(List.of(payments, gateway));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testSimilarSearchToleratesTypos() {
+        String word = uniqueWord();
+        UUID similar = stageKeyStore("payments gateway " + word, "Default Org Unit", true);
+        UUID unrelated = stageKeyStore("reporting " + uniqueWord(), "Default Org Unit", true);
+
+        KeyStoreSearchForm form = new KeyStoreSearchForm();
+        form.setCommonName("Paymnets Gateway " + word);
+        form.setOrganization("Default Org");
+        form.setMatch(KeyStoreSearchForm.Match.SIMILAR);
+
+        List<KeyStoreSummary> found = keyStoreSearchService.search(form);
+        assertThat(found).extracting(KeyStoreSummary::keyStoreId).first().isEqualTo(similar);
+        assertThat(found).extracting(KeyStoreSummary::keyStoreId).doesNotContain(unrelated);
+
+        // Deleted KeyStores are no longer found
+        keyStoreGarbageCollector.tombstone(List.of(similar, unrelated));
+        assertThat(keyStoreSearchService.search(form)).extracting(KeyStoreSummary::keyStoreId)
+                .doesNotContain(similar);
+
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testSubjectAttributesAreBackfilled() {
+        String unit = uniqueWord();
+        UUID keyStoreId = stageKeyStore("default-cn", unit, false);
+        assertThat(keyStoreInfoRepository.findById(keyStoreId).get().getSubjectOu()).isNull();
+
+        keyStoreSearchService.backfillSubjectAttributes();
+
+        KeyStoreInfo keyStoreInfo = keyStoreInfoRepository.findById(keyStoreId).get();
+        assertThat(keyStoreInfo.getSubjectOu()).isEqualTo(unit.toLowerCase(Locale.ROOT));
+        assertThat(keyStoreInfo.getSubjectCn()).isEqualTo("default-cn");
+        assertThat(keyStoreInfo.getSubjectO()).isEqualTo("default org");
+
+        keyStoreGarbageCollector.tombstone(List.of(keyStoreId));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testValuesWithSpecialCharactersAreFound() {
+        String unit = uniqueWord() + ", Payments + Co = \"1\"";
+        UUID live = stageKeyStore("default-cn", unit, true);
+        UUID backfilled = stageKeyStore("default-cn", unit, false);
+
+        keyStoreSearchService.backfillSubjectAttributes();
+
+        // Stored as the value itself, rather than its escaped string form, whichever way it was stored
+        assertThat(keyStoreInfoRepository.findById(live).get().getSubjectOu())
+                .isEqualTo(unit.toLowerCase(Locale.ROOT));
+        assertThat(keyStoreInfoRepository.findById(backfilled).get().getSubjectOu())
+                .isEqualTo(unit.toLowerCase(Locale.ROOT));
+
+        KeyStoreSearchForm form = new KeyStoreSearchForm();
+        form.setOrganizationalUnit(unit);
+        form.setMatch(KeyStoreSearchForm.Match.EXACT);
+        assertThat(keyStoreSearchService.search(form)).extracting(KeyStoreSummary::keyStoreId)
+                .containsExactlyInAnyOrder(live, backfilled);
+
+        form.setMatch(KeyStoreSearchForm.Match.SIMILAR);
+        assertThat(keyStoreSearchService.search(form)).extracting(KeyStoreSummary::keyStoreId)
+                .contains(live, backfilled);
+
+        keyStoreGarbageCollector.tombstone(List.of(live, backfilled));
+        keyStoreGarbageCollector.collect();
+    }
+
+    @Test
+    public void testSearchRequiresAnAttribute() {
+        KeyStoreSearchForm form = new KeyStoreSearchForm();
+        form.setCommonName(" ");
+
+        assertThatThrownBy(() -> keyStoreSearchService.search(form)).isInstanceOf(CaException.class);
+    }
+
+    private UUID stageKeyStore(String commonName, String organizationalUnit, boolean withSubjectAttributes) {
+        CsrForm csrForm = testUtility.getDefaultTestCsrForm();
+        csrForm.setCommonName(commonName);
+        csrForm.setOrganizationalUnit(organizationalUnit);
+
+        CertificateHolder certificateHolder = clientCertificateSigner.sign(
+                CertificateSigningRequest.using(testUtility.getDefaultTestDn(csrForm)));
+
+        KeyStoreInfo keyStoreInfo = KeyStoreInfo.from(certificateHolder.getX509Certificate(), "123456", "alias");
+        if (!withSubjectAttributes) {
+            // As if saved before the attribute columns were added
+            keyStoreInfo.setSubjectAttributes(DistinguishedName.newBuilder().build());
+        }
+
+        // A real file, as the backfill reads the attributes from the stored certificate
+        byte[] keyStoreBytes = pkcs12Encoder.encode(certificateHolder, "123456", "alias");
+        return keyStoreOutboxService.stage(keyStoreInfo, keyStoreBytes).getKeyStoreId();
+    }
+
+    private static String uniqueWord() {
+        return "Unit" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    }
+}
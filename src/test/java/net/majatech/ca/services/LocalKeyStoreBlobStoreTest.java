@@ -0,0 +1,98 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.exceptions.CaException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalKeyStoreBlobStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private LocalKeyStoreBlobStore keyStoreBlobStore;
+
+    @BeforeEach
+    public void setUp() {
+        CaSettings caSettings = new CaSettings();
+        caSettings.getStorage().setLocalDirectory(directory);
+
+        keyStoreBlobStore = new LocalKeyStoreBlobStore(caSettings);
+    }
+
+    @Test
+    public void testSavedKeyStoreIsShardedAndCanBeFetched() throws Exception {
+        UUID keyStoreId = UUID.fromString("3fa2b1c4-0000-4000-8000-000000000001");
+        byte[] keyStoreBytes = {1, 2, 3, 4};
+
+        keyStoreBlobStore.save(keyStoreId, keyStoreBytes).join();
+
+        Path expected = directory.resolve("3f").resolve("a2").resolve(keyStoreId + ".p12");
+        assertThat(keyStoreBlobStore.pathOf(keyStoreId)).isEqualTo(expected);
+        assertThat(Files.readAllBytes(expected)).isEqualTo(keyStoreBytes);
+        assertThat(keyStoreBlobStore.fetch(keyStoreId).join()).isEqualTo(keyStoreBytes);
+
+        // No temporary files are left behind
+        try (Stream<Path> files = Files.list(expected.getParent())) {
+            assertThat(files).containsExactly(expected);
+        }
+    }
+
+    @Test
+    public void testSaveReplacesExistingKeyStore() {
+        UUID keyStoreId = UUID.randomUUID();
+
+        keyStoreBlobStore.save(keyStoreId, new byte[] {1}).join();
+        keyStoreBlobStore.save(keyStoreId, new byte[] {2, 2}).join();
+
+        assertThat(keyStoreBlobStore.fetch(keyStoreId).join()).isEqualTo(new byte[] {2, 2});
+    }
+
+    @Test
+    public void testDeletedKeyStoreIsNotFound() {
+        UUID keyStoreId = UUID.randomUUID();
+
+        keyStoreBlobStore.save(keyStoreId, new byte[] {1}).join();
+        keyStoreBlobStore.delete(keyStoreId).join();
+
+        assertThatThrownBy(() -> keyStoreBlobStore.fetch(keyStoreId).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(CaException.class);
+
+        // Deleting again is not an error
+        keyStoreBlobStore.delete(keyStoreId).join();
+    }
+
+    @Test
+    public void testIdsAreListedInOrderByPrefix() throws Exception {
+        UUID first = UUID.fromString("3fa2b1c4-0000-4000-8000-000000000001");
+        UUID second = UUID.fromString("3fa2b1c4-0000-4000-8000-000000000002");
+        UUID third = UUID.fromString("3001b1c4-0000-4000-8000-000000000003");
+        UUID other = UUID.fromString("a001b1c4-0000-4000-8000-000000000004");
+        for (UUID keyStoreId : List.of(second, other, first, third)) {
+            keyStoreBlobStore.save(keyStoreId, new byte[] {1}).join();
+        }
+
+        // Files that are not named after a KeyStore ID are skipped
+        Files.write(directory.resolve("3-not-a-keystore.p12"), new byte[] {1});
+
+        assertThat(keyStoreBlobStore.listIds("3", null, 10).join()).containsExactly(third, first, second);
+        assertThat(keyStoreBlobStore.listIds("3", null, 2).join()).containsExactly(third, first);
+        assertThat(keyStoreBlobStore.listIds("3", first, 10).join()).containsExactly(second);
+        assertThat(keyStoreBlobStore.listIds("3", second, 10).join()).isEmpty();
+
+        assertThat(keyStoreBlobStore.exists(other).join()).isTrue();
+        assertThat(keyStoreBlobStore.exists(UUID.randomUUID()).join()).isFalse();
+    }
+}
@@ -0,0 +1,67 @@
+package net.majatech.ca.services;
+
+import net.majatech.ca.config.CaSettings;
+import net.majatech.ca.data.repo.SerialCounterRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigInteger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class SerialNumberServiceTest {
+
+    @Autowired
+    private SerialCounterRepository serialCounterRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testSerialNumbersAreValid() {
+        // A small block, so that serials are handed out across several reserved blocks
+        SerialNumberService serialNumberService = newService(10);
+
+        for (int i = 0; i < 25; i++) {
+            BigInteger serialNumber = serialNumberService.nextSerialNumber();
+
+            assertThat(serialNumber.signum()).isPositive();
+            assertThat(serialNumber.toByteArray().length).isLessThanOrEqualTo(20);
+        }
+    }
+
+    @Test
+    public void testNodesReserveDistinctBlocks() throws Exception {
+        // Two services sharing the database behave like two nodes
+        SerialNumberService firstNode = newService(5);
+        SerialNumberService secondNode = newService(5);
+
+        Set<BigInteger> counterValues = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 200; i++) {
+            SerialNumberService node = i % 2 == 0 ? firstNode : secondNode;
+            executor.execute(() -> counterValues.add(node.nextSerialNumber().shiftRight(64)));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // The counter part of every serial must be unique, regardless of the random part
+        assertThat(counterValues).hasSize(200);
+        assertThat(serialCounterRepository.findById(SerialNumberService.COUNTER_NAME)).isPresent();
+    }
+
+    private SerialNumberService newService(int blockSize) {
+        CaSettings caSettings = new CaSettings();
+        caSettings.getSerial().setBlockSize(blockSize);
+
+        return new SerialNumberService(caSettings, serialCounterRepository, transactionManager);
+    }
+}
@@ -0,0 +1,68 @@
+package net.majatech.ca.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    public void testKeysFallDueOnceTheirTickHasPassed() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(Duration.ofMinutes(1), 8, START);
+        timingWheel.schedule("soon", START.plusSeconds(90));
+        timingWheel.schedule("later", START.plus(Duration.ofMinutes(5)));
+
+        // Never before the deadline
+        assertThat(timingWheel.advance(START.plusSeconds(90))).isEmpty();
+
+        // At most one tick after it
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(2)))).containsExactly("soon");
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(6)))).containsExactly("later");
+        assertThat(timingWheel.size()).isZero();
+    }
+
+    @Test
+    public void testDistantKeysCascadeDownTheWheels() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(Duration.ofMinutes(1), 8, START);
+
+        // Beyond 8 minutes, and beyond 64 minutes, needing a second and a third wheel
+        timingWheel.schedule("hours", START.plus(Duration.ofMinutes(100)));
+        timingWheel.schedule("minutes", START.plus(Duration.ofMinutes(20)));
+        timingWheel.schedule("days", START.plus(Duration.ofDays(3)));
+
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(20)))).isEmpty();
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(21)))).containsExactly("minutes");
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(100)))).isEmpty();
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(101)))).containsExactly("hours");
+        assertThat(timingWheel.advance(START.plus(Duration.ofDays(3)))).isEmpty();
+        assertThat(timingWheel.advance(START.plus(Duration.ofDays(3)).plusSeconds(60))).containsExactly("days");
+    }
+
+    @Test
+    public void testCancelledAndRescheduledKeys() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(Duration.ofMinutes(1), 8, START);
+        timingWheel.schedule("cancelled", START.plus(Duration.ofMinutes(3)));
+        timingWheel.schedule("moved", START.plus(Duration.ofMinutes(3)));
+
+        assertThat(timingWheel.cancel("cancelled")).isTrue();
+        assertThat(timingWheel.cancel("unknown")).isFalse();
+        timingWheel.schedule("moved", START.plus(Duration.ofMinutes(30)));
+
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(4)))).isEmpty();
+        assertThat(timingWheel.advance(START.plus(Duration.ofMinutes(31)))).containsExactly("moved");
+    }
+
+    @Test
+    public void testPastDeadlinesAreDueOnTheNextAdvance() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(Duration.ofMinutes(1), 8, START);
+        timingWheel.schedule("past", START.minus(Duration.ofDays(1)));
+
+        assertThat(timingWheel.size()).isEqualTo(1);
+        assertThat(timingWheel.advance(START)).containsExactly("past");
+    }
+}
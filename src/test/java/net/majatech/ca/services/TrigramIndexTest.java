@@ -0,0 +1,89 @@
+package net.majatech.ca.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void testWordsAreSplitIntoPaddedTrigrams() {
+        assertThat(TrigramIndex.trigrams("Pay")).containsExactlyInAnyOrder("  p", " pa", "pay", "ay ");
+        assertThat(TrigramIndex.trigrams("OU=Payments, C=GB")).contains("  o", "ou ", "nts", "  g", "gb ");
+        assertThat(TrigramIndex.trigrams(" ,, ")).isEmpty();
+    }
+
+    @Test
+    public void testSimilarTextIsFound() {
+        TrigramIndex<String> trigramIndex = new TrigramIndex<>();
+        trigramIndex.put("payments", "Payments");
+        trigramIndex.put("gateway", "Payments Gateway");
+        trigramIndex.put("reporting", "Reporting");
+
+        // Identical text is fully similar, whatever its case
+        assertThat(trigramIndex.search("PAYMENTS", 1.0)).containsOnlyKeys("payments");
+        assertThat(trigramIndex.search("payments", 1.0).get("payments")).isCloseTo(1.0, within(1e-9));
+
+        // A typo shares most trigrams, while unrelated text shares none
+        assertThat(trigramIndex.search("Paymnets", 0.2)).containsOnlyKeys("payments", "gateway");
+        assertThat(trigramIndex.search("Paymnets", 0.2).get("payments"))
+                .isGreaterThan(trigramIndex.search("Paymnets", 0.2).get("gateway"));
+    }
+
+    @Test
+    public void testPutConcurrentWithRemoveOfAnotherKeyIsKept() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 5_000; i++) {
+                // Removing the only other key empties the sets of the trigrams the put is adding to
+                TrigramIndex<String> trigramIndex = new TrigramIndex<>();
+                trigramIndex.put("removed", "Payments");
+
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> put = executor.submit(() -> {
+                    start.await();
+                    trigramIndex.put("added", "Payments");
+                    return null;
+                });
+                Future<?> remove = executor.submit(() -> {
+                    start.await();
+                    trigramIndex.remove("removed");
+                    return null;
+                });
+
+                start.countDown();
+                put.get(10, TimeUnit.SECONDS);
+                remove.get(10, TimeUnit.SECONDS);
+
+                assertThat(trigramIndex.search("Payments", 1.0)).containsOnlyKeys("added");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReplacedAndRemovedTextIsNotFound() {
+        TrigramIndex<String> trigramIndex = new TrigramIndex<>();
+        trigramIndex.put("key", "Payments");
+        trigramIndex.put("key", "Reporting");
+
+        assertThat(trigramIndex.search("Payments", 0.3)).isEmpty();
+        assertThat(trigramIndex.search("Reporting", 0.3)).containsOnlyKeys("key");
+
+        trigramIndex.remove("key");
+        assertThat(trigramIndex.search("Reporting", 0.3)).isEmpty();
+        assertThat(trigramIndex.size()).isZero();
+
+        // Blank text is not indexed
+        trigramIndex.put("blank", " ");
+        assertThat(trigramIndex.size()).isZero();
+    }
+}
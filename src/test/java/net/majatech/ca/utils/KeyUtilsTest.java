@@ -1,16 +1,20 @@
 package net.majatech.ca.utils;
 
+import net.majatech.ca.authority.keys.KeyAlgorithm;
 import net.majatech.ca.exceptions.CaException;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.jupiter.api.Test;
 
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.NoSuchProviderException;
 import java.security.Security;
 import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Fail.fail;
 
 public class KeyUtilsTest {
@@ -26,6 +30,52 @@ public class KeyUtilsTest {
         Security.removeProvider("BC");
     }
 
+    @Test
+    public void testProfileKeysAreCreated() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+
+        for (KeyAlgorithm keyAlgorithm : KeyAlgorithm.values()) {
+            KeyPair keyPair = KeyUtils.generateKeyPair(keyAlgorithm);
+            assertThat(KeyAlgorithm.forKey(keyPair.getPublic())).isEqualTo(keyAlgorithm);
+
+            // Sign and verify using the signature algorithm of the profile
+            byte[] challenge = new byte[1000];
+            ThreadLocalRandom.current().nextBytes(challenge);
+
+            Signature signature = Signature.getInstance(keyAlgorithm.getSignatureAlgorithm(), "BC");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(challenge);
+
+            byte[] signed = signature.sign();
+
+            signature.initVerify(keyPair.getPublic());
+            signature.update(challenge);
+
+            assertThat(signature.verify(signed)).isTrue();
+        }
+
+        Security.removeProvider("BC");
+    }
+
+    @Test
+    public void testKeysWithoutProfileAreRejected() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA", "BC");
+        rsaGenerator.initialize(2560);
+        KeyPair rsaKeyPair = rsaGenerator.generateKeyPair();
+
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC", "BC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256k1"));
+        KeyPair ecKeyPair = ecGenerator.generateKeyPair();
+
+        // A size or curve that no profile was generated with must not be mistaken for one that was
+        assertThatThrownBy(() -> KeyAlgorithm.forKey(rsaKeyPair.getPublic())).isInstanceOf(CaException.class);
+        assertThatThrownBy(() -> KeyAlgorithm.forKey(ecKeyPair.getPublic())).isInstanceOf(CaException.class);
+
+        Security.removeProvider("BC");
+    }
+
     @Test
     public void testExceptionThrownIfBCProviderNotAdded() {
         try {